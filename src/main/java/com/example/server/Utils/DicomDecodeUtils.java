@@ -0,0 +1,220 @@
+package com.example.server.Utils;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.BulkData;
+import org.dcm4che3.data.Fragments;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 压缩传输语法解码：将封装的 PixelData（JPEG Lossless、JPEG-LS、RLE）解码为原始像素字节，
+ * 之后按非压缩数据集走 {@link DicomImageUtils} 转换。JPEG 系列通过 ImageIO 插件（TwelveMonkeys）解码，
+ * RLE 为 DICOM PS3.5 附录G 的 PackBits 变体，直接解码
+ */
+public class DicomDecodeUtils {
+    private static final String JPEG_LS_FORMAT = "jpeg-ls";
+
+    // 协商与WADO请求时使用的传输语法，按偏好排序：无损压缩在前，非压缩兜底
+    private static final String[] SUPPORTED_TRANSFER_SYNTAXES = createSupportedTransferSyntaxes();
+
+    private DicomDecodeUtils() {
+    }
+
+    /**
+     * 可接收并解码的传输语法（无损压缩优先）；JPEG-LS 仅在注册了对应 ImageIO 插件时包含
+     */
+    public static String[] supportedTransferSyntaxes() {
+        return SUPPORTED_TRANSFER_SYNTAXES.clone();
+    }
+
+    /**
+     * PixelData 为封装（压缩）格式时原地解码为原始像素（只取第一帧），非压缩数据集不做处理
+     *
+     * @param tsuid 数据集的传输语法
+     */
+    public static void decompress(Attributes dataset, String tsuid) throws IOException {
+        if (!(dataset.getValue(Tag.PixelData) instanceof Fragments fragments)) {
+            return;
+        }
+
+        int rows = dataset.getInt(Tag.Rows, 0);
+        int columns = dataset.getInt(Tag.Columns, 0);
+        int bitsAllocated = dataset.getInt(Tag.BitsAllocated, 16);
+        if (rows == 0 || columns == 0) throw new IOException("无效的DICOM图像尺寸");
+        if (dataset.getInt(Tag.SamplesPerPixel, 1) != 1) {
+            throw new IOException("不支持的彩色DICOM图像");
+        }
+        if (bitsAllocated != 8 && bitsAllocated != 16) {
+            throw new IOException("不支持的位深: BitsAllocated=" + bitsAllocated);
+        }
+
+        byte[] frame = firstFrame(fragments, dataset.getInt(Tag.NumberOfFrames, 1));
+        byte[] pixels = switch (tsuid) {
+            case UID.RLELossless -> decodeRle(frame, rows * columns, bitsAllocated / 8);
+            case UID.JPEGLSLossless, UID.JPEGLSNearLossless ->
+                    decodeImageIO(frame, JPEG_LS_FORMAT, rows, columns, bitsAllocated / 8);
+            case UID.JPEGBaseline8Bit, UID.JPEGExtended12Bit, UID.JPEGLossless, UID.JPEGLosslessSV1 ->
+                    decodeImageIO(frame, "jpeg", rows, columns, bitsAllocated / 8);
+            default -> throw new IOException("不支持的压缩传输语法: " + tsuid);
+        };
+        dataset.setBytes(Tag.PixelData, bitsAllocated == 8 ? VR.OB : VR.OW, pixels);
+    }
+
+    private static String[] createSupportedTransferSyntaxes() {
+        List<String> tsuids = new ArrayList<>(List.of(UID.JPEGLosslessSV1, UID.JPEGLossless, UID.RLELossless));
+        if (ImageIO.getImageReadersByFormatName(JPEG_LS_FORMAT).hasNext()) {
+            tsuids.add(1, UID.JPEGLSLossless);
+        }
+        tsuids.add(UID.ExplicitVRLittleEndian);
+        tsuids.add(UID.ImplicitVRLittleEndian);
+        return tsuids.toArray(new String[0]);
+    }
+
+    /**
+     * 第一帧的压缩数据：第0项为基本偏移表；单帧图像可能分为多个片段，需拼接
+     */
+    private static byte[] firstFrame(Fragments fragments, int numberOfFrames) throws IOException {
+        if (fragments.size() < 2) {
+            throw new IOException("封装PixelData不含图像片段");
+        }
+        if (numberOfFrames > 1) {
+            return fragmentBytes(fragments.get(1));
+        }
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        for (int i = 1; i < fragments.size(); i++) {
+            frame.write(fragmentBytes(fragments.get(i)));
+        }
+        return frame.toByteArray();
+    }
+
+    private static byte[] fragmentBytes(Object fragment) throws IOException {
+        if (fragment instanceof byte[] bytes) {
+            return bytes;
+        }
+        if (fragment instanceof BulkData bulkData) {
+            return bulkData.toBytes(VR.OB, false);
+        }
+        throw new IOException("无法读取PixelData片段: " + fragment);
+    }
+
+    /**
+     * 依次尝试格式对应的 ImageIO 解码器（JDK自带的JPEG解码器不支持无损压缩，
+     * 失败时继续尝试插件提供的解码器），输出小端原始像素
+     */
+    private static byte[] decodeImageIO(byte[] frame, String formatName, int rows, int columns,
+                                        int bytesPerSample) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName(formatName);
+        if (!readers.hasNext()) {
+            throw new IOException("缺少 " + formatName + " 解码插件");
+        }
+
+        IOException lastException = null;
+        while (readers.hasNext()) {
+            ImageReader reader = readers.next();
+            try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(frame))) {
+                reader.setInput(input, true, true);
+                Raster raster = reader.readRaster(0, null);
+                if (raster.getWidth() != columns || raster.getHeight() != rows) {
+                    throw new IOException("压缩图像尺寸与DICOM头不一致");
+                }
+                return toRawBytes(raster, bytesPerSample);
+            } catch (IOException e) {
+                lastException = e;
+            } finally {
+                reader.dispose();
+            }
+        }
+        throw new IOException(formatName + " 解码失败: " + lastException.getMessage(), lastException);
+    }
+
+    private static byte[] toRawBytes(Raster raster, int bytesPerSample) {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        byte[] out = new byte[width * height * bytesPerSample];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            raster.getSamples(raster.getMinX(), raster.getMinY() + y, width, 1, 0, row);
+            int offset = y * width * bytesPerSample;
+            for (int x = 0; x < width; x++) {
+                if (bytesPerSample == 1) {
+                    out[offset + x] = (byte) row[x];
+                } else {
+                    out[offset + 2 * x] = (byte) row[x];
+                    out[offset + 2 * x + 1] = (byte) (row[x] >> 8);
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * RLE 解码：64字节头为段数及各段偏移（小端），每段保存一个字节平面，
+     * 16位像素的第一段为高字节、第二段为低字节；输出小端原始像素
+     */
+    static byte[] decodeRle(byte[] frame, int pixelCount, int bytesPerSample) throws IOException {
+        if (frame.length < 64) {
+            throw new IOException("RLE头不完整");
+        }
+        int segments = readInt32LE(frame, 0);
+        if (segments != bytesPerSample) {
+            throw new IOException("RLE段数与位深不符: " + segments);
+        }
+
+        byte[] out = new byte[pixelCount * bytesPerSample];
+        for (int s = 0; s < segments; s++) {
+            int start = readInt32LE(frame, 4 + 4 * s);
+            int end = s + 1 < segments ? readInt32LE(frame, 8 + 4 * s) : frame.length;
+            if (start < 64 || end > frame.length || start > end) {
+                throw new IOException("RLE段偏移无效");
+            }
+            // 第 s 段为从高到低第 s 个字节，小端输出中的位置为 bytesPerSample-1-s
+            decodeRleSegment(frame, start, end, out, bytesPerSample - 1 - s, bytesPerSample, pixelCount);
+        }
+        return out;
+    }
+
+    private static void decodeRleSegment(byte[] in, int pos, int end, byte[] out, int outOffset,
+                                         int stride, int pixelCount) throws IOException {
+        int pixel = 0;
+        while (pos < end && pixel < pixelCount) {
+            int n = in[pos++];
+            if (n >= 0) {
+                // 原样复制 n+1 个字节
+                int count = Math.min(n + 1, Math.min(end - pos, pixelCount - pixel));
+                for (int i = 0; i < count; i++) {
+                    out[outOffset + stride * pixel++] = in[pos++];
+                }
+            } else if (n != -128) {
+                // 下一个字节重复 1-n 次
+                if (pos >= end) break;
+                byte value = in[pos++];
+                int count = Math.min(1 - n, pixelCount - pixel);
+                for (int i = 0; i < count; i++) {
+                    out[outOffset + stride * pixel++] = value;
+                }
+            }
+        }
+        if (pixel < pixelCount) {
+            throw new IOException("RLE数据不完整");
+        }
+    }
+
+    private static int readInt32LE(byte[] data, int offset) {
+        return (data[offset] & 0xff)
+                | (data[offset + 1] & 0xff) << 8
+                | (data[offset + 2] & 0xff) << 16
+                | (data[offset + 3] & 0xff) << 24;
+    }
+}
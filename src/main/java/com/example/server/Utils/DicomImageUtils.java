@@ -0,0 +1,171 @@
+package com.example.server.Utils;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.util.stream.IntStream;
+
+/**
+ * DICOM 灰度图像转换：按存储位深预计算窗宽窗位查找表，
+ * 直接从 PixelData 原始字节写入 TYPE_BYTE_GRAY 栅格
+ */
+public class DicomImageUtils {
+    // 像素数超过该值时按行分带并行转换
+    private static final int PARALLEL_MIN_PIXELS = 1 << 20;
+
+    private DicomImageUtils() {
+    }
+
+    /**
+     * 将单帧灰度DICOM转换为8位灰度图像
+     *
+     * @param parallel 是否允许按行分带多核并行
+     */
+    public static BufferedImage toGrayImage(Attributes dataset, boolean parallel) throws IOException {
+        int rows = dataset.getInt(Tag.Rows, 0);
+        int columns = dataset.getInt(Tag.Columns, 0);
+        if (rows == 0 || columns == 0) throw new IOException("无效的DICOM图像尺寸");
+        if (dataset.getInt(Tag.SamplesPerPixel, 1) != 1) {
+            throw new IOException("不支持的彩色DICOM图像");
+        }
+
+        int bitsAllocated = dataset.getInt(Tag.BitsAllocated, 16);
+        int bitsStored = dataset.getInt(Tag.BitsStored, bitsAllocated);
+        int highBit = dataset.getInt(Tag.HighBit, bitsStored - 1);
+        if ((bitsAllocated != 8 && bitsAllocated != 16) || bitsStored < 1 || bitsStored > bitsAllocated) {
+            throw new IOException("不支持的位深: BitsAllocated=" + bitsAllocated + ", BitsStored=" + bitsStored);
+        }
+
+        byte[] pixelData = dataset.getBytes(Tag.PixelData);
+        int bytesPerSample = bitsAllocated / 8;
+        int pixelCount = rows * columns;
+        if (pixelData == null || pixelData.length < pixelCount * bytesPerSample) {
+            throw new IOException("PixelData长度不足");
+        }
+
+        byte[] lut = createLut(dataset, pixelData, pixelCount, bytesPerSample, bitsStored, highBit);
+
+        BufferedImage image = new BufferedImage(columns, rows, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] out = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        SampleReader reader = new SampleReader(pixelData, bytesPerSample, dataset.bigEndian(),
+                highBit + 1 - bitsStored, (1 << bitsStored) - 1);
+
+        if (parallel && pixelCount >= PARALLEL_MIN_PIXELS) {
+            int bands = Math.min(Runtime.getRuntime().availableProcessors(), rows);
+            IntStream.range(0, bands).parallel().forEach(band -> {
+                int from = (int) ((long) rows * band / bands) * columns;
+                int to = (int) ((long) rows * (band + 1) / bands) * columns;
+                applyLut(reader, lut, out, from, to);
+            });
+        } else {
+            applyLut(reader, lut, out, 0, pixelCount);
+        }
+        return image;
+    }
+
+    /**
+     * 查找表：下标为存储值（按BitsStored截取后的无符号值），
+     * 依次做 Rescale Slope/Intercept、窗宽窗位线性映射、MONOCHROME1 反相
+     */
+    private static byte[] createLut(Attributes dataset, byte[] pixelData, int pixelCount,
+                                    int bytesPerSample, int bitsStored, int highBit) {
+        int size = 1 << bitsStored;
+        boolean signed = dataset.getInt(Tag.PixelRepresentation, 0) == 1;
+        double slope = dataset.getDouble(Tag.RescaleSlope, 1);
+        double intercept = dataset.getDouble(Tag.RescaleIntercept, 0);
+        if (slope == 0) slope = 1;
+
+        double[] modality = new double[size];
+        for (int i = 0; i < size; i++) {
+            int stored = signed && i >= size / 2 ? i - size : i;
+            modality[i] = stored * slope + intercept;
+        }
+
+        double center = dataset.getDouble(Tag.WindowCenter, 0);
+        double width = dataset.getDouble(Tag.WindowWidth, 0);
+        if (width <= 0) {
+            // 无窗宽窗位时按图像实际取值范围自动设置
+            SampleReader reader = new SampleReader(pixelData, bytesPerSample, dataset.bigEndian(),
+                    highBit + 1 - bitsStored, size - 1);
+            boolean[] present = new boolean[size];
+            for (int i = 0; i < pixelCount; i++) {
+                present[reader.read(i)] = true;
+            }
+            double min = Double.MAX_VALUE;
+            double max = -Double.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                if (present[i]) {
+                    min = Math.min(min, modality[i]);
+                    max = Math.max(max, modality[i]);
+                }
+            }
+            center = (min + max) / 2;
+            width = Math.max(1, max - min);
+        }
+
+        boolean inverse = "MONOCHROME1".equals(dataset.getString(Tag.PhotometricInterpretation));
+        // DICOM PS3.3 C.11.2.1.2 线性VOI函数
+        double low = center - 0.5 - (width - 1) / 2;
+        double high = center - 0.5 + (width - 1) / 2;
+        byte[] lut = new byte[size];
+        for (int i = 0; i < size; i++) {
+            double x = modality[i];
+            int value;
+            if (x <= low) {
+                value = 0;
+            } else if (x > high) {
+                value = 255;
+            } else {
+                value = (int) Math.round(((x - (center - 0.5)) / Math.max(1, width - 1) + 0.5) * 255);
+                value = Math.max(0, Math.min(255, value));
+            }
+            lut[i] = (byte) (inverse ? 255 - value : value);
+        }
+        return lut;
+    }
+
+    /**
+     * 灰度图像按原始灰度值展开为 TYPE_INT_RGB（R=G=B）。
+     * 直接对 TYPE_BYTE_GRAY 调用 getRGB 会经过线性灰度到sRGB的色彩转换，导致模型输入偏亮
+     */
+    public static BufferedImage toRgb(BufferedImage image) {
+        if (image.getType() != BufferedImage.TYPE_BYTE_GRAY) {
+            return image;
+        }
+        byte[] gray = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        int[] out = ((DataBufferInt) rgb.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < out.length; i++) {
+            int v = gray[i] & 0xff;
+            out[i] = (v << 16) | (v << 8) | v;
+        }
+        return rgb;
+    }
+
+    private static void applyLut(SampleReader reader, byte[] lut, byte[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = lut[reader.read(i)];
+        }
+    }
+
+    /**
+     * 从原始字节中读取第 i 个像素的存储值（已移位并按BitsStored截取）
+     */
+    private record SampleReader(byte[] data, int bytesPerSample, boolean bigEndian, int shift, int mask) {
+        int read(int i) {
+            int sample;
+            if (bytesPerSample == 1) {
+                sample = data[i] & 0xff;
+            } else if (bigEndian) {
+                sample = ((data[2 * i] & 0xff) << 8) | (data[2 * i + 1] & 0xff);
+            } else {
+                sample = (data[2 * i] & 0xff) | ((data[2 * i + 1] & 0xff) << 8);
+            }
+            return (sample >>> shift) & mask;
+        }
+    }
+}
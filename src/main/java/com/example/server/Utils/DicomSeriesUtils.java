@@ -0,0 +1,66 @@
+package com.example.server.Utils;
+
+import com.example.server.model.KnownInstance;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+
+/**
+ * 交互式检索、PACS预取、存储SCP接收与本地目录导入共用的序列筛选与日期解析
+ */
+public class DicomSeriesUtils {
+    // 参与推理的序列描述
+    public static final String HAND_SERIES_DESCRIPTION = "Hand";
+
+    private DicomSeriesUtils() {
+    }
+
+    /**
+     * 序列描述为 Hand（忽略大小写）
+     */
+    public static boolean isHandSeries(Attributes attributes) {
+        return HAND_SERIES_DESCRIPTION.equalsIgnoreCase(attributes.getString(Tag.SeriesDescription, ""));
+    }
+
+    /**
+     * 解析DICOM日期（如 "20230815"，超过8位的部分忽略），缺失或格式错误时返回null
+     */
+    public static LocalDate parseDicomDate(String dicomDate) {
+        if (dicomDate == null || dicomDate.length() < 8) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(dicomDate.substring(0, 8), DateTimeFormatter.BASIC_ISO_DATE);
+        } catch (DateTimeParseException e) {
+            System.err.println("日期解析失败: " + dicomDate);
+            return null;
+        }
+    }
+
+    /**
+     * PACS返回了序列实例数，且已全部入库并已推理、在队列中或被质量筛选排除时，无需再查询该序列的图像
+     *
+     * @param known 数据库中已登记的实例（可包含其他序列）
+     */
+    public static boolean isSeriesComplete(Attributes series, Collection<KnownInstance> known) {
+        int relatedInstances = series.getInt(Tag.NumberOfSeriesRelatedInstances, -1);
+        if (relatedInstances < 0) {
+            return false;
+        }
+        String seriesUID = series.getString(Tag.SeriesInstanceUID);
+        int count = 0;
+        for (KnownInstance instance : known) {
+            if (seriesUID.equals(instance.seriesInstanceUID())) {
+                if (instance.needsInference()) {
+                    return false;
+                }
+                count++;
+            }
+        }
+        return count >= relatedInstances;
+    }
+}
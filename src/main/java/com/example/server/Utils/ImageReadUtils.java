@@ -0,0 +1,71 @@
+package com.example.server.Utils;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * 按需解码图像：只读取尺寸、按步长降采样读取，或只读取指定区域，
+ * 避免为了一个小区域或低分辨率用途解码整幅大图
+ */
+public class ImageReadUtils {
+
+    private ImageReadUtils() {
+    }
+
+    /**
+     * 只读取图像头获取尺寸
+     */
+    public static Dimension readSize(File file) throws IOException {
+        return read(file, reader -> new Dimension(reader.getWidth(0), reader.getHeight(0)));
+    }
+
+    /**
+     * 解码图像
+     *
+     * @param subsampling 行列采样步长，1表示全分辨率
+     * @param region      源图像区域，为null时读取整幅图像
+     */
+    public static BufferedImage read(File file, int subsampling, Rectangle region) throws IOException {
+        return read(file, reader -> {
+            ImageReadParam param = reader.getDefaultReadParam();
+            if (subsampling > 1) {
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            }
+            if (region != null) {
+                param.setSourceRegion(region);
+            }
+            return reader.read(0, param);
+        });
+    }
+
+    private static <T> T read(File file, ReaderAction<T> action) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            if (input == null) {
+                throw new IOException("无法打开图像: " + file);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("不支持的图像格式: " + file);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return action.apply(reader);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ReaderAction<T> {
+        T apply(ImageReader reader) throws IOException;
+    }
+}
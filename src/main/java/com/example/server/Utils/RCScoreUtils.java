@@ -7,12 +7,17 @@ import org.apache.commons.math3.analysis.solvers.UnivariateSolver;
 import org.apache.commons.math3.exception.NoBracketingException;
 import org.apache.commons.math3.exception.TooManyEvaluationsException;
 
+import com.example.server.model.Joint;
+import com.example.server.model.JointGrades;
+
 import java.util.*;
 
 public class RCScoreUtils {
     private static final PolynomialSplineFunction maleSpline;
     private static final PolynomialSplineFunction femaleSpline;
     public static final Map<Boolean, Map<String, List<Integer>>> SCORE_TABLES;
+    // 按关节下标展开的分数表：[isMale ? 1 : 0][joint.ordinal()]
+    private static final int[][][] JOINT_SCORES = new int[2][Joint.COUNT][];
 
     static {
         // 初始化性别-部位-分数表
@@ -71,6 +76,15 @@ public class RCScoreUtils {
         } catch (Exception e) {
             throw new RuntimeException("初始化样条插值器失败", e);
         }
+
+        for (Joint joint : Joint.values()) {
+            JOINT_SCORES[0][joint.ordinal()] = toIntArray(femaleScores.get(joint.name()));
+            JOINT_SCORES[1][joint.ordinal()] = toIntArray(maleScores.get(joint.name()));
+        }
+    }
+
+    private static int[] toIntArray(List<Integer> values) {
+        return values.stream().mapToInt(Integer::intValue).toArray();
     }
 
     /**
@@ -112,6 +126,41 @@ public class RCScoreUtils {
         return total;
     }
 
+    /**
+     * 计算骨龄（按关节下标的等级数组）
+     * @param isMale 是否为男性
+     * @param grades 各关节等级，-1 表示缺失
+     * @return 骨龄
+     */
+    public static double calculateBoneAge(boolean isMale, JointGrades grades) {
+        return RCScore(calculateTotalScore(isMale, grades), isMale);
+    }
+
+    /**
+     * 计算总分（按关节下标的等级数组）
+     */
+    public static int calculateTotalScore(boolean isMale, JointGrades grades) {
+        int[][] scores = JOINT_SCORES[isMale ? 1 : 0];
+        int[] values = grades.grades();
+        int total = 0;
+        for (int i = 0; i < values.length; i++) {
+            int internalIndex = values[i] - 1;
+            int[] partScores = scores[i];
+            if (internalIndex < 0 || internalIndex >= partScores.length) {
+                continue;
+            }
+            total += partScores[internalIndex];
+        }
+        return total;
+    }
+
+    /**
+     * 关节的最大等级（以男性分数表为准）
+     */
+    public static int maxGrade(Joint joint) {
+        return JOINT_SCORES[1][joint.ordinal()].length;
+    }
+
     public static double RCScore(double yInput, boolean isMale) {
         final PolynomialSplineFunction spline = isMale ? maleSpline : femaleSpline;
         final double xMin = spline.getKnots()[0];
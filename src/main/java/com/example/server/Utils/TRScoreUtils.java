@@ -7,6 +7,9 @@ import org.apache.commons.math3.analysis.solvers.UnivariateSolver;
 import org.apache.commons.math3.exception.NoBracketingException;
 import org.apache.commons.math3.exception.TooManyEvaluationsException;
 
+import com.example.server.model.Joint;
+import com.example.server.model.JointGrades;
+
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -16,6 +19,8 @@ public class TRScoreUtils {
     private static final PolynomialSplineFunction maleSpline;
     private static final PolynomialSplineFunction femaleSpline;
     private static final Map<Boolean, Map<String, List<Integer>>> SCORE_TABLES;
+    // 按关节下标展开的分数表：[isMale ? 1 : 0][joint.ordinal()]
+    private static final int[][][] JOINT_SCORES = new int[2][Joint.COUNT][];
 
     static {
         // 初始化性别-部位-分数表
@@ -158,6 +163,22 @@ public class TRScoreUtils {
         ));
     }
 
+    // 按关节下标索引的等级映射规则
+    private static final GradeMapping[][] JOINT_GRADE_MAPPINGS = new GradeMapping[Joint.COUNT][];
+
+    static {
+        for (Joint joint : Joint.values()) {
+            List<GradeMapping> mappings = GRADE_MAPPINGS.get(joint.name());
+            JOINT_GRADE_MAPPINGS[joint.ordinal()] = mappings != null
+                    ? mappings.toArray(new GradeMapping[0])
+                    : new GradeMapping[0];
+            for (int sex = 0; sex < 2; sex++) {
+                JOINT_SCORES[sex][joint.ordinal()] = SCORE_TABLES.get(sex == 1).get(joint.name())
+                        .stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+    }
+
     /**
      * 等级转换方法
      * @param part 部位名称
@@ -187,6 +208,22 @@ public class TRScoreUtils {
         return originalGrade;
     }
 
+    /**
+     * 等级转换（按关节枚举，避免字符串查找）
+     * @return 转换后的等级（1-based），原始等级无效时返回-1
+     */
+    public static int mapGrade(Joint joint, int originalGrade) {
+        if (originalGrade < 1) {
+            return -1;
+        }
+        for (GradeMapping mapping : JOINT_GRADE_MAPPINGS[joint.ordinal()]) {
+            if (mapping.matches(originalGrade)) {
+                return mapping.mapped;
+            }
+        }
+        return originalGrade;
+    }
+
     /**
      * 计算骨龄
      * @param isMale 是否为男性（true=男，false=女）
@@ -238,6 +275,30 @@ public class TRScoreUtils {
         return total;
     }
 
+    /**
+     * 计算骨龄（按关节下标的等级数组）
+     */
+    public static double calculateBoneAge(boolean isMale, JointGrades grades) {
+        return TRScore(calculateTotalScore(isMale, grades), isMale);
+    }
+
+    /**
+     * 计算总分（按关节下标的等级数组）
+     */
+    public static int calculateTotalScore(boolean isMale, JointGrades grades) {
+        int[][] scores = JOINT_SCORES[isMale ? 1 : 0];
+        Joint[] joints = Joint.values();
+        int total = 0;
+        for (int i = 0; i < joints.length; i++) {
+            int mappedGrade = mapGrade(joints[i], grades.grades()[i]);
+            int internalIndex = mappedGrade - 1;
+            if (mappedGrade != -1 && internalIndex >= 0 && internalIndex < scores[i].length) {
+                total += scores[i][internalIndex];
+            }
+        }
+        return total;
+    }
+
     public static double TRScore(double yInput, boolean isMale) {
         final PolynomialSplineFunction spline = isMale ? maleSpline : femaleSpline;
         final double xMin = spline.getKnots()[0];
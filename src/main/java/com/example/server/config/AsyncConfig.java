@@ -1,5 +1,6 @@
 package com.example.server.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.AsyncConfigurer;
@@ -52,4 +53,97 @@ public class AsyncConfig implements AsyncConfigurer {
         executor.initialize();
         return executor;
     }
-}
\ No newline at end of file
+
+    // 批量后台任务线程池（重推理等长耗时任务）
+    @Bean(name = "batchJobExecutor")
+    public Executor batchJobExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(4);
+        executor.setQueueCapacity(20);
+        executor.setThreadNamePrefix("BatchJob-");
+        executor.initialize();
+        return executor;
+    }
+
+    // 持久化推理队列工作线程池（每个线程循环领取任务）
+    @Bean(name = "inferenceQueueExecutor")
+    public Executor inferenceQueueExecutor(@Value("${inference.queue.workers:4}") int workers) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("InferenceQueue-");
+        executor.initialize();
+        return executor;
+    }
+
+    // PACS查询扇出线程池（并发数与各PACS关联池大小之和一致，多余任务排队等待）
+    @Bean(name = "pacsQueryExecutor")
+    public Executor pacsQueryExecutor(DICOMConfig dicomConfig) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(totalAssociations(dicomConfig));
+        executor.setMaxPoolSize(totalAssociations(dicomConfig));
+        executor.setQueueCapacity(500);
+        executor.setThreadNamePrefix("PacsQuery-");
+        executor.initialize();
+        return executor;
+    }
+
+    // 多PACS并行查询线程池（同一查询发往各PACS，只执行单个C-FIND，不再提交子任务）
+    @Bean(name = "pacsFanoutExecutor")
+    public Executor pacsFanoutExecutor(DICOMConfig dicomConfig) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(totalAssociations(dicomConfig));
+        executor.setMaxPoolSize(totalAssociations(dicomConfig));
+        executor.setQueueCapacity(1000);
+        executor.setThreadNamePrefix("PacsFanout-");
+        executor.initialize();
+        return executor;
+    }
+
+    private static int totalAssociations(DICOMConfig dicomConfig) {
+        return dicomConfig.resolveEndpoints().stream()
+                .mapToInt(endpoint -> endpoint.getAssociationPoolSize() != null
+                        ? endpoint.getAssociationPoolSize() : dicomConfig.getAssociationPoolSize())
+                .sum();
+    }
+
+    // 搜索后台检索线程池（响应返回后继续执行Study及以下层级的检索，每个患者占用一个线程）
+    @Bean(name = "searchExecutor")
+    public Executor searchExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setMaxPoolSize(8);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("Search-");
+        executor.initialize();
+        return executor;
+    }
+
+    // 本地DICOM导入线程池（头信息解析与像素解码，均为CPU与本地磁盘密集型）
+    @Bean(name = "ingestExecutor")
+    public Executor ingestExecutor() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(cores);
+        executor.setMaxPoolSize(cores);
+        executor.setQueueCapacity(Integer.MAX_VALUE);
+        executor.setThreadNamePrefix("Ingest-");
+        executor.initialize();
+        return executor;
+    }
+
+    // WADO下载线程池（实际并发由WadoFetcher按主机限制，线程数按PACS数量放大，避免多PACS共享单个主机的并发上限）
+    @Bean(name = "wadoDownloadExecutor")
+    public Executor wadoDownloadExecutor(DICOMConfig dicomConfig) {
+        int threads = dicomConfig.getWadoMaxConcurrentPerHost() * dicomConfig.resolveEndpoints().size();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(1000);
+        executor.setThreadNamePrefix("WadoDownload-");
+        executor.initialize();
+        return executor;
+    }
+}
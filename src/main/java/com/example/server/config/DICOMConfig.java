@@ -4,6 +4,9 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Data
 @Configuration
 @ConfigurationProperties(prefix = "dicom")
@@ -13,4 +16,97 @@ public class DICOMConfig {
     private String pacsIp;
     private int pacsPort;
     private int downloadPort;
-}
\ No newline at end of file
+
+    // 多PACS联合查询（dicom.pacs-list[i].*），按顺序即优先级：重复实例取靠前的PACS；
+    // 未配置时以上面的单PACS配置作为唯一节点
+    private List<PacsEndpoint> pacsList = new ArrayList<>();
+
+    // 关联连接池配置
+    private int associationPoolSize = 4;            // 最大关联数（同时也是预热数量）
+    private int connectTimeoutMs = 5000;            // 建立TCP连接超时
+    private long borrowTimeoutMs = 30000;           // 等待空闲关联超时
+    private long validateAfterIdleMs = 30000;       // 空闲超过该时长的关联借出前先做C-ECHO校验
+    private long queryTimeoutSeconds = 30;          // 单次C-FIND等待超时
+    private int retrieveTimeoutMs = 300000;         // 单次C-GET取回整个序列的总时长上限（同时作为DIMSE响应超时）
+
+    // 患者/检查级C-FIND结果缓存（TTL为0时不缓存）
+    private long queryCachePatientTtlMs = 60000;
+    private long queryCacheStudyTtlMs = 30000;
+    private int queryCacheMaxEntries = 1000;
+
+    // PACS熔断：最近 breakerWindowSize 次操作中失败率达到阈值（且不少于 breakerMinimumCalls 次）时打开，
+    // 打开 breakerOpenMs 后以C-ECHO探测，成功则恢复
+    private int breakerWindowSize = 20;
+    private int breakerMinimumCalls = 5;
+    private double breakerFailureRateThreshold = 0.5;
+    private long breakerOpenMs = 30000;
+
+    // Series查询方式：AUTO 优先关系型SERIES级查询（PACS拒绝时回退），HIERARCHICAL 始终逐级查询
+    private SeriesQueryMode seriesQueryMode = SeriesQueryMode.AUTO;
+
+    // WADO下载配置
+    private int wadoConnectTimeoutMs = 5000;        // 建立HTTP连接超时
+    private long wadoRequestTimeoutMs = 60000;      // 单个请求超时（含等待并发许可）
+    private long wadoBodyTimeoutMs = 120000;        // 响应体读取总时长上限（请求超时只限制等待响应头）
+    private int wadoMaxConcurrentPerHost = 4;       // 每个PACS主机的最大并发下载数
+    private int wadoMaxRetries = 2;                 // 临时性错误的重试次数
+    private long wadoRetryBackoffMs = 500;          // 重试基础退避，按次数翻倍并叠加随机抖动
+
+    // WADO请求的传输语法（默认JPEG无损），为空时由PACS决定；PACS拒绝时自动改为不指定
+    private String wadoTransferSyntax = "1.2.840.10008.1.2.4.70";
+
+    // WADO响应超过该大小时先落盘再解析，否则直接流式解析
+    private long wadoSpoolThresholdBytes = 64L * 1024 * 1024;
+
+    // 本地PNG图像缓存容量上限，超出时按最近最少使用淘汰
+    private long imageCacheMaxBytes = 2L * 1024 * 1024 * 1024;
+
+    // DICOM转PNG时大图按行分带多核并行
+    private boolean parallelConversion = true;
+
+    // 图像获取方式：WADO 逐个HTTP下载，CGET 按序列在一个关联内取回（可按PACS单独配置）
+    private RetrieveMode retrieveMode = RetrieveMode.WADO;
+
+    // 存储SCP：接收模态或PACS推送的图像（AE名称与 localAeTitle 相同）
+    private boolean storageScpEnabled = false;
+    private int storageScpPort = 11112;
+
+    /**
+     * 生效的PACS节点列表（未配置 pacs-list 时兼容旧的单PACS配置）
+     */
+    public List<PacsEndpoint> resolveEndpoints() {
+        if (pacsList != null && !pacsList.isEmpty()) {
+            return pacsList;
+        }
+        PacsEndpoint endpoint = new PacsEndpoint();
+        endpoint.setAeTitle(pacsAeTitle);
+        endpoint.setIp(pacsIp);
+        endpoint.setPort(pacsPort);
+        endpoint.setDownloadPort(downloadPort);
+        return List.of(endpoint);
+    }
+
+    @Data
+    public static class PacsEndpoint {
+        private String aeTitle;
+        private String ip;
+        private int port;
+        private int downloadPort;
+
+        // 以下为空时使用全局配置
+        private Integer associationPoolSize;
+        private Integer connectTimeoutMs;
+        private Long queryTimeoutSeconds;
+        private RetrieveMode retrieveMode;
+    }
+
+    public enum SeriesQueryMode {
+        AUTO,
+        HIERARCHICAL
+    }
+
+    public enum RetrieveMode {
+        WADO,
+        CGET
+    }
+}
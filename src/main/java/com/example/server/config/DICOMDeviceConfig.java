@@ -0,0 +1,75 @@
+package com.example.server.config;
+
+import com.example.server.service.RoutingCStoreSCP;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.net.ApplicationEntity;
+import org.dcm4che3.net.Connection;
+import org.dcm4che3.net.Device;
+import org.dcm4che3.net.TransferCapability;
+import org.dcm4che3.net.service.BasicCEchoSCP;
+import org.dcm4che3.net.service.DicomServiceRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * 本地DICOM设备：全局共享一个 Device / ApplicationEntity，启动时绑定一次，
+ * 供连接池、检索等组件复用，避免每次查询重复创建和绑定；
+ * 启用存储SCP时同一AE同时监听 dicom.storage-scp-port
+ */
+@Configuration
+public class DICOMDeviceConfig {
+
+    @Bean
+    public RoutingCStoreSCP routingCStoreSCP() {
+        return new RoutingCStoreSCP();
+    }
+
+    @Bean
+    public DicomServiceRegistry dicomServiceRegistry(RoutingCStoreSCP routingCStoreSCP) {
+        DicomServiceRegistry registry = new DicomServiceRegistry();
+        registry.addDicomService(new BasicCEchoSCP());
+        registry.addDicomService(routingCStoreSCP);
+        return registry;
+    }
+
+    @Bean(destroyMethod = "unbindConnections")
+    public Device dicomDevice(
+            DICOMConfig config,
+            @Qualifier("dicomTaskExecutor") ScheduledExecutorService dicomExecutor,
+            DicomServiceRegistry dicomServiceRegistry
+    ) throws Exception {
+        Device device = new Device(config.getLocalAeTitle());
+        Connection localConn = new Connection();
+        device.addConnection(localConn);
+
+        device.setExecutor(dicomExecutor);
+        device.setScheduledExecutor(dicomExecutor);
+        device.setDimseRQHandler(dicomServiceRegistry);
+
+        ApplicationEntity ae = new ApplicationEntity(config.getLocalAeTitle());
+        ae.setAssociationInitiator(true);
+        device.addApplicationEntity(ae);
+        ae.addConnection(localConn);
+
+        if (config.isStorageScpEnabled()) {
+            // 存储SCP：监听端口，接收模态或PACS推送的手部图像
+            Connection listenConn = new Connection();
+            listenConn.setPort(config.getStorageScpPort());
+            device.addConnection(listenConn);
+            ae.addConnection(listenConn);
+            ae.setAssociationAcceptor(true);
+            ae.addTransferCapability(new TransferCapability(
+                    null, UID.Verification, TransferCapability.Role.SCP, UID.ImplicitVRLittleEndian));
+            for (String cuid : RoutingCStoreSCP.STORAGE_SOP_CLASSES) {
+                ae.addTransferCapability(new TransferCapability(
+                        null, cuid, TransferCapability.Role.SCP, RoutingCStoreSCP.STORAGE_TRANSFER_SYNTAXES));
+            }
+        }
+
+        device.bindConnections();
+        return device;
+    }
+}
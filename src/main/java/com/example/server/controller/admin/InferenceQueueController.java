@@ -0,0 +1,26 @@
+package com.example.server.controller.admin;
+
+import com.example.server.Utils.ApiResponse;
+import com.example.server.service.InferenceQueueService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/queue")
+public class InferenceQueueController {
+
+    private final InferenceQueueService inferenceQueueService;
+
+    public InferenceQueueController(InferenceQueueService inferenceQueueService) {
+        this.inferenceQueueService = inferenceQueueService;
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return ApiResponse.success("推理队列状态获取成功", inferenceQueueService.getQueueStats());
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.server.controller.admin;
+
+import com.example.server.Utils.ApiResponse;
+import com.example.server.model.IngestJob;
+import com.example.server.service.DicomIngestService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/ingest")
+public class IngestController {
+
+    private final DicomIngestService ingestService;
+
+    public IngestController(DicomIngestService ingestService) {
+        this.ingestService = ingestService;
+    }
+
+    /**
+     * 创建本地DICOM目录导入任务（watch=true 时持续监视目录中的新文件，直到取消）
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<Map<String, Object>> startJob(
+            @RequestParam("directory") String directory,
+            @RequestParam(value = "watch", defaultValue = "false") boolean watch
+    ) {
+        try {
+            IngestJob job = ingestService.startJob(directory, watch);
+            return ApiResponse.success("导入任务已创建", job);
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error(1, e.getMessage());
+        } catch (Exception e) {
+            return ApiResponse.serverError(2, "创建导入任务失败: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/jobs")
+    public ResponseEntity<Map<String, Object>> listJobs() {
+        return ApiResponse.success("导入任务列表获取成功", ingestService.listJobs());
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<Map<String, Object>> getJob(@PathVariable("jobId") Long jobId) {
+        IngestJob job = ingestService.getJob(jobId);
+        if (job == null) {
+            return ApiResponse.notFound(3, "未找到导入任务");
+        }
+        return ApiResponse.success("导入任务获取成功", job);
+    }
+
+    @PostMapping("/jobs/{jobId}/cancel")
+    public ResponseEntity<Map<String, Object>> cancelJob(@PathVariable("jobId") Long jobId) {
+        if (!ingestService.cancelJob(jobId)) {
+            return ApiResponse.notFound(3, "任务不存在或未在运行");
+        }
+        return ApiResponse.success("已请求取消导入任务");
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.server.controller.admin;
+
+import com.example.server.Utils.ApiResponse;
+import com.example.server.model.ReInferenceJob;
+import com.example.server.service.ReInferenceJobService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/reinference")
+public class ReInferenceController {
+
+    private final ReInferenceJobService jobService;
+
+    public ReInferenceController(ReInferenceJobService jobService) {
+        this.jobService = jobService;
+    }
+
+    /**
+     * 创建批量重推理任务
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<Map<String, Object>> startJob(
+            @RequestParam(value = "studyDateFrom", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate studyDateFrom,
+            @RequestParam(value = "studyDateTo", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate studyDateTo,
+            @RequestParam(value = "modelVersion", required = false) String modelVersion,
+            @RequestParam(value = "imagesPerSecond", required = false) Double imagesPerSecond,
+            @RequestParam(value = "batchSize", required = false) Integer batchSize
+    ) {
+        try {
+            ReInferenceJob job = jobService.startJob(
+                    studyDateFrom, studyDateTo, modelVersion, imagesPerSecond, batchSize);
+            return ApiResponse.success("重推理任务已创建", job);
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error(1, e.getMessage());
+        } catch (Exception e) {
+            return ApiResponse.serverError(2, "创建重推理任务失败: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/jobs")
+    public ResponseEntity<Map<String, Object>> listJobs(
+            @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        return ApiResponse.success("重推理任务列表获取成功", jobService.listJobs(limit));
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<Map<String, Object>> getJob(@PathVariable("jobId") Long jobId) {
+        ReInferenceJob job = jobService.getJob(jobId);
+        if (job == null) {
+            return ApiResponse.notFound(3, "未找到重推理任务");
+        }
+        return ApiResponse.success("重推理任务获取成功", job);
+    }
+
+    @PostMapping("/jobs/{jobId}/cancel")
+    public ResponseEntity<Map<String, Object>> cancelJob(@PathVariable("jobId") Long jobId) {
+        if (!jobService.cancelJob(jobId)) {
+            return ApiResponse.notFound(3, "任务不存在或未在运行");
+        }
+        return ApiResponse.success("已请求取消重推理任务");
+    }
+}
@@ -1,10 +1,16 @@
 package com.example.server.controller.winform;
 
+import com.example.server.Utils.DicomSeriesUtils;
+import com.example.server.config.DICOMConfig;
+import com.example.server.model.InferenceContext;
+import com.example.server.model.KnownInstance;
 import com.example.server.model.PatientInfo;
+import com.example.server.repository.InferenceQueueRepository;
 import com.example.server.repository.PatientInfoRepository;
 import com.example.server.service.*;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -17,13 +23,17 @@ import org.springframework.web.bind.annotation.RestController;
 import java.time.LocalDate;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/winform")
 public class SearchController {
-    private static final String HAND_SERIES_DESCRIPTION = "Hand";
     private static final String ERROR_KEY = "error";
     private static final String MESSAGE_KEY = "message";
     private static final String URL_KEY = "url";
@@ -31,24 +41,37 @@ public class SearchController {
     @Value("${frontend.url}")
     private String frontendUrl;
 
-    private final Map<String, Long> sopToPidMap = new ConcurrentHashMap<>();
-
     private final DICOMService dicomService;
     private final PatientInfoRepository patientInfoRepository;
-    private final ImageProcessingService imageProcessingService;
+    private final InferenceQueueService inferenceQueueService;
+    private final SeriesSubmissionService seriesSubmissionService;
+    private final Executor pacsQueryExecutor;
+    private final Executor wadoDownloadExecutor;
+    private final Executor searchExecutor;
+    // 正在后台检索的患者ID
+    private final Set<String> activeSearches = ConcurrentHashMap.newKeySet();
 
     public SearchController(
             DICOMService dicomService,
             PatientInfoRepository patientInfoRepository,
-            ImageProcessingService imageProcessingService
+            InferenceQueueService inferenceQueueService,
+            SeriesSubmissionService seriesSubmissionService,
+            @Qualifier("pacsQueryExecutor") Executor pacsQueryExecutor,
+            @Qualifier("wadoDownloadExecutor") Executor wadoDownloadExecutor,
+            @Qualifier("searchExecutor") Executor searchExecutor
     ) {
         this.dicomService = dicomService;
         this.patientInfoRepository = patientInfoRepository;
-        this.imageProcessingService = imageProcessingService;
+        this.inferenceQueueService = inferenceQueueService;
+        this.seriesSubmissionService = seriesSubmissionService;
+        this.pacsQueryExecutor = pacsQueryExecutor;
+        this.wadoDownloadExecutor = wadoDownloadExecutor;
+        this.searchExecutor = searchExecutor;
     }
 
     /**
-     * 处理搜索请求（请求级别异步，内部同步处理）
+     * 处理搜索请求：确认患者存在后立即响应，Study/Series/Image检索与下载在后台进行，
+     * 每张图像下载完成即提交推理队列
      */
     @GetMapping("/search")
     @Async
@@ -56,6 +79,12 @@ public class SearchController {
             @RequestParam("patientID") String patientID
     ) {
         try {
+            // PACS熔断期间不再逐级等待超时，直接返回数据库中的结果
+            if (!dicomService.isPacsAvailable()) {
+                System.out.println("PACS不可用（熔断中），使用数据库结果: " + patientID);
+                return handleDatabaseFallback(patientID);
+            }
+
             List<Attributes> patients = dicomService.patientSearch(patientID);
             if (patients.isEmpty()) {
                 return handleDatabaseFallback(patientID);
@@ -66,19 +95,7 @@ public class SearchController {
             String birthDateStr = patientAttr.getString(Tag.PatientBirthDate, "");
             String sex = patientAttr.getString(Tag.PatientSex, "U");
 
-            List<Attributes> studies = dicomService.studySearch(patientID);
-            if (studies.isEmpty()) {
-                return completedErrorResponse(HttpStatus.NOT_FOUND, "未找到Study信息");
-            }
-
-            List<String> pngPaths = processAllStudies(patientID, birthDateStr, sex, studies);
-            if (pngPaths.isEmpty()) {
-                return completedErrorResponse(HttpStatus.NOT_FOUND, "未找到符合条件的Hand系列图像");
-            }
-
-            boolean isMale = sex.equalsIgnoreCase("M");
-
-            asyncProcessImages(pngPaths, isMale);
+            startBackgroundSearch(patientID, birthDateStr, sex);
 
             Map<String, String> responseMap = new HashMap<>();
             responseMap.put(MESSAGE_KEY, "推理成功");
@@ -113,31 +130,21 @@ public class SearchController {
 
         // 3. 数据库中找到记录，处理未完成的任务
         List<PatientInfo> unprocessedRecords = patientInfoRepository.findUnprocessedRecords(patientID);
-        List<String> pngPaths = new ArrayList<>();
-
-        // 获取性别信息（使用第一个有效记录）
-        String sex = "U";
-        for (PatientInfo p : dbPatients) {
-            if (p.getSex() != null && !p.getSex().isEmpty()) {
-                sex = p.getSex();
-                break;
-            }
-        }
-        boolean isMale = sex.equalsIgnoreCase("M");
+        List<PendingImage> pendingImages = new ArrayList<>();
 
         for (PatientInfo record : unprocessedRecords) {
             String pngPath = processUnprocessedRecord(record);
             if (pngPath != null) {
-                pngPaths.add(pngPath);
+                pendingImages.add(new PendingImage(pngPath, InferenceContext.from(record)));
             }
         }
 
         // 异步处理图像
-        asyncProcessImages(pngPaths, isMale);
+        asyncProcessImages(pendingImages);
 
         // 4. 返回成功响应（即使没有未处理记录也返回成功）
         System.out.println("患者信息从数据库加载成功" +
-                (pngPaths.isEmpty() ? "" : "，处理了 " + pngPaths.size() + " 个未完成记录"));
+                (pendingImages.isEmpty() ? "" : "，处理了 " + pendingImages.size() + " 个未完成记录"));
         Map<String, String> responseMap = new HashMap<>();
         responseMap.put(MESSAGE_KEY, "推理成功");
         responseMap.put(URL_KEY, frontendUrl + patientID);
@@ -145,79 +152,237 @@ public class SearchController {
     }
 
     /**
-     * 处理所有Study层级的图像
+     * 在后台执行Study及以下层级的检索；同一患者的检索未结束时忽略重复请求
+     */
+    private void startBackgroundSearch(String patientID, String birthDateStr, String sex) {
+        if (!activeSearches.add(patientID)) {
+            System.out.println("患者 " + patientID + " 的检索仍在进行，忽略重复请求");
+            return;
+        }
+        try {
+            searchExecutor.execute(() -> {
+                try {
+                    if (processAllStudies(patientID, birthDateStr, sex) == 0) {
+                        System.out.println("患者 " + patientID + " 没有需要推理的Hand系列图像");
+                    }
+                } catch (Exception e) {
+                    System.err.println("后台检索失败 [" + patientID + "]: " + e.getMessage());
+                } finally {
+                    activeSearches.remove(patientID);
+                }
+            });
+        } catch (RuntimeException e) {
+            activeSearches.remove(patientID);
+            throw e;
+        }
+    }
+
+    /**
+     * 处理所有Study层级的图像，返回提交推理的图像数
      */
-    private List<String> processAllStudies(
+    private int processAllStudies(
             String patientID,
             String birthDateStr,
-            String sex,
-            List<Attributes> studies
+            String sex
     ) {
-        List<String> pngPaths = new ArrayList<>();
-        LocalDate birthDate = parseDicomDate(birthDateStr);
-
-        // 获取数据库中该患者未完成的记录
-        List<PatientInfo> unprocessedRecords = patientInfoRepository.findUnprocessedRecords(patientID);
+        int submitted = 0;
+        LocalDate birthDate = DicomSeriesUtils.parseDicomDate(birthDateStr);
+
+        // 数据库中已登记的实例及推理状态（一次查询），与PACS图像列表比对后只处理缺失或需重新提交的实例
+        KnownInstances known = new KnownInstances(patientInfoRepository.findKnownInstances(patientID));
+
+        QueryTimings timings = new QueryTimings();
+        long startNanos = System.nanoTime();
+
+        // 优先一次关系型查询直接获取全部Hand系列，PACS不支持时才进行Study级查询并逐级查询
+        List<Attributes> handSeries = timings.timeSeries(() -> dicomService.handSeriesSearch(
+                patientID, DicomSeriesUtils.HAND_SERIES_DESCRIPTION));
+        List<CompletableFuture<Integer>> studyFutures;
+        int studyCount;
+        if (handSeries != null) {
+            List<Attributes> seriesToCheck = handSeries.stream()
+                    .filter(DicomSeriesUtils::isHandSeries)
+                    .filter(series -> !known.isSeriesComplete(series))
+                    .toList();
+            studyCount = (int) seriesToCheck.stream()
+                    .map(series -> series.getString(Tag.StudyInstanceUID))
+                    .distinct()
+                    .count();
+            studyFutures = seriesToCheck.stream()
+                    .map(series -> processSeriesAsync(patientID, birthDate, sex, series, series, known, timings))
+                    .toList();
+        } else {
+            List<Attributes> studies = dicomService.studySearch(patientID);
+            if (studies.isEmpty()) {
+                System.out.println("未找到Study信息: " + patientID);
+                return 0;
+            }
+            studyCount = studies.size();
 
-        // 优先处理未完成的记录
-        for (PatientInfo record : unprocessedRecords) {
-            String pngPath = processUnprocessedRecord(record);
-            if (pngPath != null) {
-                pngPaths.add(pngPath);
+            // 各Study之间相互独立：Series查询、Image查询与下载并发执行，并发度受关联池限制
+            studyFutures = studies.stream()
+                    .map(study -> processStudyAsync(patientID, birthDate, sex, study, known, timings))
+                    .toList();
+        }
+        for (CompletableFuture<Integer> future : studyFutures) {
+            try {
+                submitted += future.join();
+            } catch (CompletionException e) {
+                System.err.println("Study处理失败: " + e.getCause().getMessage());
             }
         }
+        System.out.printf("患者 %s 查询完成: Study %d 个, 提交推理 %d 张, 总耗时 %d ms, %s%n",
+                patientID, studyCount, submitted,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), timings);
+        return submitted;
+    }
 
-        // 获取数据库中该患者最新的Study日期
-        LocalDate latestStudyDateInDB = patientInfoRepository.findLatestStudyDateByPatient(patientID);
-
-        for (Attributes study : studies) {
-            String studyDateStr = study.getString(Tag.StudyDate, "");
-            LocalDate studyDate = parseDicomDate(studyDateStr);
+    /**
+     * 异步处理单个Study：查询Series后对每个Hand系列并发查询Image并下载
+     */
+    private CompletableFuture<Integer> processStudyAsync(
+            String patientID,
+            LocalDate birthDate,
+            String sex,
+            Attributes study,
+            KnownInstances known,
+            QueryTimings timings
+    ) {
+        String studyUID = study.getString(Tag.StudyInstanceUID);
+        // 多PACS时只向该Study所在的PACS查询Series
+        String retrieveAETitle = study.getString(Tag.RetrieveAETitle);
+
+        return CompletableFuture
+                .supplyAsync(() -> timings.timeSeries(() -> dicomService.seriesSearch(retrieveAETitle, studyUID)),
+                        pacsQueryExecutor)
+                .thenCompose(seriesList -> {
+                    // 不在线程池任务内阻塞等待子任务，避免线程池耗尽时死锁
+                    List<CompletableFuture<Integer>> seriesFutures = seriesList.stream()
+                            .filter(DicomSeriesUtils::isHandSeries)
+                            .filter(series -> !known.isSeriesComplete(series))
+                            .map(series -> processSeriesAsync(patientID, birthDate, sex, study, series, known, timings))
+                            .toList();
+                    return CompletableFuture.allOf(seriesFutures.toArray(new CompletableFuture<?>[0]))
+                            .thenApply(v -> seriesFutures.stream()
+                                    .mapToInt(CompletableFuture::join)
+                                    .sum());
+                });
+    }
 
-            if (latestStudyDateInDB != null &&
-                    (studyDate == null || !studyDate.isAfter(latestStudyDateInDB))) {
-                continue; // 跳过旧记录
-            }
+    /**
+     * 异步处理单个Hand系列（study提供StudyInstanceUID与StudyDate，关系型查询结果中两者为同一条记录）
+     */
+    private CompletableFuture<Integer> processSeriesAsync(
+            String patientID,
+            LocalDate birthDate,
+            String sex,
+            Attributes study,
+            Attributes series,
+            KnownInstances known,
+            QueryTimings timings
+    ) {
+        String studyUID = study.getString(Tag.StudyInstanceUID);
+        String studyDateStr = study.getString(Tag.StudyDate, "");
+        LocalDate studyDate = DicomSeriesUtils.parseDicomDate(studyDateStr);
+        String seriesUID = series.getString(Tag.SeriesInstanceUID);
+        String retrieveAETitle = series.getString(Tag.RetrieveAETitle, study.getString(Tag.RetrieveAETitle));
+        return CompletableFuture.supplyAsync(() -> processSeries(patientID, birthDate, sex, studyUID,
+                studyDateStr, studyDate, seriesUID, retrieveAETitle, known, timings), pacsQueryExecutor);
+    }
 
-            String studyUID = study.getString(Tag.StudyInstanceUID);
-            List<Attributes> seriesList = dicomService.seriesSearch(studyUID);
-            List<Attributes> handSeries = filterHandSeries(seriesList);
-
-            for (Attributes series : handSeries) {
-                String seriesUID = series.getString(Tag.SeriesInstanceUID);
-                List<Attributes> images = dicomService.imageSearch(seriesUID);
-
-                for (Attributes image : images) {
-                    String sopUID = image.getString(Tag.SOPInstanceUID);
-                    String downloadUrl = dicomService.buildDownloadUrl(
-                            studyUID, seriesUID, sopUID, studyDateStr, patientID
-                    );
-
-                    // 下载并转换DICOM文件
-                    String pngPath = dicomService.downloadAndConvertToPng(downloadUrl, sopUID);
-                    if (pngPath != null) {
-                        pngPaths.add(pngPath);
-
-                        // 保存患者信息到数据库
-                        savePatientInfo(
-                                patientID, birthDate, sex,
-                                studyUID, seriesUID, sopUID, studyDate
-                        );
-                    }
+    /**
+     * 通过C-GET取回整个序列，图像到达即评分，取回结束后按评分筛选，选中的保存患者信息并提交推理（已推理或已在队列中的实例跳过）
+     *
+     * @return 提交推理的图像数
+     */
+    private int retrieveSeries(
+            String studyUID,
+            String seriesUID,
+            String retrieveAETitle,
+            KnownInstances known,
+            SeriesSubmissionService.Submission submission
+    ) {
+        try {
+            dicomService.retrieveSeriesAsPng(retrieveAETitle, studyUID, seriesUID, (sopUID, pngPath) -> {
+                if (known.shouldProcess(sopUID)) {
+                    submission.offer(sopUID, pngPath, null, known.get(sopUID));
                 }
-            }
+            });
+        } catch (Exception e) {
+            System.err.println("C-GET检索序列失败 [" + seriesUID + "]: " + e.getMessage());
         }
-        return pngPaths;
+        return submission.finish().size();
     }
 
     /**
-     * 过滤Hand系列
+     * 查询单个Hand系列的图像，并发下载后按评分筛选，选中的保存患者信息并提交推理，返回提交数
      */
-    private List<Attributes> filterHandSeries(List<Attributes> seriesList) {
-        return seriesList.stream()
-                .filter(series -> HAND_SERIES_DESCRIPTION.equalsIgnoreCase(
-                        series.getString(Tag.SeriesDescription, "")))
-                .collect(Collectors.toList());
+    private int processSeries(
+            String patientID,
+            LocalDate birthDate,
+            String sex,
+            String studyUID,
+            String studyDateStr,
+            LocalDate studyDate,
+            String seriesUID,
+            String retrieveAETitle,
+            KnownInstances known,
+            QueryTimings timings
+    ) {
+        SeriesSubmissionService.Series series = new SeriesSubmissionService.Series(
+                patientID, birthDate, sex, studyUID, seriesUID, studyDate, retrieveAETitle);
+        if (dicomService.getRetrieveMode(retrieveAETitle) == DICOMConfig.RetrieveMode.CGET) {
+            int retrieved = retrieveSeries(studyUID, seriesUID, retrieveAETitle, known,
+                    seriesSubmissionService.open(series, InferenceQueueRepository.PRIORITY_NORMAL));
+            if (retrieved > 0) {
+                return retrieved;
+            }
+            // C-GET未取回任何图像时回退到WADO逐个下载
+        }
+
+        List<Attributes> images = timings.timeImage(() -> dicomService.imageSearch(retrieveAETitle, seriesUID));
+        SeriesSubmissionService.Submission submission =
+                seriesSubmissionService.open(series, InferenceQueueRepository.PRIORITY_NORMAL);
+
+        // 只下载数据库中没有的实例，以及已入库但未推理且不在队列中的实例；
+        // 同一序列的图像并发下载，每主机并发数由WadoFetcher限制
+        List<CompletableFuture<Void>> downloads = new ArrayList<>();
+        for (Attributes image : images) {
+            String sopUID = image.getString(Tag.SOPInstanceUID);
+            if (!known.shouldProcess(sopUID)) {
+                continue;
+            }
+            Runnable download = () -> {
+                String downloadUrl = dicomService.buildDownloadUrl(
+                        retrieveAETitle, studyUID, seriesUID, sopUID, studyDateStr, patientID
+                );
+
+                // 下载并转换DICOM文件，完成即评分
+                String pngPath = dicomService.downloadAndConvertToPng(downloadUrl, sopUID);
+                if (pngPath != null) {
+                    submission.offer(sopUID, pngPath, image.getString(Tag.ImageType), known.get(sopUID));
+                }
+            };
+            try {
+                downloads.add(CompletableFuture.runAsync(download, wadoDownloadExecutor));
+            } catch (RejectedExecutionException e) {
+                // 下载线程池已满时在当前线程执行，保证序列结束时仍能完成筛选与提交
+                try {
+                    download.run();
+                } catch (RuntimeException ex) {
+                    System.err.println("图像处理失败: " + ex.getMessage());
+                }
+            }
+        }
+
+        for (CompletableFuture<Void> download : downloads) {
+            try {
+                download.join();
+            } catch (CompletionException e) {
+                System.err.println("图像处理失败: " + e.getCause().getMessage());
+            }
+        }
+        return submission.finish().size();
     }
 
     /**
@@ -225,29 +390,8 @@ public class SearchController {
      */
     private String processUnprocessedRecord(PatientInfo patientInfo) {
         try {
-            // 检查必要字段是否为空
-            if (patientInfo.getStudyInstanceUID() == null ||
-                    patientInfo.getSeriesInstanceUID() == null ||
-                    patientInfo.getSOPInstanceUID() == null ||
-                    patientInfo.getStudyDate() == null) {
-
-                System.err.println("患者记录 " + patientInfo.getPID() + " 缺少必要信息，无法处理");
-                return null;
-            }
-
             // 重新下载图像
-            String downloadUrl = dicomService.buildDownloadUrl(
-                    patientInfo.getStudyInstanceUID(),
-                    patientInfo.getSeriesInstanceUID(),
-                    patientInfo.getSOPInstanceUID(),
-                    patientInfo.getStudyDate().toString().replace("-", ""),
-                    patientInfo.getPatientID()
-            );
-
-            return dicomService.downloadAndConvertToPng(
-                    downloadUrl,
-                    patientInfo.getSOPInstanceUID()
-            );
+            return dicomService.downloadAndConvertToPng(patientInfo);
         } catch (Exception e) {
             System.err.println("重新下载图像失败: " + e.getMessage());
             return null;
@@ -255,79 +399,106 @@ public class SearchController {
     }
 
     /**
-     * 异步处理所有图像
+     * 将所有图像提交到持久化推理队列
      */
-    private void asyncProcessImages(List<String> pngPaths, boolean isMale) {
-        for (String pngPath : pngPaths) {
-            imageProcessingService.processImageAsync(pngPath, isMale)
-                    .exceptionally(ex -> {
-                        System.err.println("异步处理图像失败: " + ex.getMessage());
-                        return null;
-                    });
+    private void asyncProcessImages(List<PendingImage> pendingImages) {
+        for (PendingImage pendingImage : pendingImages) {
+            submitImage(pendingImage.pngPath(), pendingImage.context());
         }
     }
 
     /**
-     * 解析DICOM日期格式（如 "20230815" -> LocalDate）
+     * 提交单张图像到持久化推理队列
      */
-    private LocalDate parseDicomDate(String dicomDate) {
-        if (dicomDate == null || dicomDate.length() < 8) {
-            System.err.println("无效的DICOM日期格式: " + dicomDate);
-            return null;
-        }
+    private boolean submitImage(String pngPath, InferenceContext context) {
         try {
-            return LocalDate.parse(
-                    dicomDate.substring(0, 4) + "-" +
-                            dicomDate.substring(4, 6) + "-" +
-                            dicomDate.substring(6, 8)
-            );
+            inferenceQueueService.enqueue(pngPath, context);
+            return true;
         } catch (Exception e) {
-            System.err.println("日期解析失败: " + dicomDate);
-            return null;
+            System.err.println("提交推理任务失败: " + e.getMessage());
+            return false;
         }
     }
 
     /**
-     * 保存患者信息到数据库
+     * 快速构建错误响应
      */
-    private void savePatientInfo(
-            String patientID,
-            LocalDate birthDate,
-            String sex,
-            String studyUID,
-            String seriesUID,
-            String sopUID,
-            LocalDate studyDate
-    ) {
-        if (studyDate == null) {
-            System.err.println("跳过无效Study日期的记录");
-            return;
+    private CompletableFuture<ResponseEntity<?>> completedErrorResponse(HttpStatus status, String message) {
+        return CompletableFuture.completedFuture(
+                ResponseEntity.status(status).body(Map.of(ERROR_KEY, message))
+        );
+    }
+
+    /**
+     * 单次搜索开始时数据库中该患者已登记的实例，按SOPInstanceUID索引
+     */
+    private static final class KnownInstances {
+        private final Map<String, KnownInstance> bySop = new HashMap<>();
+
+        KnownInstances(List<KnownInstance> instances) {
+            for (KnownInstance instance : instances) {
+                bySop.put(instance.sopInstanceUID(), instance);
+            }
         }
-        PatientInfo patientInfo = new PatientInfo();
-        patientInfo.setPatientID(patientID);
-        patientInfo.setBrithDate(birthDate);
-        patientInfo.setSex(sex);
-        patientInfo.setStudyInstanceUID(studyUID);
-        patientInfo.setSeriesInstanceUID(seriesUID);
-        patientInfo.setSOPInstanceUID(sopUID);
-        patientInfo.setStudyDate(studyDate);
-        patientInfo.setInferenceID(null);
 
-        try {
-            Long pid = patientInfoRepository.save(patientInfo);
-            sopToPidMap.put(sopUID, pid);
-        } catch (Exception e) {
-            System.err.println("保存患者信息失败: " + e.getMessage());
+        KnownInstance get(String sopUID) {
+            return bySop.get(sopUID);
+        }
+
+        /**
+         * 新实例，或已入库但没有推理结果且不在队列中的实例
+         */
+        boolean shouldProcess(String sopUID) {
+            KnownInstance instance = bySop.get(sopUID);
+            return instance == null || instance.needsInference();
+        }
+
+        /**
+         * PACS返回了序列实例数且已全部入库时无需再查询该序列的图像
+         */
+        boolean isSeriesComplete(Attributes series) {
+            return DicomSeriesUtils.isSeriesComplete(series, bySop.values());
         }
     }
 
     /**
-     * 快速构建错误响应
+     * 已下载待推理的图像及其上下文
      */
-    private CompletableFuture<ResponseEntity<?>> completedErrorResponse(HttpStatus status, String message) {
-        return CompletableFuture.completedFuture(
-                ResponseEntity.status(status).body(Map.of(ERROR_KEY, message))
-        );
+    private record PendingImage(String pngPath, InferenceContext context) {
     }
 
-}
\ No newline at end of file
+    /**
+     * 单次搜索请求内各查询层级的累计耗时
+     */
+    private static final class QueryTimings {
+        private final LongAdder seriesNanos = new LongAdder();
+        private final LongAdder seriesCount = new LongAdder();
+        private final LongAdder imageNanos = new LongAdder();
+        private final LongAdder imageCount = new LongAdder();
+
+        <T> T timeSeries(Supplier<T> query) {
+            return time(query, seriesNanos, seriesCount);
+        }
+
+        <T> T timeImage(Supplier<T> query) {
+            return time(query, imageNanos, imageCount);
+        }
+
+        private static <T> T time(Supplier<T> query, LongAdder nanos, LongAdder count) {
+            long start = System.nanoTime();
+            try {
+                return query.get();
+            } finally {
+                nanos.add(System.nanoTime() - start);
+                count.increment();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Series查询 %d 次/累计 %d ms, Image查询 %d 次/累计 %d ms",
+                    seriesCount.sum(), TimeUnit.NANOSECONDS.toMillis(seriesNanos.sum()),
+                    imageCount.sum(), TimeUnit.NANOSECONDS.toMillis(imageNanos.sum()));
+        }
+    }
+}
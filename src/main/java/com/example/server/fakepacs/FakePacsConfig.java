@@ -0,0 +1,34 @@
+package com.example.server.fakepacs;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.nio.file.Path;
+
+/**
+ * loadtest 配置文件下随应用启动模拟PACS，dicom.* 指向本机即可离线压测搜索链路
+ */
+@Configuration
+@Profile("loadtest")
+public class FakePacsConfig {
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public FakePacsServer fakePacsServer(
+            @Value("${dicom.pacs-ae-title}") String aeTitle,
+            @Value("${dicom.pacs-port}") int dicomPort,
+            @Value("${dicom.download-port}") int httpPort,
+            @Value("${fakepacs.data-dir:temp/fakepacs}") String dataDir,
+            @Value("${fakepacs.patients:100}") int patients,
+            @Value("${fakepacs.studies-per-patient:2}") int studiesPerPatient,
+            @Value("${fakepacs.latency-ms:0}") long latencyMillis,
+            @Value("${fakepacs.failure-rate:0}") double failureRate
+    ) throws Exception {
+        FakePacsServer server = new FakePacsServer(aeTitle, dicomPort, httpPort);
+        server.addInstances(new SyntheticDicomGenerator(Path.of(dataDir)).generate(patients, studiesPerPatient));
+        server.setLatencyMillis(latencyMillis);
+        server.setFailureRate(failureRate);
+        return server;
+    }
+}
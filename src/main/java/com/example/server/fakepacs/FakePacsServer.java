@@ -0,0 +1,451 @@
+package com.example.server.fakepacs;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Fragments;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.io.DicomOutputStream;
+import org.dcm4che3.net.ApplicationEntity;
+import org.dcm4che3.net.Association;
+import org.dcm4che3.net.Connection;
+import org.dcm4che3.net.Device;
+import org.dcm4che3.net.Dimse;
+import org.dcm4che3.net.QueryOption;
+import org.dcm4che3.net.Status;
+import org.dcm4che3.net.TransferCapability;
+import org.dcm4che3.net.pdu.PresentationContext;
+import org.dcm4che3.net.service.BasicCEchoSCP;
+import org.dcm4che3.net.service.BasicCFindSCP;
+import org.dcm4che3.net.service.BasicCGetSCP;
+import org.dcm4che3.net.service.BasicQueryTask;
+import org.dcm4che3.net.service.BasicRetrieveTask;
+import org.dcm4che3.net.service.DicomServiceException;
+import org.dcm4che3.net.service.DicomServiceRegistry;
+import org.dcm4che3.net.service.InstanceLocator;
+import org.dcm4che3.net.service.QueryTask;
+import org.dcm4che3.net.service.RetrieveTask;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 可嵌入的模拟PACS：C-FIND（PATIENT/STUDY/SERIES/IMAGE，支持关系型查询）、C-GET、C-ECHO
+ * 与 WADO HTTP 下载（支持按 transferSyntax 参数返回RLE无损压缩），数据来自本地合成DICOM目录；可配置每次请求的延迟和失败率，
+ * 用于离线集成测试与压测（loadtest 配置文件）
+ */
+public class FakePacsServer implements AutoCloseable {
+    private final String aeTitle;
+    private final int dicomPort;
+    private final int httpPort;
+
+    private final List<Instance> instances = new ArrayList<>();
+    private final Map<String, Instance> instancesBySop = new ConcurrentHashMap<>();
+
+    private volatile long latencyMillis;
+    private volatile double failureRate;
+
+    private final AtomicLong findRequests = new AtomicLong();
+    private final AtomicLong getRequests = new AtomicLong();
+    private final AtomicLong wadoRequests = new AtomicLong();
+
+    private Device device;
+    private HttpServer httpServer;
+    private ExecutorService executor;
+    private ScheduledExecutorService scheduledExecutor;
+
+    /**
+     * 一个实例：不含像素的头信息（用于查询匹配）及其DICOM文件
+     */
+    public record Instance(Attributes header, Path file) {
+    }
+
+    public FakePacsServer(String aeTitle, int dicomPort, int httpPort) {
+        this.aeTitle = aeTitle;
+        this.dicomPort = dicomPort;
+        this.httpPort = httpPort;
+    }
+
+    public void addInstances(Collection<Instance> newInstances) {
+        synchronized (instances) {
+            instances.addAll(newInstances);
+        }
+        for (Instance instance : newInstances) {
+            instancesBySop.put(instance.header().getString(Tag.SOPInstanceUID), instance);
+        }
+    }
+
+    public void start() throws Exception {
+        ThreadFactory daemon = runnable -> {
+            Thread thread = new Thread(runnable, "FakePacs");
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor = Executors.newCachedThreadPool(daemon);
+        scheduledExecutor = Executors.newSingleThreadScheduledExecutor(daemon);
+
+        device = new Device("fakepacs");
+        Connection conn = new Connection();
+        conn.setHostname("127.0.0.1");
+        conn.setPort(dicomPort);
+        device.addConnection(conn);
+
+        ApplicationEntity ae = new ApplicationEntity(aeTitle);
+        ae.addConnection(conn);
+        ae.setAssociationAcceptor(true);
+        for (String cuid : new String[]{
+                UID.PatientRootQueryRetrieveInformationModelFind,
+                UID.StudyRootQueryRetrieveInformationModelFind}) {
+            TransferCapability tc = new TransferCapability(null, cuid, TransferCapability.Role.SCP, "*");
+            tc.setQueryOptions(EnumSet.of(QueryOption.RELATIONAL));
+            ae.addTransferCapability(tc);
+        }
+        ae.addTransferCapability(new TransferCapability(
+                null, UID.StudyRootQueryRetrieveInformationModelGet, TransferCapability.Role.SCP, "*"));
+        ae.addTransferCapability(new TransferCapability(null, UID.Verification, TransferCapability.Role.SCP, "*"));
+        // C-GET 时在同一关联上以存储SCU角色回传实例
+        ae.addTransferCapability(new TransferCapability(null, "*", TransferCapability.Role.SCU, "*"));
+        device.addApplicationEntity(ae);
+
+        DicomServiceRegistry registry = new DicomServiceRegistry();
+        registry.addDicomService(new BasicCEchoSCP());
+        registry.addDicomService(new FindSCP());
+        registry.addDicomService(new GetSCP());
+        device.setDimseRQHandler(registry);
+        device.setExecutor(executor);
+        device.setScheduledExecutor(scheduledExecutor);
+        device.bindConnections();
+
+        httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", httpPort), 0);
+        httpServer.createContext("/", this::handleWado);
+        httpServer.setExecutor(executor);
+        httpServer.start();
+        System.out.printf("模拟PACS已启动: %s@127.0.0.1:%d, WADO端口 %d, 实例 %d 个%n",
+                aeTitle, dicomPort, httpPort, instancesBySop.size());
+    }
+
+    @Override
+    public void close() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+        }
+        if (device != null) {
+            device.unbindConnections();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            scheduledExecutor.shutdownNow();
+        }
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    public List<String> getPatientIDs() {
+        synchronized (instances) {
+            return instances.stream()
+                    .map(instance -> instance.header().getString(Tag.PatientID))
+                    .distinct()
+                    .toList();
+        }
+    }
+
+    public long getFindRequests() {
+        return findRequests.get();
+    }
+
+    public long getGetRequests() {
+        return getRequests.get();
+    }
+
+    public long getWadoRequests() {
+        return wadoRequests.get();
+    }
+
+    // ----------------------- 查询匹配 -----------------------
+
+    /**
+     * 按查询层级返回去重后的匹配结果，只包含请求中出现的属性
+     */
+    List<Attributes> findMatches(Attributes keys) {
+        String level = keys.getString(Tag.QueryRetrieveLevel, "");
+        int uniqueTag = switch (level) {
+            case "PATIENT" -> Tag.PatientID;
+            case "STUDY" -> Tag.StudyInstanceUID;
+            case "SERIES" -> Tag.SeriesInstanceUID;
+            default -> Tag.SOPInstanceUID;
+        };
+
+        Map<String, Attributes> matches = new LinkedHashMap<>();
+        synchronized (instances) {
+            for (Instance instance : instances) {
+                Attributes header = instance.header();
+                String unique = header.getString(uniqueTag);
+                if (matches.containsKey(unique) || !matches(header, keys)) {
+                    continue;
+                }
+                Attributes match = new Attributes();
+                match.addSelected(header, keys);
+                match.setString(Tag.QueryRetrieveLevel, VR.CS, level);
+                matches.put(unique, match);
+            }
+        }
+        return new ArrayList<>(matches.values());
+    }
+
+    private static boolean matches(Attributes header, Attributes keys) {
+        for (int tag : keys.tags()) {
+            if (tag == Tag.QueryRetrieveLevel || tag == Tag.SpecificCharacterSet) {
+                continue;
+            }
+            String expected = keys.getString(tag);
+            if (expected == null || expected.isEmpty() || "*".equals(expected)) {
+                continue;
+            }
+            String actual = header.getString(tag, "");
+            boolean matched = tag == Tag.StudyDate || tag == Tag.StudyTime
+                    ? matchesDateRange(actual, expected)
+                    : actual.matches(wildcardToRegex(expected));
+            if (!matched) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesDateRange(String actual, String range) {
+        int dash = range.indexOf('-');
+        if (dash < 0) {
+            return actual.equals(range);
+        }
+        String from = range.substring(0, dash);
+        String to = range.substring(dash + 1);
+        return (from.isEmpty() || actual.compareTo(from) >= 0)
+                && (to.isEmpty() || actual.compareTo(to) <= 0);
+    }
+
+    private static String wildcardToRegex(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : pattern.toCharArray()) {
+            switch (c) {
+                case '*' -> regex.append(".*");
+                case '?' -> regex.append('.');
+                default -> regex.append(java.util.regex.Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return regex.toString();
+    }
+
+    private boolean simulateLatencyAndFailure() {
+        long latency = latencyMillis;
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate;
+    }
+
+    // ----------------------- DIMSE 服务 -----------------------
+
+    private class FindSCP extends BasicCFindSCP {
+        FindSCP() {
+            super(UID.PatientRootQueryRetrieveInformationModelFind, UID.StudyRootQueryRetrieveInformationModelFind);
+        }
+
+        @Override
+        protected QueryTask calculateMatches(Association as, PresentationContext pc, Attributes rq, Attributes keys)
+                throws DicomServiceException {
+            findRequests.incrementAndGet();
+            if (simulateLatencyAndFailure()) {
+                throw new DicomServiceException(Status.UnableToProcess, "模拟PACS故障");
+            }
+            Iterator<Attributes> results = findMatches(keys).iterator();
+            return new BasicQueryTask(as, pc, rq, keys) {
+                @Override
+                protected boolean hasMoreMatches() {
+                    return results.hasNext();
+                }
+
+                @Override
+                protected Attributes nextMatch() {
+                    return results.next();
+                }
+            };
+        }
+    }
+
+    private class GetSCP extends BasicCGetSCP {
+        GetSCP() {
+            super(UID.StudyRootQueryRetrieveInformationModelGet);
+        }
+
+        @Override
+        protected RetrieveTask calculateMatches(Association as, PresentationContext pc, Attributes rq, Attributes keys)
+                throws DicomServiceException {
+            getRequests.incrementAndGet();
+            if (simulateLatencyAndFailure()) {
+                throw new DicomServiceException(Status.UnableToProcess, "模拟PACS故障");
+            }
+            Attributes imageKeys = new Attributes(keys);
+            imageKeys.setString(Tag.QueryRetrieveLevel, VR.CS, "IMAGE");
+            imageKeys.setNull(Tag.SOPInstanceUID, VR.UI);
+            List<InstanceLocator> locators = new ArrayList<>();
+            for (Attributes match : findMatches(imageKeys)) {
+                Instance instance = instancesBySop.get(match.getString(Tag.SOPInstanceUID));
+                locators.add(new InstanceLocator(
+                        instance.header().getString(Tag.SOPClassUID),
+                        match.getString(Tag.SOPInstanceUID),
+                        UID.ExplicitVRLittleEndian,
+                        instance.file().toUri().toString()));
+            }
+            return new BasicRetrieveTask<>(Dimse.C_GET_RQ, as, pc, rq, locators, as);
+        }
+    }
+
+    // ----------------------- WADO -----------------------
+
+    private void handleWado(HttpExchange exchange) throws IOException {
+        wadoRequests.incrementAndGet();
+        try (exchange) {
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            Instance instance = instancesBySop.get(params.getOrDefault("objectUID", ""));
+            if (instance == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            if (simulateLatencyAndFailure()) {
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+
+            // 请求RLE无损时现场转码，其余传输语法请求按存储格式（非压缩）返回
+            byte[] body = UID.RLELossless.equals(params.get("transferSyntax"))
+                    ? toRle(instance.file())
+                    : Files.readAllBytes(instance.file());
+            exchange.getResponseHeaders().set("Content-Type", "application/dicom");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private static byte[] toRle(Path file) throws IOException {
+        Attributes dataset;
+        try (DicomInputStream in = new DicomInputStream(file.toFile())) {
+            dataset = in.readDataset();
+        }
+        int bytesPerSample = dataset.getInt(Tag.BitsAllocated, 16) / 8;
+        byte[] pixels = dataset.getBytes(Tag.PixelData);
+
+        ByteArrayOutputStream rle = new ByteArrayOutputStream();
+        List<byte[]> segments = new ArrayList<>();
+        // 每个字节平面一段，高字节在前
+        for (int s = bytesPerSample - 1; s >= 0; s--) {
+            segments.add(packBits(pixels, s, bytesPerSample));
+        }
+        int offset = 64;
+        writeInt32LE(rle, segments.size());
+        for (int i = 0; i < 15; i++) {
+            writeInt32LE(rle, i < segments.size() ? offset : 0);
+            offset += i < segments.size() ? segments.get(i).length : 0;
+        }
+        for (byte[] segment : segments) {
+            rle.write(segment);
+        }
+
+        Fragments fragments = dataset.newFragments(Tag.PixelData, VR.OB, 2);
+        fragments.add(new byte[0]);
+        fragments.add(rle.toByteArray());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DicomOutputStream dos = new DicomOutputStream(out, UID.ExplicitVRLittleEndian)) {
+            dos.writeDataset(dataset.createFileMetaInformation(UID.RLELossless), dataset);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * PackBits 编码一个字节平面：重复串编码为 (1-n, 值)，其余按不超过128字节的原样串输出，段长补齐为偶数
+     */
+    private static byte[] packBits(byte[] pixels, int plane, int stride) {
+        int count = pixels.length / stride;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int i = 0;
+        while (i < count) {
+            byte value = pixels[i * stride + plane];
+            int run = 1;
+            while (i + run < count && run < 128 && pixels[(i + run) * stride + plane] == value) {
+                run++;
+            }
+            if (run > 1) {
+                out.write(1 - run);
+                out.write(value);
+                i += run;
+                continue;
+            }
+            int literal = 1;
+            while (i + literal < count && literal < 128
+                    && (i + literal + 1 >= count
+                    || pixels[(i + literal) * stride + plane] != pixels[(i + literal + 1) * stride + plane])) {
+                literal++;
+            }
+            out.write(literal - 1);
+            for (int k = 0; k < literal; k++) {
+                out.write(pixels[(i + k) * stride + plane]);
+            }
+            i += literal;
+        }
+        if (out.size() % 2 != 0) {
+            out.write(0);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeInt32LE(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >> 8);
+        out.write(value >> 16);
+        out.write(value >> 24);
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.server.fakepacs;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomOutputStream;
+import org.dcm4che3.util.UIDUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 由内置测试PNG生成合成DICOM：每个患者若干次检查，每次检查含一个Hand序列和一个非Hand序列，
+ * 像素为12位存储的DX图像，便于覆盖窗宽窗位与序列过滤逻辑
+ */
+public class SyntheticDicomGenerator {
+    private static final String[] SOURCE_IMAGES = {
+            "/static/test_handX_L.png",
+            "/static/test_handX_R.png"
+    };
+    private static final DateTimeFormatter DA = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final DateTimeFormatter TM = DateTimeFormatter.ofPattern("HHmmss");
+
+    private final Path dataDir;
+    private final List<short[]> pixelSources = new ArrayList<>();
+    private final List<int[]> pixelSizes = new ArrayList<>();
+
+    public SyntheticDicomGenerator(Path dataDir) throws IOException {
+        this.dataDir = dataDir;
+        Files.createDirectories(dataDir);
+        for (String resource : SOURCE_IMAGES) {
+            loadSource(resource);
+        }
+    }
+
+    /**
+     * 生成实例文件并返回索引（不含PixelData的头信息 + 文件路径）
+     */
+    public List<FakePacsServer.Instance> generate(int patients, int studiesPerPatient) throws IOException {
+        List<FakePacsServer.Instance> instances = new ArrayList<>();
+        LocalDate today = LocalDate.now();
+        // 所有检查的时间取生成时刻，最近一次检查即"刚刚完成"的检查（用于验证预取的时间窗口查询）
+        String studyTime = LocalTime.now().format(TM);
+        for (int p = 1; p <= patients; p++) {
+            String patientID = String.format("FAKE%04d", p);
+            String sex = p % 2 == 0 ? "F" : "M";
+            LocalDate birthDate = today.minusYears(6 + p % 10).minusDays(p);
+
+            for (int s = 0; s < studiesPerPatient; s++) {
+                String studyUID = UIDUtils.createUID();
+                LocalDate studyDate = today.minusMonths(6L * (studiesPerPatient - 1 - s));
+                int source = (p + s) % pixelSources.size();
+
+                instances.add(write(patientID, sex, birthDate, studyUID, studyDate, studyTime, "Hand", 1, source));
+                instances.add(write(patientID, sex, birthDate, studyUID, studyDate, studyTime, "Chest", 2, source));
+            }
+        }
+        return instances;
+    }
+
+    private FakePacsServer.Instance write(String patientID, String sex, LocalDate birthDate, String studyUID,
+                                          LocalDate studyDate, String studyTime, String seriesDescription,
+                                          int seriesNumber, int source) throws IOException {
+        String seriesUID = UIDUtils.createUID();
+        String sopUID = UIDUtils.createUID();
+        int[] size = pixelSizes.get(source);
+
+        Attributes header = new Attributes();
+        header.setString(Tag.SOPClassUID, VR.UI, UID.DigitalXRayImageStorageForPresentation);
+        header.setString(Tag.SOPInstanceUID, VR.UI, sopUID);
+        header.setString(Tag.PatientID, VR.LO, patientID);
+        header.setString(Tag.PatientName, VR.PN, "Fake^" + patientID);
+        header.setString(Tag.PatientSex, VR.CS, sex);
+        header.setString(Tag.PatientBirthDate, VR.DA, birthDate.format(DA));
+        header.setString(Tag.StudyInstanceUID, VR.UI, studyUID);
+        header.setString(Tag.StudyDate, VR.DA, studyDate.format(DA));
+        header.setString(Tag.StudyTime, VR.TM, studyTime);
+        header.setString(Tag.SeriesInstanceUID, VR.UI, seriesUID);
+        header.setString(Tag.SeriesDescription, VR.LO, seriesDescription);
+        header.setInt(Tag.SeriesNumber, VR.IS, seriesNumber);
+        header.setString(Tag.Modality, VR.CS, "DX");
+
+        Attributes dataset = new Attributes(header);
+        dataset.setInt(Tag.Rows, VR.US, size[1]);
+        dataset.setInt(Tag.Columns, VR.US, size[0]);
+        dataset.setInt(Tag.SamplesPerPixel, VR.US, 1);
+        dataset.setString(Tag.PhotometricInterpretation, VR.CS, "MONOCHROME2");
+        dataset.setInt(Tag.BitsAllocated, VR.US, 16);
+        dataset.setInt(Tag.BitsStored, VR.US, 12);
+        dataset.setInt(Tag.HighBit, VR.US, 11);
+        dataset.setInt(Tag.PixelRepresentation, VR.US, 0);
+        dataset.setString(Tag.WindowCenter, VR.DS, "2048");
+        dataset.setString(Tag.WindowWidth, VR.DS, "4096");
+        dataset.setValue(Tag.PixelData, VR.OW, toBytes(pixelSources.get(source)));
+
+        Path file = dataDir.resolve(sopUID + ".dcm");
+        try (DicomOutputStream out = new DicomOutputStream(file.toFile())) {
+            out.writeDataset(dataset.createFileMetaInformation(UID.ExplicitVRLittleEndian), dataset);
+        }
+        return new FakePacsServer.Instance(header, file);
+    }
+
+    private void loadSource(String resource) throws IOException {
+        try (InputStream in = getClass().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("测试图像不存在: " + resource);
+            }
+            BufferedImage image = ImageIO.read(in);
+            int width = image.getWidth();
+            int height = image.getHeight();
+            short[] pixels = new short[width * height];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int rgb = image.getRGB(x, y);
+                    int gray = (((rgb >> 16) & 0xff) + ((rgb >> 8) & 0xff) + (rgb & 0xff)) / 3;
+                    pixels[y * width + x] = (short) (gray << 4); // 8位灰度扩展到12位
+                }
+            }
+            pixelSources.add(pixels);
+            pixelSizes.add(new int[]{width, height});
+        }
+    }
+
+    private static byte[] toBytes(short[] pixels) {
+        byte[] bytes = new byte[pixels.length * 2];
+        for (int i = 0; i < pixels.length; i++) {
+            bytes[2 * i] = (byte) pixels[i];
+            bytes[2 * i + 1] = (byte) (pixels[i] >> 8);
+        }
+        return bytes;
+    }
+}
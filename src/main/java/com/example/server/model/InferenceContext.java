@@ -0,0 +1,34 @@
+package com.example.server.model;
+
+import java.time.LocalDate;
+
+/**
+ * 推理任务上下文：在检索、队列与推理流程之间传递，避免按文件名反查患者记录
+ */
+public record InferenceContext(
+        Long pid,
+        String patientID,
+        String studyInstanceUID,
+        String seriesInstanceUID,
+        String sopInstanceUID,
+        LocalDate studyDate,
+        String sex,
+        LocalDate birthDate
+) {
+    public boolean isMale() {
+        return "M".equalsIgnoreCase(sex);
+    }
+
+    public static InferenceContext from(PatientInfo patientInfo) {
+        return new InferenceContext(
+                patientInfo.getPID(),
+                patientInfo.getPatientID(),
+                patientInfo.getStudyInstanceUID(),
+                patientInfo.getSeriesInstanceUID(),
+                patientInfo.getSOPInstanceUID(),
+                patientInfo.getStudyDate(),
+                patientInfo.getSex(),
+                patientInfo.getBrithDate()
+        );
+    }
+}
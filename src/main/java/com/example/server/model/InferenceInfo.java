@@ -9,4 +9,5 @@ public class InferenceInfo {
     private Long RCResultID;
     private Long TCRResultID;
     private Long TCCResultID;
+    private String ModelVersion;
 }
\ No newline at end of file
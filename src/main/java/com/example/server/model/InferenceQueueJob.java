@@ -0,0 +1,21 @@
+package com.example.server.model;
+
+import lombok.Data;
+import java.time.LocalDateTime;
+
+@Data
+public class InferenceQueueJob {
+    private Long JobID;
+    private String PngPath;
+    private Long PID;
+    private String SOPInstanceUID;
+    private Boolean IsMale;
+    private String Status;          // PENDING / RUNNING / DONE / FAILED
+    private Integer Priority;       // 数值大的先领取（后台预取为低优先级）
+    private Integer Attempts;
+    private String LeaseOwner;      // 持有租约的工作节点
+    private Long LeaseExpireAt;     // 租约到期时间（毫秒时间戳）
+    private String LastError;
+    private LocalDateTime CreateTime;
+    private LocalDateTime UpdateTime;
+}
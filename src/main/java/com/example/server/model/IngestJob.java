@@ -0,0 +1,65 @@
+package com.example.server.model;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地DICOM目录导入任务（仅保存在内存中，重启后需重新提交；已入库的实例不会重复导入）
+ */
+@Data
+public class IngestJob {
+    private Long JobID;
+    private String Directory;
+    private boolean Watch;                      // 完成首次扫描后继续监视目录中的新文件
+    private volatile String Status;             // RUNNING / COMPLETED / CANCELLED / FAILED
+    private volatile String LastError;
+    private LocalDateTime StartTime;
+    private volatile LocalDateTime EndTime;
+
+    private final AtomicLong FilesScanned = new AtomicLong();      // 扫描到的文件数
+    private final AtomicLong HeadersParsed = new AtomicLong();     // 成功解析头信息的DICOM文件数
+    private final AtomicLong HandInstances = new AtomicLong();     // 其中的Hand系列实例数
+    private final AtomicLong Skipped = new AtomicLong();           // 已推理或已在队列中的实例
+    private final AtomicLong Inserted = new AtomicLong();          // 新写入 patient_info 的记录数
+    private final AtomicLong Enqueued = new AtomicLong();          // 解码完成并提交推理的图像数
+    private final AtomicLong Failed = new AtomicLong();            // 解析、入库或解码失败的文件数
+
+    @Getter(AccessLevel.NONE)
+    private final long startNanos = System.nanoTime();
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile long endNanos;
+
+    /**
+     * 结束任务并固定耗时（之后的吞吐量不再随时间下降）
+     */
+    public void finish(String status, String error) {
+        endNanos = System.nanoTime();
+        EndTime = LocalDateTime.now();
+        LastError = error;
+        Status = status;
+    }
+
+    public double getElapsedSeconds() {
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+        return (end - startNanos) / 1e9;
+    }
+
+    public double getFilesPerSecond() {
+        return rate(FilesScanned.get());
+    }
+
+    public double getImagesPerSecond() {
+        return rate(Enqueued.get());
+    }
+
+    private double rate(long count) {
+        double seconds = getElapsedSeconds();
+        return seconds > 0 ? count / seconds : 0;
+    }
+}
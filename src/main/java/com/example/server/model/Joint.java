@@ -0,0 +1,33 @@
+package com.example.server.model;
+
+/**
+ * RUS 评分所需的13个关节，枚举顺序即各数组中的下标
+ */
+public enum Joint {
+    MCPFirst("MCPFirst"),
+    MCPThird("MCP"),
+    MCPFifth("MCP"),
+    PIPFirst("PIPFirst"),
+    PIPThird("PIP"),
+    PIPFifth("PIP"),
+    MIPThird("MIP"),
+    MIPFifth("MIP"),
+    DIPFirst("DIPFirst"),
+    DIPThird("DIP"),
+    DIPFifth("DIP"),
+    Radius("Radius"),
+    Ulna("Ulna");
+
+    public static final int COUNT = values().length;
+
+    // 对应的分类模型名称（/model/<name>.onnx）
+    private final String modelName;
+
+    Joint(String modelName) {
+        this.modelName = modelName;
+    }
+
+    public String getModelName() {
+        return modelName;
+    }
+}
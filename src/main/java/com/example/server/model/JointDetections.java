@@ -0,0 +1,49 @@
+package com.example.server.model;
+
+/**
+ * 检测阶段输出：按 {@link Joint} 下标存放的检测框 [x1, y1, x2, y2]
+ * @param boxes 长度为 Joint.COUNT * 4 的坐标数组（原图坐标系）
+ * @param presentMask 第 i 位为1表示 Joint 序号 i 已检测到
+ * @param detectionId DetectionInfo 表中的记录ID
+ */
+public record JointDetections(float[] boxes, int presentMask, Long detectionId) {
+
+    public boolean has(Joint joint) {
+        return (presentMask & (1 << joint.ordinal())) != 0;
+    }
+
+    public float x1(Joint joint) {
+        return boxes[joint.ordinal() * 4];
+    }
+
+    public float y1(Joint joint) {
+        return boxes[joint.ordinal() * 4 + 1];
+    }
+
+    public float x2(Joint joint) {
+        return boxes[joint.ordinal() * 4 + 2];
+    }
+
+    public float y2(Joint joint) {
+        return boxes[joint.ordinal() * 4 + 3];
+    }
+
+    /**
+     * 所有已检测关节框的外接矩形 [x1, y1, x2, y2]，无检测结果时返回null
+     */
+    public float[] unionBounds() {
+        float[] union = null;
+        for (Joint joint : Joint.values()) {
+            if (!has(joint)) continue;
+            if (union == null) {
+                union = new float[]{x1(joint), y1(joint), x2(joint), y2(joint)};
+            } else {
+                union[0] = Math.min(union[0], x1(joint));
+                union[1] = Math.min(union[1], y1(joint));
+                union[2] = Math.max(union[2], x2(joint));
+                union[3] = Math.max(union[3], y2(joint));
+            }
+        }
+        return union;
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.server.model;
+
+import java.util.Arrays;
+
+/**
+ * 分类阶段输出：按 {@link Joint} 下标存放的等级，-1 表示缺失或分类失败
+ */
+public record JointGrades(int[] grades) {
+
+    public static JointGrades empty() {
+        int[] grades = new int[Joint.COUNT];
+        Arrays.fill(grades, -1);
+        return new JointGrades(grades);
+    }
+
+    public int get(Joint joint) {
+        return grades[joint.ordinal()];
+    }
+
+    public void set(Joint joint, int grade) {
+        grades[joint.ordinal()] = grade;
+    }
+}
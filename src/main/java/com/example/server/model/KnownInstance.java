@@ -0,0 +1,24 @@
+package com.example.server.model;
+
+/**
+ * 数据库中已登记的实例及其推理状态，用于与PACS图像列表比对
+ *
+ * @param processed 已有推理结果
+ * @param queued    推理队列中有待执行或执行中的任务
+ * @param excluded  推理前质量筛选未选中（不再下载与推理）
+ */
+public record KnownInstance(
+        Long pid,
+        String seriesInstanceUID,
+        String sopInstanceUID,
+        boolean processed,
+        boolean queued,
+        boolean excluded
+) {
+    /**
+     * 已入库但既没有推理结果也不在队列中（且未被质量筛选排除），需要重新提交
+     */
+    public boolean needsInference() {
+        return !processed && !queued && !excluded;
+    }
+}
@@ -15,6 +15,9 @@ public class PatientInfo {
     private String SOPInstanceUID;
     private Long InferenceID;
     private LocalDate StudyDate;
+    private String RetrieveAETitle;     // 图像所在的PACS（多PACS时用于重新下载），为空时使用默认PACS
+    private String QualityFlag;         // 未参与推理的原因（LOW_QUALITY / DUPLICATE / NOT_SELECTED / GATE_REJECTED），为空表示参与推理
+    private Double QualityScore;        // 推理前质量评分，同一序列内选中图像推理失败时按评分从高到低补选
     private LocalDateTime CreateTime;
 
     // 临时字段，用于 API 响应，不存储到数据库
@@ -0,0 +1,24 @@
+package com.example.server.model;
+
+import lombok.Data;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Data
+public class ReInferenceJob {
+    private Long JobID;
+    private String Status;          // RUNNING / COMPLETED / CANCELLED / FAILED
+    private LocalDate StudyDateFrom;
+    private LocalDate StudyDateTo;
+    private String ModelVersion;    // 目标模型版本，已由该版本推理的记录跳过
+    private Double ImagesPerSecond; // 吞吐上限（张/秒）
+    private Integer BatchSize;
+    private Long LastPID;           // 检查点：最后一个已完成批次的最大PID
+    private Long Total;
+    private Long Processed;
+    private Long Succeeded;
+    private Long Failed;
+    private String LastError;
+    private LocalDateTime CreateTime;
+    private LocalDateTime UpdateTime;
+}
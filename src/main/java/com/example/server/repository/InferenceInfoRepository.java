@@ -30,15 +30,25 @@ public class InferenceInfoRepository {
                 RCResultID INTEGER,
                 TCRResultID INTEGER,
                 TCCResultID INTEGER,
+                ModelVersion TEXT,
                 FOREIGN KEY (DetectionID) REFERENCES DetectionInfo(DetectionID),
                 FOREIGN KEY (RCResultID) REFERENCES RUS_CHN_Result(RCResultID),
                 FOREIGN KEY (TCRResultID) REFERENCES TW3_C_RUS_Result(TCRResultID),
                 FOREIGN KEY (TCCResultID) REFERENCES TW3_C_CARPAL_Result(TCCResultID)
             )""");
+
+        // 兼容旧库：补充模型版本列
+        boolean hasModelVersion = jdbcTemplate.queryForList("PRAGMA table_info(inference_info)")
+                .stream()
+                .anyMatch(column -> "ModelVersion".equalsIgnoreCase(String.valueOf(column.get("name"))));
+        if (!hasModelVersion) {
+            jdbcTemplate.execute("ALTER TABLE inference_info ADD COLUMN ModelVersion TEXT");
+        }
     }
 
     public Long save(InferenceInfo inferenceInfo) {
-        String sql = "INSERT INTO inference_info (DetectionID, RCResultID, TCRResultID, TCCResultID) VALUES (?, ?, ?, ?)";
+        String sql = "INSERT INTO inference_info (DetectionID, RCResultID, TCRResultID, TCCResultID, ModelVersion) " +
+                "VALUES (?, ?, ?, ?, ?)";
 
         KeyHolder keyHolder = new GeneratedKeyHolder();
         jdbcTemplate.update(connection -> {
@@ -47,6 +57,7 @@ public class InferenceInfoRepository {
             ps.setObject(2, inferenceInfo.getRCResultID());
             ps.setObject(3, inferenceInfo.getTCRResultID());
             ps.setObject(4, inferenceInfo.getTCCResultID());
+            ps.setString(5, inferenceInfo.getModelVersion());
             return ps;
         }, keyHolder);
 
@@ -63,6 +74,7 @@ public class InferenceInfoRepository {
                 info.setRCResultID(rs.getLong("RCResultID"));
                 info.setTCRResultID(rs.getLong("TCRResultID"));
                 info.setTCCResultID(rs.getLong("TCCResultID"));
+                info.setModelVersion(rs.getString("ModelVersion"));
                 return info;
             });
         } catch (EmptyResultDataAccessException e) {
@@ -0,0 +1,239 @@
+package com.example.server.repository;
+
+import com.example.server.model.InferenceQueueJob;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Repository
+public class InferenceQueueRepository {
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_DONE = "DONE";
+    public static final String STATUS_FAILED = "FAILED";
+
+    // 领取顺序：优先级高的先领取，同优先级按入队顺序
+    public static final int PRIORITY_NORMAL = 0;
+    public static final int PRIORITY_LOW = -10;
+
+    private static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public InferenceQueueRepository(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        initializeDatabase();
+    }
+
+    private void initializeDatabase() {
+        jdbcTemplate.execute("""
+            CREATE TABLE IF NOT EXISTS inference_queue (
+                JobID INTEGER PRIMARY KEY AUTOINCREMENT,
+                PngPath TEXT NOT NULL,
+                PID INTEGER,
+                SOPInstanceUID TEXT,
+                IsMale INTEGER NOT NULL,
+                Status TEXT NOT NULL,
+                Attempts INTEGER NOT NULL DEFAULT 0,
+                LeaseOwner TEXT,
+                LeaseExpireAt INTEGER,
+                LastError TEXT,
+                CreateTime DATETIME DEFAULT CURRENT_TIMESTAMP,
+                UpdateTime DATETIME DEFAULT CURRENT_TIMESTAMP
+            )""");
+
+        // 兼容旧库：补充PID列
+        boolean hasPid = jdbcTemplate.queryForList("PRAGMA table_info(inference_queue)")
+                .stream()
+                .anyMatch(column -> "PID".equalsIgnoreCase(String.valueOf(column.get("name"))));
+        if (!hasPid) {
+            jdbcTemplate.execute("ALTER TABLE inference_queue ADD COLUMN PID INTEGER");
+        }
+
+        // 兼容旧库：补充优先级列
+        boolean hasPriority = jdbcTemplate.queryForList("PRAGMA table_info(inference_queue)")
+                .stream()
+                .anyMatch(column -> "Priority".equalsIgnoreCase(String.valueOf(column.get("name"))));
+        if (!hasPriority) {
+            jdbcTemplate.execute("ALTER TABLE inference_queue ADD COLUMN Priority INTEGER NOT NULL DEFAULT 0");
+        }
+
+        jdbcTemplate.execute(
+                "CREATE INDEX IF NOT EXISTS idx_inference_queue_status ON inference_queue (Status, JobID)");
+        jdbcTemplate.execute(
+                "CREATE INDEX IF NOT EXISTS idx_inference_queue_pid ON inference_queue (PID)");
+        jdbcTemplate.execute(
+                "CREATE INDEX IF NOT EXISTS idx_inference_queue_claim ON inference_queue (Status, Priority DESC, JobID)");
+    }
+
+    public Long enqueue(String pngPath, Long pid, String sopInstanceUID, boolean isMale) {
+        return enqueue(pngPath, pid, sopInstanceUID, isMale, PRIORITY_NORMAL);
+    }
+
+    public Long enqueue(String pngPath, Long pid, String sopInstanceUID, boolean isMale, int priority) {
+        String sql = "INSERT INTO inference_queue (PngPath, PID, SOPInstanceUID, IsMale, Status, Priority) " +
+                "VALUES (?, ?, ?, ?, ?, ?)";
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            ps.setString(1, pngPath);
+            ps.setObject(2, pid);
+            ps.setString(3, sopInstanceUID);
+            ps.setInt(4, isMale ? 1 : 0);
+            ps.setString(5, STATUS_PENDING);
+            ps.setInt(6, priority);
+            return ps;
+        }, keyHolder);
+        return keyHolder.getKey().longValue();
+    }
+
+    /**
+     * 领取下一个待处理任务（包括租约已过期的运行中任务），优先级高的先领取
+     * 先查询候选再带条件更新，更新行数为0说明被其他线程抢先，重新查询
+     */
+    public synchronized InferenceQueueJob claimNext(String owner, long leaseMillis) {
+        while (true) {
+            long now = System.currentTimeMillis();
+            List<Long> candidates = jdbcTemplate.queryForList(
+                    "SELECT JobID FROM inference_queue WHERE Status = ? " +
+                            "OR (Status = ? AND LeaseExpireAt < ?) ORDER BY Priority DESC, JobID LIMIT 1",
+                    Long.class, STATUS_PENDING, STATUS_RUNNING, now);
+            if (candidates.isEmpty()) {
+                return null;
+            }
+
+            Long jobID = candidates.getFirst();
+            int updated = jdbcTemplate.update(
+                    "UPDATE inference_queue SET Status = ?, LeaseOwner = ?, LeaseExpireAt = ?, " +
+                            "Attempts = Attempts + 1, UpdateTime = CURRENT_TIMESTAMP " +
+                            "WHERE JobID = ? AND (Status = ? OR (Status = ? AND LeaseExpireAt < ?))",
+                    STATUS_RUNNING, owner, now + leaseMillis,
+                    jobID, STATUS_PENDING, STATUS_RUNNING, now);
+            if (updated == 1) {
+                return findById(jobID);
+            }
+        }
+    }
+
+    /**
+     * 心跳：延长本节点持有的运行中任务租约
+     */
+    public void extendLeases(String owner, Collection<Long> jobIDs, long leaseMillis) {
+        if (jobIDs.isEmpty()) {
+            return;
+        }
+        String placeholders = jobIDs.stream().map(id -> "?").collect(Collectors.joining(","));
+        Object[] params = new Object[jobIDs.size() + 3];
+        params[0] = System.currentTimeMillis() + leaseMillis;
+        params[1] = owner;
+        params[2] = STATUS_RUNNING;
+        int index = 3;
+        for (Long jobID : jobIDs) {
+            params[index++] = jobID;
+        }
+        jdbcTemplate.update("UPDATE inference_queue SET LeaseExpireAt = ? " +
+                "WHERE LeaseOwner = ? AND Status = ? AND JobID IN (" + placeholders + ")", params);
+    }
+
+    /**
+     * 标记完成：仅租约持有者可写回，租约已过期并被重新领取时不覆盖新的执行
+     */
+    public void markDone(Long jobID, String owner) {
+        jdbcTemplate.update("UPDATE inference_queue SET Status = ?, LeaseOwner = NULL, LeaseExpireAt = NULL, " +
+                        "LastError = NULL, UpdateTime = CURRENT_TIMESTAMP WHERE JobID = ? AND LeaseOwner = ?",
+                STATUS_DONE, jobID, owner);
+    }
+
+    /**
+     * 标记失败：未超过最大尝试次数时重新排队，否则置为 FAILED（同样仅租约持有者可写回）
+     *
+     * @return 任务是否已置为 FAILED（不再重试）
+     */
+    public boolean markFailed(Long jobID, String owner, String error, int maxAttempts) {
+        int updated = jdbcTemplate.update("UPDATE inference_queue SET " +
+                        "Status = CASE WHEN Attempts >= ? THEN ? ELSE ? END, " +
+                        "LeaseOwner = NULL, LeaseExpireAt = NULL, LastError = ?, UpdateTime = CURRENT_TIMESTAMP " +
+                        "WHERE JobID = ? AND LeaseOwner = ?",
+                maxAttempts, STATUS_FAILED, STATUS_PENDING, error, jobID, owner);
+        if (updated == 0) {
+            return false;
+        }
+        return STATUS_FAILED.equals(jdbcTemplate.queryForObject(
+                "SELECT Status FROM inference_queue WHERE JobID = ?", String.class, jobID));
+    }
+
+    /**
+     * 启动恢复：单实例部署下，上次进程遗留的运行中任务全部重新排队
+     */
+    public int requeueAllRunning() {
+        return jdbcTemplate.update("UPDATE inference_queue SET Status = ?, LeaseOwner = NULL, LeaseExpireAt = NULL, " +
+                "UpdateTime = CURRENT_TIMESTAMP WHERE Status = ?", STATUS_PENDING, STATUS_RUNNING);
+    }
+
+    public Map<String, Long> countByStatus() {
+        return jdbcTemplate.query("SELECT Status, COUNT(*) AS Cnt FROM inference_queue GROUP BY Status",
+                rs -> {
+                    Map<String, Long> counts = new HashMap<>();
+                    while (rs.next()) {
+                        counts.put(rs.getString("Status"), rs.getLong("Cnt"));
+                    }
+                    return counts;
+                });
+    }
+
+    public void deleteOldFinished() {
+        jdbcTemplate.update("DELETE FROM inference_queue WHERE Status = ? AND UpdateTime < datetime('now', '-7 day')",
+                STATUS_DONE);
+    }
+
+    public InferenceQueueJob findById(Long jobID) {
+        try {
+            return jdbcTemplate.queryForObject("SELECT * FROM inference_queue WHERE JobID = ?", JOB_ROW_MAPPER, jobID);
+        } catch (EmptyResultDataAccessException e) {
+            return null;
+        }
+    }
+
+    private static final RowMapper<InferenceQueueJob> JOB_ROW_MAPPER = (rs, rowNum) -> {
+        InferenceQueueJob job = new InferenceQueueJob();
+        job.setJobID(rs.getLong("JobID"));
+        job.setPngPath(rs.getString("PngPath"));
+        Object pid = rs.getObject("PID");
+        job.setPID(pid instanceof Number ? ((Number) pid).longValue() : null);
+        job.setSOPInstanceUID(rs.getString("SOPInstanceUID"));
+        job.setIsMale(rs.getInt("IsMale") == 1);
+        job.setStatus(rs.getString("Status"));
+        job.setPriority(rs.getInt("Priority"));
+        job.setAttempts(rs.getInt("Attempts"));
+        job.setLeaseOwner(rs.getString("LeaseOwner"));
+        Object leaseExpireAt = rs.getObject("LeaseExpireAt");
+        job.setLeaseExpireAt(leaseExpireAt instanceof Number ? ((Number) leaseExpireAt).longValue() : null);
+        job.setLastError(rs.getString("LastError"));
+
+        String createTime = rs.getString("CreateTime");
+        if (createTime != null && !createTime.isEmpty()) {
+            job.setCreateTime(LocalDateTime.parse(createTime, DATETIME_FORMATTER));
+        }
+        String updateTime = rs.getString("UpdateTime");
+        if (updateTime != null && !updateTime.isEmpty()) {
+            job.setUpdateTime(LocalDateTime.parse(updateTime, DATETIME_FORMATTER));
+        }
+        return job;
+    };
+}
@@ -1,8 +1,10 @@
 package com.example.server.repository;
 
+import com.example.server.model.KnownInstance;
 import com.example.server.model.PatientInfo;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
@@ -11,14 +13,27 @@ import org.springframework.stereotype.Repository;
 import javax.sql.DataSource;
 import java.sql.Date;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 @Repository
 public class PatientInfoRepository {
+    private static final String INSERT_SQL = "INSERT INTO patient_info (PatientID, BrithDate, Sex, StudyInstanceUID, " +
+            "SeriesInstanceUID, SOPInstanceUID, InferenceID, StudyDate, RetrieveAETitle, QualityFlag, QualityScore) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String KNOWN_INSTANCE_SQL = "SELECT p.PID, p.SeriesInstanceUID, p.SOPInstanceUID, " +
+            "p.InferenceID, p.QualityFlag, " +
+            "EXISTS (SELECT 1 FROM inference_queue q WHERE q.PID = p.PID AND q.Status IN (?, ?)) AS Queued " +
+            "FROM patient_info p ";
+    // 单条SQL的IN参数上限（SQLite默认最多999个绑定参数）
+    private static final int MAX_IN_PARAMS = 500;
 
     private final JdbcTemplate jdbcTemplate;
 
@@ -41,57 +56,156 @@ public class PatientInfoRepository {
                 InferenceID INTEGER,
                 StudyDate DATE,
                 CreateTime DATETIME DEFAULT CURRENT_TIMESTAMP,
+                RetrieveAETitle TEXT,
+                QualityFlag TEXT,
+                QualityScore REAL,
                 FOREIGN KEY (InferenceID) REFERENCES InferenceInfo(InferenceID)
             )""");
+
+        // 兼容旧库：补充来源PACS列
+        boolean hasRetrieveAETitle = jdbcTemplate.queryForList("PRAGMA table_info(patient_info)")
+                .stream()
+                .anyMatch(column -> "RetrieveAETitle".equalsIgnoreCase(String.valueOf(column.get("name"))));
+        if (!hasRetrieveAETitle) {
+            jdbcTemplate.execute("ALTER TABLE patient_info ADD COLUMN RetrieveAETitle TEXT");
+        }
+
+        // 兼容旧库：补充质量筛选标记列
+        boolean hasQualityFlag = jdbcTemplate.queryForList("PRAGMA table_info(patient_info)")
+                .stream()
+                .anyMatch(column -> "QualityFlag".equalsIgnoreCase(String.valueOf(column.get("name"))));
+        if (!hasQualityFlag) {
+            jdbcTemplate.execute("ALTER TABLE patient_info ADD COLUMN QualityFlag TEXT");
+        }
+
+        // 兼容旧库：补充质量评分列
+        boolean hasQualityScore = jdbcTemplate.queryForList("PRAGMA table_info(patient_info)")
+                .stream()
+                .anyMatch(column -> "QualityScore".equalsIgnoreCase(String.valueOf(column.get("name"))));
+        if (!hasQualityScore) {
+            jdbcTemplate.execute("ALTER TABLE patient_info ADD COLUMN QualityScore REAL");
+        }
+        jdbcTemplate.execute(
+                "CREATE INDEX IF NOT EXISTS idx_patient_info_patient ON patient_info (PatientID)");
     }
 
     public long save(PatientInfo patientInfo) {
-        String sql = "INSERT INTO patient_info (PatientID, BrithDate, Sex, StudyInstanceUID, " +
-                "SeriesInstanceUID, SOPInstanceUID, InferenceID, StudyDate) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
         KeyHolder keyHolder = new GeneratedKeyHolder();
 
         jdbcTemplate.update(connection -> {
             PreparedStatement ps = connection.prepareStatement(
-                    sql,
+                    INSERT_SQL,
                     Statement.RETURN_GENERATED_KEYS
             );
-            int index = 1;
-            ps.setString(index++, patientInfo.getPatientID());
-
-            // 使用字符串格式存储日期
-            ps.setString(index++, patientInfo.getBrithDate() != null ?
-                    patientInfo.getBrithDate().toString() : null);
-
-            ps.setString(index++, patientInfo.getSex());
-            ps.setString(index++, patientInfo.getStudyInstanceUID());
-            ps.setString(index++, patientInfo.getSeriesInstanceUID());
-            ps.setString(index++, patientInfo.getSOPInstanceUID());
-            ps.setObject(index++, patientInfo.getInferenceID());
-
-            // 使用字符串格式存储日期
-            ps.setString(index++, patientInfo.getStudyDate() != null ?
-                    patientInfo.getStudyDate().toString() : null);
-
+            bindInsert(ps, patientInfo);
             return ps;
         }, keyHolder);
 
         return keyHolder.getKey().longValue();
     }
 
-    public LocalDate findLatestStudyDateByPatient(String patientID) {
-        String sql = "SELECT MAX(StudyDate) FROM patient_info WHERE PatientID = ?";
-        String dateStr = jdbcTemplate.queryForObject(sql, String.class, patientID);
-        if (dateStr == null || dateStr.isEmpty()) {
-            return null;
+    /**
+     * 批量插入（一个事务内逐条执行，只提交一次），成功的记录回填PID；
+     * 单条失败（如SOPInstanceUID已被并发写入）不影响其余记录，其PID保持为null
+     *
+     * @return 成功插入的记录数
+     */
+    public int saveAll(List<PatientInfo> patientInfos) {
+        if (patientInfos.isEmpty()) {
+            return 0;
         }
+        Integer inserted = jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            int count = 0;
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (PatientInfo patientInfo : patientInfos) {
+                    bindInsert(ps, patientInfo);
+                    try {
+                        ps.executeUpdate();
+                    } catch (SQLException e) {
+                        System.err.println("插入患者信息失败 [" + patientInfo.getSOPInstanceUID() + "]: " + e.getMessage());
+                        continue;
+                    }
+                    try (ResultSet keys = ps.getGeneratedKeys()) {
+                        if (keys.next()) {
+                            patientInfo.setPID(keys.getLong(1));
+                            count++;
+                        }
+                    }
+                }
+                connection.commit();
+                return count;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                for (PatientInfo patientInfo : patientInfos) {
+                    patientInfo.setPID(null);
+                }
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        });
+        return inserted != null ? inserted : 0;
+    }
 
-        try {
-            return LocalDate.parse(dateStr);
-        } catch (Exception e) {
-            System.err.println("解析最新 StudyDate 失败: " + dateStr);
-            return null;
+    private static void bindInsert(PreparedStatement ps, PatientInfo patientInfo) throws SQLException {
+        int index = 1;
+        ps.setString(index++, patientInfo.getPatientID());
+
+        // 使用字符串格式存储日期
+        ps.setString(index++, patientInfo.getBrithDate() != null ?
+                patientInfo.getBrithDate().toString() : null);
+
+        ps.setString(index++, patientInfo.getSex());
+        ps.setString(index++, patientInfo.getStudyInstanceUID());
+        ps.setString(index++, patientInfo.getSeriesInstanceUID());
+        ps.setString(index++, patientInfo.getSOPInstanceUID());
+        ps.setObject(index++, patientInfo.getInferenceID());
+
+        // 使用字符串格式存储日期
+        ps.setString(index++, patientInfo.getStudyDate() != null ?
+                patientInfo.getStudyDate().toString() : null);
+        ps.setString(index++, patientInfo.getRetrieveAETitle());
+        ps.setString(index++, patientInfo.getQualityFlag());
+        ps.setObject(index++, patientInfo.getQualityScore());
+    }
+
+    /**
+     * 一次查询患者全部已入库实例及推理状态（已推理 / 队列中），用于与PACS图像列表做差集
+     */
+    public List<KnownInstance> findKnownInstances(String patientID) {
+        return jdbcTemplate.query(KNOWN_INSTANCE_SQL + "WHERE p.PatientID = ?", (rs, rowNum) -> mapKnownInstance(rs),
+                InferenceQueueRepository.STATUS_PENDING, InferenceQueueRepository.STATUS_RUNNING, patientID);
+    }
+
+    /**
+     * 按SOPInstanceUID批量查询已入库实例及推理状态（用于批量导入去重）
+     */
+    public List<KnownInstance> findKnownInstancesBySOP(List<String> sopInstanceUIDs) {
+        List<KnownInstance> instances = new ArrayList<>();
+        for (int from = 0; from < sopInstanceUIDs.size(); from += MAX_IN_PARAMS) {
+            List<String> chunk = sopInstanceUIDs.subList(from, Math.min(from + MAX_IN_PARAMS, sopInstanceUIDs.size()));
+            List<Object> params = new ArrayList<>(chunk.size() + 2);
+            params.add(InferenceQueueRepository.STATUS_PENDING);
+            params.add(InferenceQueueRepository.STATUS_RUNNING);
+            params.addAll(chunk);
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            instances.addAll(jdbcTemplate.query(KNOWN_INSTANCE_SQL + "WHERE p.SOPInstanceUID IN (" + placeholders + ")",
+                    (rs, rowNum) -> mapKnownInstance(rs), params.toArray()));
         }
+        return instances;
+    }
+
+    private static KnownInstance mapKnownInstance(ResultSet rs) throws SQLException {
+        return new KnownInstance(
+                rs.getLong("PID"),
+                rs.getString("SeriesInstanceUID"),
+                rs.getString("SOPInstanceUID"),
+                rs.getObject("InferenceID") != null,
+                rs.getInt("Queued") != 0,
+                rs.getString("QualityFlag") != null
+        );
     }
 
     public void updateInferenceID(Long pid, Long inferenceID) {
@@ -99,9 +213,53 @@ public class PatientInfoRepository {
         jdbcTemplate.update(sql, inferenceID, pid);
     }
 
+    /**
+     * 标记未参与推理的实例，qualityFlag 为null时恢复参与推理
+     */
+    public void updateQualityFlag(Long pid, String qualityFlag) {
+        String sql = "UPDATE patient_info SET QualityFlag = ? WHERE PID = ?";
+        jdbcTemplate.update(sql, qualityFlag, pid);
+    }
+
+    /**
+     * 记录质量筛选结果及评分（评分用于同一序列内补选的排序）
+     */
+    public void updateQualityFlag(Long pid, String qualityFlag, double qualityScore) {
+        String sql = "UPDATE patient_info SET QualityFlag = ?, QualityScore = ? WHERE PID = ?";
+        jdbcTemplate.update(sql, qualityFlag, qualityScore, pid);
+    }
+
+    /**
+     * 取出同一序列中带有该标记、评分最高的未推理实例并清除其标记（带条件更新，并发时只有一个调用方取得），
+     * 没有符合条件的实例时返回null
+     */
+    public synchronized PatientInfo releaseBestFlagged(String seriesInstanceUID, String qualityFlag) {
+        while (true) {
+            List<Long> candidates = jdbcTemplate.queryForList(
+                    "SELECT PID FROM patient_info WHERE SeriesInstanceUID = ? AND QualityFlag = ? " +
+                            "AND InferenceID IS NULL ORDER BY QualityScore DESC, PID LIMIT 1",
+                    Long.class, seriesInstanceUID, qualityFlag);
+            if (candidates.isEmpty()) {
+                return null;
+            }
+            Long pid = candidates.getFirst();
+            int updated = jdbcTemplate.update(
+                    "UPDATE patient_info SET QualityFlag = NULL WHERE PID = ? AND QualityFlag = ?",
+                    pid, qualityFlag);
+            if (updated == 1) {
+                return findById(pid);
+            }
+        }
+    }
+
+    /**
+     * 未推理的记录（不含质量筛选未选中的实例，以及推理队列中已有待执行或执行中任务的实例）
+     */
     public List<PatientInfo> findUnprocessedRecords(String patientID) {
-        String sql = "SELECT * FROM patient_info WHERE PatientID = ? AND InferenceID IS NULL";
-        return jdbcTemplate.query(sql, new Object[]{patientID}, (rs, rowNum) -> {
+        String sql = "SELECT * FROM patient_info p WHERE PatientID = ? AND InferenceID IS NULL AND QualityFlag IS NULL " +
+                "AND NOT EXISTS (SELECT 1 FROM inference_queue q WHERE q.PID = p.PID AND q.Status IN (?, ?))";
+        return jdbcTemplate.query(sql, new Object[]{patientID,
+                InferenceQueueRepository.STATUS_PENDING, InferenceQueueRepository.STATUS_RUNNING}, (rs, rowNum) -> {
             PatientInfo info = new PatientInfo();
             // 安全处理 PID (Long)
             Object pidObj = rs.getObject("PID");
@@ -154,6 +312,9 @@ public class PatientInfoRepository {
             } else {
                 info.setStudyDate(null);
             }
+            info.setRetrieveAETitle(rs.getString("RetrieveAETitle"));
+            info.setQualityFlag(rs.getString("QualityFlag"));
+            info.setQualityScore(rs.getObject("QualityScore") instanceof Number score ? score.doubleValue() : null);
 
             return info;
         });
@@ -200,6 +361,9 @@ public class PatientInfoRepository {
                     System.err.println("解析 StudyDate 失败: " + studyDateStr);
                 }
             }
+            info.setRetrieveAETitle(rs.getString("RetrieveAETitle"));
+            info.setQualityFlag(rs.getString("QualityFlag"));
+            info.setQualityScore(rs.getObject("QualityScore") instanceof Number score ? score.doubleValue() : null);
 
             // 创建格式化器
             DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
@@ -260,6 +424,9 @@ public class PatientInfoRepository {
                         System.err.println("解析 StudyDate 失败: " + studyDateStr);
                     }
                 }
+                info.setRetrieveAETitle(rs.getString("RetrieveAETitle"));
+                info.setQualityFlag(rs.getString("QualityFlag"));
+                info.setQualityScore(rs.getObject("QualityScore") instanceof Number score ? score.doubleValue() : null);
 
                 return info;
             });
@@ -267,4 +434,112 @@ public class PatientInfoRepository {
             return null; // 无匹配记录
         }
     }
-}
\ No newline at end of file
+
+    public PatientInfo findById(Long pid) {
+        String sql = "SELECT * FROM patient_info WHERE PID = ?";
+        try {
+            return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> mapPatientInfo(rs), pid);
+        } catch (EmptyResultDataAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 按PID游标分页读取需要重新推理的记录（用于批量重推理任务）
+     * @param afterPID 上一批次最后处理的PID（检查点）
+     * @param studyDateFrom 起始检查日期（含），为空则不限
+     * @param studyDateTo 截止检查日期（含），为空则不限
+     * @param modelVersion 目标模型版本，已由该版本推理过的记录将被跳过；为空则不限
+     * @param limit 单批次最大记录数
+     */
+    public List<PatientInfo> findForReInference(
+            long afterPID,
+            LocalDate studyDateFrom,
+            LocalDate studyDateTo,
+            String modelVersion,
+            int limit
+    ) {
+        List<Object> params = new ArrayList<>();
+        String sql = "SELECT p.* FROM patient_info p " +
+                "LEFT JOIN inference_info i ON p.InferenceID = i.InferenceID " +
+                "WHERE p.PID > ?" + buildReInferenceFilter(studyDateFrom, studyDateTo, modelVersion, params) +
+                " ORDER BY p.PID LIMIT ?";
+        params.addFirst(afterPID);
+        params.add(limit);
+        return jdbcTemplate.query(sql, (rs, rowNum) -> mapPatientInfo(rs), params.toArray());
+    }
+
+    public long countForReInference(LocalDate studyDateFrom, LocalDate studyDateTo, String modelVersion) {
+        List<Object> params = new ArrayList<>();
+        String sql = "SELECT COUNT(*) FROM patient_info p " +
+                "LEFT JOIN inference_info i ON p.InferenceID = i.InferenceID " +
+                "WHERE 1 = 1" + buildReInferenceFilter(studyDateFrom, studyDateTo, modelVersion, params);
+        Long count = jdbcTemplate.queryForObject(sql, Long.class, params.toArray());
+        return count != null ? count : 0L;
+    }
+
+    private String buildReInferenceFilter(
+            LocalDate studyDateFrom,
+            LocalDate studyDateTo,
+            String modelVersion,
+            List<Object> params
+    ) {
+        // 质量筛选未选中的实例从未推理，不参与重推理
+        StringBuilder filter = new StringBuilder(" AND p.QualityFlag IS NULL");
+        // StudyDate 以 yyyy-MM-dd 字符串存储，可直接按字符串比较
+        if (studyDateFrom != null) {
+            filter.append(" AND p.StudyDate >= ?");
+            params.add(studyDateFrom.toString());
+        }
+        if (studyDateTo != null) {
+            filter.append(" AND p.StudyDate <= ?");
+            params.add(studyDateTo.toString());
+        }
+        if (modelVersion != null && !modelVersion.isBlank()) {
+            filter.append(" AND (i.ModelVersion IS NULL OR i.ModelVersion <> ?)");
+            params.add(modelVersion);
+        }
+        return filter.toString();
+    }
+
+    private PatientInfo mapPatientInfo(ResultSet rs) throws SQLException {
+        PatientInfo info = new PatientInfo();
+        Object pidObj = rs.getObject("PID");
+        if (pidObj instanceof Number) {
+            info.setPID(((Number) pidObj).longValue());
+        }
+        info.setPatientID(rs.getString("PatientID"));
+
+        String birthDateStr = rs.getString("BrithDate");
+        if (birthDateStr != null && !birthDateStr.isEmpty()) {
+            try {
+                info.setBrithDate(LocalDate.parse(birthDateStr));
+            } catch (Exception e) {
+                System.err.println("解析 BrithDate 失败: " + birthDateStr);
+            }
+        }
+
+        info.setSex(rs.getString("Sex"));
+        info.setStudyInstanceUID(rs.getString("StudyInstanceUID"));
+        info.setSeriesInstanceUID(rs.getString("SeriesInstanceUID"));
+        info.setSOPInstanceUID(rs.getString("SOPInstanceUID"));
+
+        Object inferenceIdObj = rs.getObject("InferenceID");
+        if (inferenceIdObj instanceof Number) {
+            info.setInferenceID(((Number) inferenceIdObj).longValue());
+        }
+
+        String studyDateStr = rs.getString("StudyDate");
+        if (studyDateStr != null && !studyDateStr.isEmpty()) {
+            try {
+                info.setStudyDate(LocalDate.parse(studyDateStr));
+            } catch (Exception e) {
+                System.err.println("解析 StudyDate 失败: " + studyDateStr);
+            }
+        }
+        info.setRetrieveAETitle(rs.getString("RetrieveAETitle"));
+        info.setQualityFlag(rs.getString("QualityFlag"));
+        info.setQualityScore(rs.getObject("QualityScore") instanceof Number score ? score.doubleValue() : null);
+        return info;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.server.repository;
+
+import com.example.server.model.ReInferenceJob;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+@Repository
+public class ReInferenceJobRepository {
+    private static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public ReInferenceJobRepository(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        initializeDatabase();
+    }
+
+    private void initializeDatabase() {
+        jdbcTemplate.execute("""
+            CREATE TABLE IF NOT EXISTS reinference_job (
+                JobID INTEGER PRIMARY KEY AUTOINCREMENT,
+                Status TEXT NOT NULL,
+                StudyDateFrom DATE,
+                StudyDateTo DATE,
+                ModelVersion TEXT,
+                ImagesPerSecond REAL NOT NULL,
+                BatchSize INTEGER NOT NULL,
+                LastPID INTEGER NOT NULL DEFAULT 0,
+                Total INTEGER NOT NULL DEFAULT 0,
+                Processed INTEGER NOT NULL DEFAULT 0,
+                Succeeded INTEGER NOT NULL DEFAULT 0,
+                Failed INTEGER NOT NULL DEFAULT 0,
+                LastError TEXT,
+                CreateTime DATETIME DEFAULT CURRENT_TIMESTAMP,
+                UpdateTime DATETIME DEFAULT CURRENT_TIMESTAMP
+            )""");
+    }
+
+    public Long save(ReInferenceJob job) {
+        String sql = """
+            INSERT INTO reinference_job (
+                Status, StudyDateFrom, StudyDateTo, ModelVersion,
+                ImagesPerSecond, BatchSize, Total
+            ) VALUES (?,?,?,?,?,?,?)""";
+
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            int index = 1;
+            ps.setString(index++, job.getStatus());
+            ps.setString(index++, job.getStudyDateFrom() != null ? job.getStudyDateFrom().toString() : null);
+            ps.setString(index++, job.getStudyDateTo() != null ? job.getStudyDateTo().toString() : null);
+            ps.setString(index++, job.getModelVersion());
+            ps.setDouble(index++, job.getImagesPerSecond());
+            ps.setInt(index++, job.getBatchSize());
+            ps.setLong(index++, job.getTotal() != null ? job.getTotal() : 0L);
+            return ps;
+        }, keyHolder);
+
+        return keyHolder.getKey().longValue();
+    }
+
+    /**
+     * 批次完成后写入检查点及累计计数
+     */
+    public void updateCheckpoint(Long jobID, long lastPID, long processed, long succeeded, long failed) {
+        String sql = "UPDATE reinference_job SET LastPID = ?, Processed = ?, Succeeded = ?, Failed = ?, " +
+                "UpdateTime = CURRENT_TIMESTAMP WHERE JobID = ?";
+        jdbcTemplate.update(sql, lastPID, processed, succeeded, failed, jobID);
+    }
+
+    public void updateStatus(Long jobID, String status, String lastError) {
+        String sql = "UPDATE reinference_job SET Status = ?, LastError = ?, UpdateTime = CURRENT_TIMESTAMP " +
+                "WHERE JobID = ?";
+        jdbcTemplate.update(sql, status, lastError, jobID);
+    }
+
+    public ReInferenceJob findById(Long jobID) {
+        String sql = "SELECT * FROM reinference_job WHERE JobID = ?";
+        try {
+            return jdbcTemplate.queryForObject(sql, JOB_ROW_MAPPER, jobID);
+        } catch (EmptyResultDataAccessException e) {
+            return null;
+        }
+    }
+
+    public List<ReInferenceJob> findByStatus(String status) {
+        String sql = "SELECT * FROM reinference_job WHERE Status = ? ORDER BY JobID";
+        return jdbcTemplate.query(sql, JOB_ROW_MAPPER, status);
+    }
+
+    public List<ReInferenceJob> findRecent(int limit) {
+        String sql = "SELECT * FROM reinference_job ORDER BY JobID DESC LIMIT ?";
+        return jdbcTemplate.query(sql, JOB_ROW_MAPPER, limit);
+    }
+
+    private static final RowMapper<ReInferenceJob> JOB_ROW_MAPPER = (rs, rowNum) -> {
+        ReInferenceJob job = new ReInferenceJob();
+        job.setJobID(rs.getLong("JobID"));
+        job.setStatus(rs.getString("Status"));
+
+        String from = rs.getString("StudyDateFrom");
+        job.setStudyDateFrom(from != null && !from.isEmpty() ? LocalDate.parse(from) : null);
+        String to = rs.getString("StudyDateTo");
+        job.setStudyDateTo(to != null && !to.isEmpty() ? LocalDate.parse(to) : null);
+
+        job.setModelVersion(rs.getString("ModelVersion"));
+        job.setImagesPerSecond(rs.getDouble("ImagesPerSecond"));
+        job.setBatchSize(rs.getInt("BatchSize"));
+        job.setLastPID(rs.getLong("LastPID"));
+        job.setTotal(rs.getLong("Total"));
+        job.setProcessed(rs.getLong("Processed"));
+        job.setSucceeded(rs.getLong("Succeeded"));
+        job.setFailed(rs.getLong("Failed"));
+        job.setLastError(rs.getString("LastError"));
+
+        String createTime = rs.getString("CreateTime");
+        if (createTime != null && !createTime.isEmpty()) {
+            job.setCreateTime(LocalDateTime.parse(createTime, DATETIME_FORMATTER));
+        }
+        String updateTime = rs.getString("UpdateTime");
+        if (updateTime != null && !updateTime.isEmpty()) {
+            job.setUpdateTime(LocalDateTime.parse(updateTime, DATETIME_FORMATTER));
+        }
+        return job;
+    };
+}
@@ -0,0 +1,227 @@
+package com.example.server.scheduler;
+
+import com.example.server.Utils.DicomSeriesUtils;
+import com.example.server.Utils.RateLimiter;
+import com.example.server.model.InferenceContext;
+import com.example.server.model.KnownInstance;
+import com.example.server.repository.InferenceQueueRepository;
+import com.example.server.repository.PatientInfoRepository;
+import com.example.server.service.DICOMService;
+import com.example.server.service.PacsQueryCache;
+import com.example.server.service.SeriesSubmissionService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * PACS预取：定时按滑动时间窗口查询PACS中新完成的Hand系列，后台下载并以低优先级提交推理，
+ * 使 /winform/search 被调用时结果已在数据库中。已入库且已推理或已在队列中的实例不会重复下载
+ */
+@Component
+public class PacsPrefetchScheduler {
+
+    private final DICOMService dicomService;
+    private final PatientInfoRepository patientInfoRepository;
+    private final SeriesSubmissionService seriesSubmissionService;
+    private final PacsQueryCache queryCache;
+    private final Executor batchJobExecutor;
+    private final MeterRegistry meterRegistry;
+    private final Counter enqueuedCounter;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Value("${prefetch.enabled:false}")
+    private boolean enabled;
+
+    // 每次查询的时间窗口，应大于执行间隔，保证相邻两次窗口有重叠、不漏检查
+    @Value("${prefetch.window-minutes:30}")
+    private long windowMinutes;
+
+    @Value("${prefetch.images-per-second:2}")
+    private double imagesPerSecond;
+
+    @Autowired
+    public PacsPrefetchScheduler(
+            DICOMService dicomService,
+            PatientInfoRepository patientInfoRepository,
+            SeriesSubmissionService seriesSubmissionService,
+            PacsQueryCache queryCache,
+            MeterRegistry meterRegistry,
+            @Qualifier("batchJobExecutor") Executor batchJobExecutor
+    ) {
+        this.dicomService = dicomService;
+        this.patientInfoRepository = patientInfoRepository;
+        this.seriesSubmissionService = seriesSubmissionService;
+        this.queryCache = queryCache;
+        this.meterRegistry = meterRegistry;
+        this.batchJobExecutor = batchJobExecutor;
+        this.enqueuedCounter = meterRegistry.counter("prefetch.images.enqueued");
+    }
+
+    /**
+     * 调度线程只负责提交，预取在批量任务线程池中执行，避免阻塞关联保活与熔断探测；
+     * 上一轮未结束时跳过本轮
+     */
+    @Scheduled(fixedDelayString = "${prefetch.interval-ms:120000}", initialDelay = 30000)
+    public void prefetch() {
+        if (!enabled) {
+            return;
+        }
+        if (!dicomService.isPacsAvailable()) {
+            System.out.println("PACS熔断中，跳过本轮预取");
+            return;
+        }
+        if (!running.compareAndSet(false, true)) {
+            System.out.println("上一轮预取仍在进行，跳过本轮");
+            return;
+        }
+        try {
+            batchJobExecutor.execute(() -> {
+                Timer.Sample sample = Timer.start(meterRegistry);
+                try {
+                    runOnce(LocalDateTime.now().minusMinutes(windowMinutes));
+                } catch (Exception e) {
+                    System.err.println("PACS预取失败: " + e.getMessage());
+                } finally {
+                    sample.stop(meterRegistry.timer("prefetch.run"));
+                    running.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            running.set(false);
+            System.err.println("批量任务线程池已满，跳过本轮预取");
+        }
+    }
+
+    /**
+     * 预取 since 之后的Hand系列，返回提交推理的图像数
+     */
+    int runOnce(LocalDateTime since) throws InterruptedException {
+        long startMillis = System.currentTimeMillis();
+        Map<String, List<Attributes>> seriesByPatient = new LinkedHashMap<>();
+        for (Attributes series : findRecentHandSeries(since)) {
+            String patientID = series.getString(Tag.PatientID);
+            if (patientID != null && !patientID.isEmpty()) {
+                seriesByPatient.computeIfAbsent(patientID, k -> new ArrayList<>()).add(series);
+            }
+        }
+
+        // 每轮新建限流器：空闲期间不累积许可
+        RateLimiter rateLimiter = new RateLimiter(imagesPerSecond);
+        int submitted = 0;
+        for (Map.Entry<String, List<Attributes>> entry : seriesByPatient.entrySet()) {
+            String patientID = entry.getKey();
+            Map<String, KnownInstance> known = new HashMap<>();
+            for (KnownInstance instance : patientInfoRepository.findKnownInstances(patientID)) {
+                known.put(instance.sopInstanceUID(), instance);
+            }
+
+            int patientSubmitted = 0;
+            for (Attributes series : entry.getValue()) {
+                if (DicomSeriesUtils.isSeriesComplete(series, known.values())) {
+                    continue;
+                }
+                patientSubmitted += prefetchSeries(series, known, rateLimiter);
+            }
+            if (patientSubmitted > 0) {
+                // 新检查已入库，缓存的检查列表不再完整
+                queryCache.invalidatePatient(patientID);
+                submitted += patientSubmitted;
+            }
+        }
+        if (!seriesByPatient.isEmpty() || submitted > 0) {
+            System.out.printf("PACS预取完成: 患者 %d 个, 提交推理 %d 张, 耗时 %d ms%n",
+                    seriesByPatient.size(), submitted, System.currentTimeMillis() - startMillis);
+        }
+        return submitted;
+    }
+
+    /**
+     * 优先一次关系型查询获取时间窗口内的全部Hand系列；PACS不支持时先查询检查，再逐个检查查询序列
+     */
+    private List<Attributes> findRecentHandSeries(LocalDateTime since) {
+        List<Attributes> series = dicomService.recentSeriesSearch(since, DicomSeriesUtils.HAND_SERIES_DESCRIPTION);
+        if (series != null) {
+            return series.stream().filter(DicomSeriesUtils::isHandSeries).toList();
+        }
+
+        List<Attributes> handSeries = new ArrayList<>();
+        for (Attributes study : dicomService.recentStudySearch(since)) {
+            List<Attributes> seriesList = dicomService.seriesSearch(
+                    study.getString(Tag.RetrieveAETitle), study.getString(Tag.StudyInstanceUID));
+            for (Attributes candidate : seriesList) {
+                if (DicomSeriesUtils.isHandSeries(candidate)) {
+                    // 序列结果不含患者信息，合并检查级属性
+                    Attributes merged = new Attributes(study);
+                    merged.addAll(candidate);
+                    handSeries.add(merged);
+                }
+            }
+        }
+        return handSeries;
+    }
+
+    /**
+     * 逐张限速下载序列中需要推理的图像，下载结束后按评分筛选，选中的以低优先级进入推理队列。
+     * 预取固定使用WADO逐张下载，以便按张限速
+     */
+    private int prefetchSeries(Attributes series, Map<String, KnownInstance> known, RateLimiter rateLimiter)
+            throws InterruptedException {
+        String patientID = series.getString(Tag.PatientID);
+        String studyUID = series.getString(Tag.StudyInstanceUID);
+        String seriesUID = series.getString(Tag.SeriesInstanceUID);
+        String studyDateStr = series.getString(Tag.StudyDate, "");
+        String retrieveAETitle = series.getString(Tag.RetrieveAETitle);
+        LocalDate studyDate = DicomSeriesUtils.parseDicomDate(studyDateStr);
+        if (studyDate == null) {
+            System.err.println("跳过无效Study日期的序列: " + seriesUID);
+            return 0;
+        }
+
+        SeriesSubmissionService.Submission submission = seriesSubmissionService.open(
+                new SeriesSubmissionService.Series(patientID,
+                        DicomSeriesUtils.parseDicomDate(series.getString(Tag.PatientBirthDate)),
+                        series.getString(Tag.PatientSex), studyUID, seriesUID, studyDate, retrieveAETitle),
+                InferenceQueueRepository.PRIORITY_LOW);
+        for (Attributes image : dicomService.imageSearch(retrieveAETitle, seriesUID)) {
+            String sopUID = image.getString(Tag.SOPInstanceUID);
+            KnownInstance knownInstance = known.get(sopUID);
+            if (knownInstance != null && !knownInstance.needsInference()) {
+                continue;
+            }
+            rateLimiter.acquire();
+            String downloadUrl = dicomService.buildDownloadUrl(
+                    retrieveAETitle, studyUID, seriesUID, sopUID, studyDateStr, patientID);
+            String pngPath = dicomService.downloadAndConvertToPng(downloadUrl, sopUID);
+            if (pngPath == null) {
+                continue;
+            }
+            submission.offer(sopUID, pngPath, image.getString(Tag.ImageType), knownInstance);
+        }
+
+        List<InferenceContext> submitted = submission.finish();
+        for (InferenceContext context : submitted) {
+            known.put(context.sopInstanceUID(), new KnownInstance(context.pid(), seriesUID, context.sopInstanceUID(),
+                    false, true, false));
+        }
+        enqueuedCounter.increment(submitted.size());
+        return submitted.size();
+    }
+}
@@ -2,6 +2,8 @@ package com.example.server.service;
 
 import com.example.server.Utils.RCScoreUtils;
 import com.example.server.Utils.TRScoreUtils;
+import com.example.server.model.Joint;
+import com.example.server.model.JointGrades;
 import com.example.server.model.RusChnResult;
 import com.example.server.model.Tw3CRusResult;
 import com.example.server.repository.RusChnResultRepository;
@@ -10,7 +12,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
-import java.util.List;
 import java.util.Map;
 
 @Service
@@ -24,7 +25,7 @@ public class BoneAgeService {
         this.tw3Repo = tw3Repo;
     }
 
-    public Map<String, Object> processRusChn(boolean isMale, Map<String, Integer> partIndices) {
+    public Map<String, Object> processRusChn(boolean isMale, JointGrades partIndices) {
         // 计算结果（自动处理越界等级）
         double boneAge = RCScoreUtils.calculateBoneAge(isMale, partIndices);
         int total = RCScoreUtils.calculateTotalScore(isMale, partIndices);
@@ -45,7 +46,7 @@ public class BoneAgeService {
         );
     }
 
-    public Map<String, Object> processTw3CRus(boolean isMale, Map<String, Integer> partIndices) {
+    public Map<String, Object> processTw3CRus(boolean isMale, JointGrades partIndices) {
         int total = TRScoreUtils.calculateTotalScore(isMale, partIndices);
         double boneAge = TRScoreUtils.calculateBoneAge(isMale, partIndices);
 
@@ -64,66 +65,50 @@ public class BoneAgeService {
         );
     }
 
-    private void populateRusChnResultFields(RusChnResult result, Map<String, Integer> inputs) {
-        result.setMcpFirst(validateGrade("MCPFirst", inputs.get("MCPFirst")));
-        result.setMcpThird(validateGrade("MCPThird", inputs.get("MCPThird")));
-        result.setMcpFifth(validateGrade("MCPFifth", inputs.get("MCPFifth")));
-        result.setPipFirst(validateGrade("PIPFirst", inputs.get("PIPFirst")));
-        result.setPipThird(validateGrade("PIPThird", inputs.get("PIPThird")));
-        result.setPipFifth(validateGrade("PIPFifth", inputs.get("PIPFifth")));
-        result.setMipThird(validateGrade("MIPThird", inputs.get("MIPThird")));
-        result.setMipFifth(validateGrade("MIPFifth", inputs.get("MIPFifth")));
-        result.setDipFirst(validateGrade("DIPFirst", inputs.get("DIPFirst")));
-        result.setDipThird(validateGrade("DIPThird", inputs.get("DIPThird")));
-        result.setDipFifth(validateGrade("DIPFifth", inputs.get("DIPFifth")));
-        result.setRadius(validateGrade("Radius", inputs.get("Radius")));
-        result.setUlna(validateGrade("Ulna", inputs.get("Ulna")));
+    private void populateRusChnResultFields(RusChnResult result, JointGrades inputs) {
+        result.setMcpFirst(validateGrade(Joint.MCPFirst, inputs));
+        result.setMcpThird(validateGrade(Joint.MCPThird, inputs));
+        result.setMcpFifth(validateGrade(Joint.MCPFifth, inputs));
+        result.setPipFirst(validateGrade(Joint.PIPFirst, inputs));
+        result.setPipThird(validateGrade(Joint.PIPThird, inputs));
+        result.setPipFifth(validateGrade(Joint.PIPFifth, inputs));
+        result.setMipThird(validateGrade(Joint.MIPThird, inputs));
+        result.setMipFifth(validateGrade(Joint.MIPFifth, inputs));
+        result.setDipFirst(validateGrade(Joint.DIPFirst, inputs));
+        result.setDipThird(validateGrade(Joint.DIPThird, inputs));
+        result.setDipFifth(validateGrade(Joint.DIPFifth, inputs));
+        result.setRadius(validateGrade(Joint.Radius, inputs));
+        result.setUlna(validateGrade(Joint.Ulna, inputs));
     }
 
-    private Integer validateGrade(String part, Integer grade) {
-        if (grade == null) return null;
-        try {
-            // 获取对应性别的分数表
-            Map<String, List<Integer>> scoreTable = RCScoreUtils.SCORE_TABLES.get(true); // 默认男性
-            List<Integer> partScores = scoreTable.get(part);
-            if (partScores == null) {
-                return -1; // 如果是无效部位，返回-1
-            }
-
-            int maxGrade = partScores.size();
-            if (grade < 1 || grade > maxGrade) {
-                return -1; // 越界返回-1
-            }
-        } catch (Exception e) {
-            return -1; // 如果发生异常，返回-1
+    private Integer validateGrade(Joint part, JointGrades inputs) {
+        int grade = inputs.get(part);
+        // 越界返回-1（分数表默认按男性）
+        if (grade < 1 || grade > RCScoreUtils.maxGrade(part)) {
+            return -1;
         }
         return grade;
     }
 
-    private void populateTw3CRusResultFields(Tw3CRusResult result, Map<String, Integer> inputs, boolean isMale) {
+    private void populateTw3CRusResultFields(Tw3CRusResult result, JointGrades inputs, boolean isMale) {
         // TR方法记录映射后的等级
-        result.setMcpFirst(getMappedGrade("MCPFirst", inputs));
-        result.setMcpThird(getMappedGrade("MCPThird", inputs));
-        result.setMcpFifth(getMappedGrade("MCPFifth", inputs));
-        result.setPipFirst(getMappedGrade("PIPFirst", inputs));
-        result.setPipThird(getMappedGrade("PIPThird", inputs));
-        result.setPipFifth(getMappedGrade("PIPFifth", inputs));
-        result.setMipThird(getMappedGrade("MIPThird", inputs));
-        result.setMipFifth(getMappedGrade("MIPFifth", inputs));
-        result.setDipFirst(getMappedGrade("DIPFirst", inputs));
-        result.setDipThird(getMappedGrade("DIPThird", inputs));
-        result.setDipFifth(getMappedGrade("DIPFifth", inputs));
-        result.setRadius(getMappedGrade("Radius", inputs));
-        result.setUlna(getMappedGrade("Ulna", inputs));
+        result.setMcpFirst(getMappedGrade(Joint.MCPFirst, inputs));
+        result.setMcpThird(getMappedGrade(Joint.MCPThird, inputs));
+        result.setMcpFifth(getMappedGrade(Joint.MCPFifth, inputs));
+        result.setPipFirst(getMappedGrade(Joint.PIPFirst, inputs));
+        result.setPipThird(getMappedGrade(Joint.PIPThird, inputs));
+        result.setPipFifth(getMappedGrade(Joint.PIPFifth, inputs));
+        result.setMipThird(getMappedGrade(Joint.MIPThird, inputs));
+        result.setMipFifth(getMappedGrade(Joint.MIPFifth, inputs));
+        result.setDipFirst(getMappedGrade(Joint.DIPFirst, inputs));
+        result.setDipThird(getMappedGrade(Joint.DIPThird, inputs));
+        result.setDipFifth(getMappedGrade(Joint.DIPFifth, inputs));
+        result.setRadius(getMappedGrade(Joint.Radius, inputs));
+        result.setUlna(getMappedGrade(Joint.Ulna, inputs));
     }
 
-    private Integer getMappedGrade(String part, Map<String, Integer> inputs) {
-        Integer original = inputs.get(part);
-        if (original == null) return null;
-        try {
-            return TRScoreUtils.mapGrade(part, original);
-        } catch (IllegalArgumentException e) {
-            return -1; // 越界时返回-1
-        }
+    private Integer getMappedGrade(Joint part, JointGrades inputs) {
+        // 越界时返回-1
+        return TRScoreUtils.mapGrade(part, inputs.get(part));
     }
-}
\ No newline at end of file
+}
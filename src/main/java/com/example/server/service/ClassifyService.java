@@ -1,6 +1,9 @@
 package com.example.server.service;
 
 import ai.onnxruntime.*;
+import com.example.server.model.Joint;
+import com.example.server.model.JointDetections;
+import com.example.server.model.JointGrades;
 import org.apache.commons.imaging.Imaging;
 import org.springframework.stereotype.Service;
 
@@ -16,27 +19,12 @@ import java.util.stream.Collectors;
 
 @Service
 public class ClassifyService {
-    // 模型映射关系
-    private static final Map<String, String> MODEL_MAPPING = Map.ofEntries(
-            Map.entry("MCPFirst", "MCPFirst"),
-            Map.entry("MCPThird", "MCP"),
-            Map.entry("MCPFifth", "MCP"),
-            Map.entry("PIPFirst", "PIPFirst"),
-            Map.entry("PIPThird", "PIP"),
-            Map.entry("PIPFifth", "PIP"),
-            Map.entry("MIPThird", "MIP"),
-            Map.entry("MIPFifth", "MIP"),
-            Map.entry("DIPFirst", "DIPFirst"),
-            Map.entry("DIPThird", "DIP"),
-            Map.entry("DIPFifth", "DIP"),
-            Map.entry("Radius", "Radius"),
-            Map.entry("Ulna", "Ulna")
-    );
-
     // 模型配置
     private static final int INPUT_SIZE = 224; // 分类模型输入尺寸
     private final OrtEnvironment env;
     private final Map<String, OrtSession> modelSessions = new HashMap<>();
+    // 按关节下标索引的模型会话，避免推理热路径上的字符串查找
+    private final OrtSession[] jointSessions = new OrtSession[Joint.COUNT];
 
     public ClassifyService() throws OrtException {
         env = OrtEnvironment.getEnvironment();
@@ -45,7 +33,10 @@ public class ClassifyService {
 
     // 通过类路径资源流加载模型
     private void loadModels() throws OrtException {
-        Set<String> requiredModels = new HashSet<>(MODEL_MAPPING.values());
+        Set<String> requiredModels = new HashSet<>();
+        for (Joint joint : Joint.values()) {
+            requiredModels.add(joint.getModelName());
+        }
         for (String modelName : requiredModels) {
             try (InputStream modelStream = getClass().getResourceAsStream("/model/" + modelName + ".onnx")) {
                 if (modelStream == null) {
@@ -66,75 +57,56 @@ public class ClassifyService {
                 System.err.println("加载模型 " + modelName + " 失败: " + e.getMessage());
             }
         }
+        for (Joint joint : Joint.values()) {
+            jointSessions[joint.ordinal()] = modelSessions.get(joint.getModelName());
+        }
     }
 
     // 主分类方法
-    public Map<String, Integer> classify(Map<String, Object> detectionResults, BufferedImage originImage) {
-        // 初始化结果Map，所有键值设为-1
-        Map<String, Integer> classificationResults = new HashMap<>();
-        for (String key : MODEL_MAPPING.keySet()) {
-            classificationResults.put(key, -1);
-        }
+    public JointGrades classify(JointDetections detections, BufferedImage originImage) {
+        return classify(detections, originImage, 0, 0);
+    }
 
-        try {
-            @SuppressWarnings("unchecked")
-            Map<String, List<Map<String, Object>>> results =
-                    (Map<String, List<Map<String, Object>>>) detectionResults.get("results");
-
-            // 确保结果包含所有关节类型
-            Set<String> detectedJoints = new HashSet<>(results.keySet());
-            for (String joint : MODEL_MAPPING.keySet()) {
-                if (!detectedJoints.contains(joint)) {
-                    System.err.println("警告: 检测结果中缺少关节类型: " + joint);
-                    // 已经初始化为-1，无需额外操作
-                }
+    /**
+     * 在原图的局部区域上分类，originX/originY 为该区域左上角在原图中的坐标
+     */
+    public JointGrades classify(JointDetections detections, BufferedImage regionImage, int originX, int originY) {
+        // 初始化结果，所有关节等级设为-1
+        JointGrades grades = JointGrades.empty();
+
+        for (Joint joint : Joint.values()) {
+            if (!detections.has(joint)) {
+                System.err.println("警告: 检测结果中缺少关节类型: " + joint);
+                continue;
             }
 
-            for (Map.Entry<String, List<Map<String, Object>>> entry : results.entrySet()) {
-                String className = entry.getKey();
-                String modelName = MODEL_MAPPING.get(className);
-
-                // 如果模型名称未定义，跳过
-                if (modelName == null) {
-                    System.err.println("警告: " + className + " 未定义模型映射");
-                    continue;
-                }
-
-                // 检查模型是否加载成功
-                if (!modelSessions.containsKey(modelName)) {
-                    System.err.println("警告: " + className + " 的模型 " + modelName + " 未加载");
-                    // 保持默认值-1
-                    continue;
-                }
+            // 检查模型是否加载成功
+            OrtSession session = jointSessions[joint.ordinal()];
+            if (session == null) {
+                System.err.println("警告: " + joint + " 的模型 " + joint.getModelName() + " 未加载");
+                continue;
+            }
 
-                // 只处理第一个检测框（每个关节只应有一个检测结果）
-                if (!entry.getValue().isEmpty()) {
-                    Map<String, Object> detection = entry.getValue().getFirst();
-                    float[] bbox = (float[]) detection.get("bbox");
-                    BufferedImage crop = cropImage(originImage, bbox);
-
-                    try {
-                        int result = infer(crop, modelSessions.get(modelName));
-                        classificationResults.put(className, result);
-                    } catch (Exception e) {
-                        System.err.println(className + " 分类失败: " + e.getMessage());
-                        // 分类失败时保持-1
-                    }
-                }
+            try {
+                BufferedImage crop = cropImage(regionImage,
+                        detections.x1(joint) - originX, detections.y1(joint) - originY,
+                        detections.x2(joint) - originX, detections.y2(joint) - originY);
+                grades.set(joint, infer(crop, session));
+            } catch (Exception e) {
+                System.err.println(joint + " 分类失败: " + e.getMessage());
+                // 分类失败时保持-1
             }
-        } catch (Exception e) {
-            System.err.println("分类流程异常: " + e.getMessage());
         }
 
-        return classificationResults;
+        return grades;
     }
 
     // 图像裁剪
-    private BufferedImage cropImage(BufferedImage image, float[] bbox) {
-        int x = (int) bbox[0];
-        int y = (int) bbox[1];
-        int width = (int) (bbox[2] - bbox[0]);
-        int height = (int) (bbox[3] - bbox[1]);
+    private BufferedImage cropImage(BufferedImage image, float x1, float y1, float x2, float y2) {
+        int x = (int) x1;
+        int y = (int) y1;
+        int width = (int) (x2 - x1);
+        int height = (int) (y2 - y1);
 
         // 边界检查
         x = Math.max(0, x);
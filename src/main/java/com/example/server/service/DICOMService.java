@@ -1,60 +1,94 @@
 package com.example.server.service;
 
+import com.example.server.Utils.DicomDecodeUtils;
+import com.example.server.Utils.DicomImageUtils;
 import com.example.server.config.DICOMConfig;
+import com.example.server.model.PatientInfo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.dcm4che3.data.*;
 import org.dcm4che3.io.DicomInputStream;
 import org.dcm4che3.net.*;
-import org.dcm4che3.net.pdu.AAssociateRQ;
-import org.dcm4che3.net.pdu.PresentationContext;
-import org.dcm4che3.net.service.BasicCEchoSCP;
-import org.dcm4che3.net.service.DicomServiceRegistry;
-import org.dcm4che3.util.UIDUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
-import java.io.File;
+import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.UUID;
+import java.util.Set;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 @Service
 public class DICOMService {
     private static final String DICOM_DIR = "temp/dicom_files/";
-    private static final String PNG_DIR = "temp/images/";
-    private static final int CLEANUP_DAYS = 1;
+    private static final int STREAM_BUFFER_SIZE = 256 * 1024;
+    private static final String TRANSFER_SYNTAX_PARAM = "&transferSyntax=";
 
     private final DICOMConfig config;
-    private final Executor dicomExecutor;
+    private final PacsEndpointRegistry registry;
+    private final MeterRegistry meterRegistry;
+    private final WadoFetcher wadoFetcher;
+    private final PacsQueryCache queryCache;
+    private final LocalImageCache imageCache;
+    private final Executor fanoutExecutor;
 
     @Autowired
-    public DICOMService(DICOMConfig config, @Qualifier("dicomTaskExecutor") Executor dicomExecutor) {
+    public DICOMService(
+            DICOMConfig config,
+            PacsEndpointRegistry registry,
+            MeterRegistry meterRegistry,
+            WadoFetcher wadoFetcher,
+            PacsQueryCache queryCache,
+            LocalImageCache imageCache,
+            @Qualifier("pacsFanoutExecutor") Executor fanoutExecutor
+    ) {
         this.config = config;
-        this.dicomExecutor = dicomExecutor;
+        this.registry = registry;
+        this.meterRegistry = meterRegistry;
+        this.wadoFetcher = wadoFetcher;
+        this.queryCache = queryCache;
+        this.imageCache = imageCache;
+        this.fanoutExecutor = fanoutExecutor;
         initDirectories();
     }
 
     private void initDirectories() {
         try {
-            Files.createDirectories(Paths.get(DICOM_DIR));
-            Files.createDirectories(Paths.get(PNG_DIR));
+            Path dicomDir = Paths.get(DICOM_DIR);
+            Files.createDirectories(dicomDir);
+            // 落盘解析的DICOM用完即删，残留的只可能来自异常退出
+            try (var leftovers = Files.list(dicomDir)) {
+                for (Path file : (Iterable<Path>) leftovers::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
         } catch (IOException e) {
             throw new RuntimeException("初始化目录失败: " + e.getMessage());
         }
     }
     
+    /**
+     * 患者级查询：各PACS并行查询，任一PACS返回匹配即结束（不等待较慢的PACS）
+     */
     public List<Attributes> patientSearch(String patientID) {
         try {
             Attributes keys = new Attributes();
@@ -62,12 +96,16 @@ public class DICOMService {
             keys.setString(Tag.PatientID, VR.LO, patientID);
             keys.setString(Tag.PatientSex, VR.CS, "");
             keys.setString(Tag.PatientBirthDate, VR.DA, "");
-            return queryWithRetry(keys);
+            return queryCache.get("PATIENT", patientID, config.getQueryCachePatientTtlMs(),
+                    () -> queryFirstMatch(keys));
         } catch (RuntimeException e) {
             throw new RuntimeException("患者查询失败", e);
         }
     }
 
+    /**
+     * 检查级查询：各PACS并行查询，结果按StudyInstanceUID合并去重
+     */
     public List<Attributes> studySearch(String patientID) {
         try {
             Attributes keys = new Attributes();
@@ -75,88 +113,331 @@ public class DICOMService {
             keys.setString(Tag.PatientID, VR.LO, patientID);
             keys.setString(Tag.StudyInstanceUID, VR.UI, "");
             keys.setString(Tag.StudyDate, VR.DA, "");
-            return queryWithRetry(keys);
+            return queryCache.get("STUDY", patientID, config.getQueryCacheStudyTtlMs(),
+                    () -> queryAndMerge(null, keys, Tag.StudyInstanceUID));
         } catch (RuntimeException e) {
             throw new RuntimeException("检查查询失败", e);
         }
     }
 
     public List<Attributes> seriesSearch(String StudyUID) {
+        return seriesSearch(null, StudyUID);
+    }
+
+    /**
+     * 序列级查询：retrieveAETitle 为上级结果的来源PACS时只查询该PACS，否则查询全部PACS并合并
+     */
+    public List<Attributes> seriesSearch(String retrieveAETitle, String StudyUID) {
         try {
             Attributes keys = new Attributes();
             keys.setString(Tag.QueryRetrieveLevel, VR.CS, "SERIES");
             keys.setString(Tag.StudyInstanceUID, VR.UI, StudyUID);
             keys.setString(Tag.SeriesInstanceUID, VR.UI, "");
             keys.setString(Tag.SeriesDescription, VR.LO, "");
-            return queryWithRetry(keys);
+            keys.setNull(Tag.NumberOfSeriesRelatedInstances, VR.IS);
+            return queryAndMerge(retrieveAETitle, keys, Tag.SeriesInstanceUID);
         } catch (RuntimeException e) {
             throw new RuntimeException("序列查询失败", e);
         }
     }
 
     public List<Attributes> imageSearch(String SeriesUID) {
+        return imageSearch(null, SeriesUID);
+    }
+
+    /**
+     * 图像级查询：路由规则同 {@link #seriesSearch(String, String)}，多PACS结果按SOPInstanceUID去重
+     */
+    public List<Attributes> imageSearch(String retrieveAETitle, String SeriesUID) {
         try {
             Attributes keys = new Attributes();
             keys.setString(Tag.QueryRetrieveLevel, VR.CS, "IMAGE");
             keys.setString(Tag.SeriesInstanceUID, VR.UI, SeriesUID);
             keys.setString(Tag.SOPInstanceUID, VR.UI, "");
-            return queryWithRetry(keys);
+            // 供推理前质量筛选区分原始图像与派生图像、定位片
+            keys.setNull(Tag.ImageType, VR.CS);
+            return queryAndMerge(retrieveAETitle, keys, Tag.SOPInstanceUID);
         } catch (RuntimeException e) {
             throw new RuntimeException("图像查询失败", e);
         }
     }
 
-    private List<Attributes> queryWithRetry(Attributes keys) {
+    /**
+     * 向目标PACS并行发送同一查询并合并结果：按 uniqueTag 去重，重复时保留配置靠前的PACS的记录。
+     * 已知来源PACS（retrieveAETitle）时只查询该PACS
+     */
+    private List<Attributes> queryAndMerge(String retrieveAETitle, Attributes keys, int uniqueTag) {
+        PacsNode routed = registry.find(retrieveAETitle);
+        List<PacsNode> targets = routed != null ? List.of(routed) : registry.getNodes();
+        return merge(targets, fanOut(targets, node -> queryWithRetry(node, keys)), uniqueTag);
+    }
+
+    /**
+     * 各PACS并行查询，第一个非空结果即返回；全部为空时返回空列表
+     */
+    private List<Attributes> queryFirstMatch(Attributes keys) {
+        List<PacsNode> nodes = registry.getNodes();
+        if (nodes.size() == 1) {
+            return tagSource(queryWithRetry(nodes.getFirst(), keys), nodes.getFirst());
+        }
+
+        CompletableFuture<List<Attributes>> firstMatch = new CompletableFuture<>();
+        AtomicInteger remaining = new AtomicInteger(nodes.size());
+        for (PacsNode node : nodes) {
+            CompletableFuture
+                    .supplyAsync(() -> tagSource(queryWithRetry(node, keys), node), fanoutExecutor)
+                    .whenComplete((results, e) -> {
+                        if (e == null && !results.isEmpty()) {
+                            firstMatch.complete(results);
+                        }
+                        if (remaining.decrementAndGet() == 0) {
+                            firstMatch.complete(Collections.emptyList());
+                        }
+                    });
+        }
+        return firstMatch.join();
+    }
+
+    /**
+     * 对每个PACS执行 query，返回与 targets 顺序一致的结果（单个PACS时在当前线程执行）。
+     * 每个任务使用各自的查询键副本；任务异常时该PACS的结果记为空列表
+     */
+    private List<List<Attributes>> fanOut(List<PacsNode> targets, Function<PacsNode, List<Attributes>> query) {
+        if (targets.size() == 1) {
+            return Collections.singletonList(query.apply(targets.getFirst()));
+        }
+        List<CompletableFuture<List<Attributes>>> futures = targets.stream()
+                .map(node -> CompletableFuture.supplyAsync(() -> query.apply(node), fanoutExecutor))
+                .toList();
+
+        List<List<Attributes>> results = new ArrayList<>(targets.size());
+        for (int i = 0; i < targets.size(); i++) {
+            try {
+                results.add(futures.get(i).join());
+            } catch (CompletionException e) {
+                System.err.println("PACS " + targets.get(i).getAeTitle() + " 查询异常: " + e.getCause().getMessage());
+                results.add(Collections.emptyList());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 按PACS顺序合并结果并去重，每条结果写入 RetrieveAETitle 标明来源PACS，
+     * 下级查询、WADO下载与C-GET据此路由到同一PACS
+     */
+    private static List<Attributes> merge(List<PacsNode> targets, List<List<Attributes>> perNode, int uniqueTag) {
+        if (targets.size() == 1) {
+            return tagSource(perNode.getFirst(), targets.getFirst());
+        }
+        List<Attributes> merged = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < targets.size(); i++) {
+            for (Attributes result : tagSource(perNode.get(i), targets.get(i))) {
+                String key = result.getString(uniqueTag);
+                if (key == null || seen.add(key)) {
+                    merged.add(result);
+                }
+            }
+        }
+        return merged;
+    }
+
+    private static List<Attributes> tagSource(List<Attributes> results, PacsNode node) {
+        for (Attributes result : results) {
+            result.setString(Tag.RetrieveAETitle, VR.AE, node.getAeTitle());
+        }
+        return results;
+    }
+
+    private List<Attributes> queryWithRetry(PacsNode node, Attributes keys) {
+        // 按查询层级与PACS记录耗时（pacs.query{level=PATIENT|STUDY|SERIES|IMAGE, pacs=AE}）
+        String level = keys.getString(Tag.QueryRetrieveLevel, "UNKNOWN");
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return doQueryWithRetry(node, new Attributes(keys));
+        } finally {
+            sample.stop(meterRegistry.timer("pacs.query", "level", level, "pacs", node.getAeTitle()));
+        }
+    }
+
+    /**
+     * 关系型SERIES级查询：一次往返获取患者的全部序列（含Study信息），在本地按 seriesDescription
+     * 忽略大小写过滤（多数PACS对SeriesDescription区分大小写精确匹配，"HAND"/"hand"会被漏掉）。
+     * 各PACS并行查询，结果按SeriesInstanceUID合并；
+     * 任一可用PACS不支持或拒绝关系型查询时返回null，调用方应回退到逐级查询。
+     */
+    public List<Attributes> handSeriesSearch(String patientID, String seriesDescription) {
+        if (config.getSeriesQueryMode() != DICOMConfig.SeriesQueryMode.AUTO) {
+            return null;
+        }
+        Attributes keys = new Attributes();
+        keys.setString(Tag.QueryRetrieveLevel, VR.CS, "SERIES");
+        keys.setString(Tag.PatientID, VR.LO, patientID);
+        keys.setString(Tag.StudyInstanceUID, VR.UI, "");
+        keys.setString(Tag.StudyDate, VR.DA, "");
+        keys.setString(Tag.SeriesInstanceUID, VR.UI, "");
+        keys.setString(Tag.SeriesDescription, VR.LO, "");
+        keys.setNull(Tag.NumberOfSeriesRelatedInstances, VR.IS);
+
+        List<PacsNode> nodes = registry.getNodes();
+        List<List<Attributes>> perNode = fanOut(nodes, node -> relationalSeriesSearch(node, keys));
+        if (perNode.contains(null)) {
+            return null;
+        }
+        return filterByDescription(merge(nodes, perNode, Tag.SeriesInstanceUID), seriesDescription);
+    }
+
+    private static List<Attributes> filterByDescription(List<Attributes> seriesList, String seriesDescription) {
+        return seriesList.stream()
+                .filter(series -> seriesDescription.equalsIgnoreCase(series.getString(Tag.SeriesDescription, "")))
+                .toList();
+    }
+
+    /**
+     * 跨患者的关系型SERIES级查询：返回 since 之后的检查中 seriesDescription 匹配（忽略大小写，本地过滤）的序列，
+     * 结果包含患者信息（PatientID/PatientSex/PatientBirthDate）与检查信息，用于后台预取。
+     * 各PACS并行查询并按SeriesInstanceUID合并；任一可用PACS不支持关系型查询时返回null，
+     * 调用方应改用 {@link #recentStudySearch(LocalDateTime)} 后逐个检查查询序列
+     */
+    public List<Attributes> recentSeriesSearch(LocalDateTime since, String seriesDescription) {
+        if (config.getSeriesQueryMode() != DICOMConfig.SeriesQueryMode.AUTO) {
+            return null;
+        }
+        Attributes keys = recentKeys("SERIES", since);
+        keys.setString(Tag.SeriesInstanceUID, VR.UI, "");
+        keys.setString(Tag.SeriesDescription, VR.LO, "");
+        keys.setNull(Tag.NumberOfSeriesRelatedInstances, VR.IS);
+
+        List<PacsNode> nodes = registry.getNodes();
+        List<List<Attributes>> perNode = fanOut(nodes, node -> relationalSeriesSearch(node, keys));
+        if (perNode.contains(null)) {
+            return null;
+        }
+        return filterByDescription(merge(nodes, perNode, Tag.SeriesInstanceUID), seriesDescription);
+    }
+
+    /**
+     * 跨患者的检查级查询：返回 since 之后的检查（含患者信息），各PACS结果按StudyInstanceUID合并
+     */
+    public List<Attributes> recentStudySearch(LocalDateTime since) {
+        try {
+            return queryAndMerge(null, recentKeys("STUDY", since), Tag.StudyInstanceUID);
+        } catch (RuntimeException e) {
+            throw new RuntimeException("近期检查查询失败", e);
+        }
+    }
+
+    /**
+     * 时间窗口查询键：StudyDate 取 since 当天起的日期范围；窗口不跨日时再按 StudyTime 缩小范围
+     * （跨日时只按日期过滤，多返回的已入库实例由调用方去重）
+     */
+    private static Attributes recentKeys(String level, LocalDateTime since) {
+        Attributes keys = new Attributes();
+        keys.setString(Tag.QueryRetrieveLevel, VR.CS, level);
+        keys.setString(Tag.PatientID, VR.LO, "");
+        keys.setString(Tag.PatientSex, VR.CS, "");
+        keys.setString(Tag.PatientBirthDate, VR.DA, "");
+        keys.setString(Tag.StudyInstanceUID, VR.UI, "");
+        keys.setString(Tag.StudyDate, VR.DA, since.format(DateTimeFormatter.BASIC_ISO_DATE) + "-");
+        keys.setString(Tag.StudyTime, VR.TM, since.toLocalDate().equals(LocalDate.now())
+                ? since.format(DateTimeFormatter.ofPattern("HHmmss")) + "-" : "");
+        return keys;
+    }
+
+    /**
+     * 单个PACS的关系型查询；熔断中的PACS视为无结果，不支持关系型查询时返回null
+     */
+    private List<Attributes> relationalSeriesSearch(PacsNode node, Attributes keys) {
+        if (node.relationalRejected().get()) {
+            return null;
+        }
+        PacsCircuitBreaker circuitBreaker = node.getCircuitBreaker();
+        if (!circuitBreaker.allowRequest()) {
+            return Collections.emptyList();
+        }
+
+        DicomAssociationPool associationPool = node.getAssociationPool();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Association association = null;
+        boolean broken = true;
+        try {
+            association = associationPool.borrow();
+            if (!association.getQueryOptionsFor(UID.PatientRootQueryRetrieveInformationModelFind)
+                    .contains(QueryOption.RELATIONAL)) {
+                broken = false;
+                rejectRelationalQuery(node, "PACS未接受关系型查询协商");
+                return null;
+            }
+
+            List<Attributes> results = new ArrayList<>();
+            int status = executeFind(association, new Attributes(keys), results, node.getQueryTimeoutSeconds());
+            broken = false;
+            circuitBreaker.recordSuccess();
+            if (status != Status.Success) {
+                rejectRelationalQuery(node, "关系型查询返回状态 " + Integer.toHexString(status));
+                return null;
+            }
+            return results;
+        } catch (Exception e) {
+            circuitBreaker.recordFailure();
+            // 网络/超时类失败不代表PACS不支持，本次回退但不记录拒绝
+            System.err.println("关系型Series查询失败 [" + node.getAeTitle() + "]，回退逐级查询: " + e.getMessage());
+            return null;
+        } finally {
+            if (association != null) {
+                associationPool.release(association, broken);
+            }
+            sample.stop(meterRegistry.timer("pacs.query", "level", "SERIES_RELATIONAL", "pacs", node.getAeTitle()));
+        }
+    }
+
+    private void rejectRelationalQuery(PacsNode node, String reason) {
+        if (node.relationalRejected().compareAndSet(false, true)) {
+            System.err.println(node.getAeTitle() + ": " + reason + "，后续改用逐级查询");
+        }
+    }
+
+    private List<Attributes> doQueryWithRetry(PacsNode node, Attributes keys) {
+        DicomAssociationPool associationPool = node.getAssociationPool();
+        PacsCircuitBreaker circuitBreaker = node.getCircuitBreaker();
         final int maxRetries = 1;   //重连最大次数
         int retryDelay = 1;
-        List<Attributes> results = new ArrayList<>();
         Exception lastException = null;
 
         for (int attempt = 0; attempt < maxRetries; attempt++) {
+            // 熔断打开时立即放弃，由调用方走数据库结果
+            if (!circuitBreaker.allowRequest()) {
+                System.err.println("PACS " + node.getAeTitle() + " 熔断中，跳过查询: "
+                        + keys.getString(Tag.QueryRetrieveLevel));
+                return Collections.emptyList();
+            }
+
             Association association = null;
+            boolean broken = true;
             try {
-                association = createAssociation();
-
-                // 使用 CountDownLatch 替代 wait/notify
-                CountDownLatch latch = new CountDownLatch(1);
-                AtomicBoolean completed = new AtomicBoolean(false);
-
-                association.cfind(
-                        UID.PatientRootQueryRetrieveInformationModelFind,
-                        1,
-                        keys,
-                        null,
-                        new DimseRSPHandler(0) {
-                            @Override
-                            public void onDimseRSP(Association as, Attributes cmd, Attributes data) {
-                                int status = cmd.getInt(Tag.Status, -1);
-                                if (status == Status.Pending && data != null) {
-                                    results.add(data);
-                                } else if (status == Status.Success) {
-                                    completed.set(true);
-                                    latch.countDown();
-                                } else if (status != Status.Pending) {
-                                    latch.countDown();
-                                }
-                            }
-                        }
-                );
+                association = associationPool.borrow();
 
-                // 设置更合理的等待时间 (30秒)
-                if (!latch.await(30, TimeUnit.SECONDS)) {
-                    System.err.println("查询超时，准备重试...");
-                    throw new TimeoutException("DICOM查询超时");
-                }
+                List<Attributes> results = new ArrayList<>();
+                int status = executeFind(association, keys, results, node.getQueryTimeoutSeconds());
 
-                if (completed.get()) {
+                // 查询正常结束（包括失败状态）时关联仍可复用
+                broken = false;
+                if (status == Status.Success) {
+                    circuitBreaker.recordSuccess();
                     return results;
                 }
+                circuitBreaker.recordFailure();
             } catch (Exception e) {
                 lastException = e;
-                System.err.printf("查询失败 (尝试 %d/%d): [%s] %s%n",
+                circuitBreaker.recordFailure();
+                System.err.printf("查询失败 [%s] (尝试 %d/%d): [%s] %s%n", node.getAeTitle(),
                         attempt + 1, maxRetries, e.getClass().getSimpleName(), e.getMessage());
+                if (attempt + 1 >= maxRetries) {
+                    break;
+                }
 
-                // 指数退避重试
+                // 指数退避重试（最后一次失败后不再等待）
                 try {
                     Thread.sleep(retryDelay * 1000L);
                 } catch (InterruptedException ignored) {
@@ -165,14 +446,7 @@ public class DICOMService {
                 retryDelay *= 2;
             } finally {
                 if (association != null) {
-                    try {
-                        association.release();
-                        if (association.getDevice() != null) {
-                            association.getDevice().unbindConnections();
-                        }
-                    } catch (IOException ex) {
-                        System.err.println("释放DICOM连接失败: " + ex.getMessage());
-                    }
+                    associationPool.release(association, broken);
                 }
             }
         }
@@ -183,154 +457,284 @@ public class DICOMService {
         return Collections.emptyList();
     }
 
-    public String downloadAndConvertToPng(String downloadUrl, String sopUID) {
-        Path dicomPath = null;
-        try {
-            // 下载DICOM文件
-            String dicomFileName = sopUID + ".dcm";
-            dicomPath = Paths.get(DICOM_DIR, dicomFileName);
-            downloadFile(downloadUrl, dicomPath.toString());
+    /**
+     * 在给定关联上执行一次C-FIND，匹配结果写入results，返回最终响应状态
+     */
+    private int executeFind(Association association, Attributes keys, List<Attributes> results,
+                            long timeoutSeconds) throws Exception {
+        // 使用 CountDownLatch 替代 wait/notify
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicInteger finalStatus = new AtomicInteger(-1);
+
+        association.cfind(
+                UID.PatientRootQueryRetrieveInformationModelFind,
+                1,
+                keys,
+                null,
+                new DimseRSPHandler(association.nextMessageID()) {
+                    @Override
+                    public void onDimseRSP(Association as, Attributes cmd, Attributes data) {
+                        int status = cmd.getInt(Tag.Status, -1);
+                        if (Status.isPending(status)) {
+                            if (data != null) {
+                                results.add(data);
+                            }
+                        } else {
+                            finalStatus.set(status);
+                            latch.countDown();
+                        }
+                    }
+                }
+        );
 
-            // 转换为PNG
-            String pngFileName = sopUID + ".png";
-            Path pngPath = Paths.get(PNG_DIR, pngFileName);
-            convertDicomToPng(dicomPath.toString(), pngPath.toString());
+        if (!latch.await(timeoutSeconds, TimeUnit.SECONDS)) {
+            System.err.println("查询超时，准备重试...");
+            throw new TimeoutException("DICOM查询超时");
+        }
+        return finalStatus.get();
+    }
 
-            // 删除临时DICOM文件
-            Files.deleteIfExists(dicomPath);
-            return pngPath.toString();
+    /**
+     * 获取图像PNG：本地缓存命中时直接返回，否则下载、转换并写入缓存
+     */
+    public String downloadAndConvertToPng(String downloadUrl, String sopUID) {
+        URI uri = URI.create(downloadUrl);
+        return downloadAndConvertToPng(registry.findByDownloadAddress(uri.getHost(), uri.getPort()),
+                downloadUrl, sopUID);
+    }
+
+    private String downloadAndConvertToPng(PacsNode node, String downloadUrl, String sopUID) {
+        Path cached = imageCache.get(sopUID);
+        if (cached != null) {
+            return cached.toString();
+        }
+        if (!node.getCircuitBreaker().allowRequest()) {
+            System.err.println("PACS " + node.getAeTitle() + " 熔断中，跳过下载 [SOP_UID=" + sopUID + "]");
+            return null;
+        }
+        try {
+            // 下载并解析DICOM（小文件直接流式解析，不落盘）
+            Attributes dataset = downloadDataset(node, downloadUrl, sopUID);
+            return convertDatasetToPng(dataset).toString();
         } catch (IOException e) {
             // 记录错误日志
             System.err.println("文件处理失败 [SOP_UID=" + sopUID + "]: " + e.getMessage());
-            // 清理残留文件
-            try {
-                if (dicomPath != null) Files.deleteIfExists(dicomPath);
-            } catch (IOException ex) {
-                System.err.println("清理临时文件失败: " + ex.getMessage());
-            }
             return null;
         }
     }
 
-    // ----------------------- 工具方法 -----------------------
-    private Association createAssociation() throws Exception {
-        Device device = new Device(config.getLocalAeTitle());
-        Connection localConn = new Connection();
-        device.addConnection(localConn);
-
-        device.setExecutor(dicomExecutor);
-        device.setScheduledExecutor((ScheduledExecutorService) dicomExecutor);
-
-        ApplicationEntity ae = new ApplicationEntity(config.getLocalAeTitle());
-        ae.setAssociationInitiator(true);
-        device.addApplicationEntity(ae);
-        ae.addConnection(localConn);
-
-        device.bindConnections();
-
-        Connection remoteConn = new Connection();
-        remoteConn.setHostname(config.getPacsIp());
-        remoteConn.setPort(config.getPacsPort());
-
-        // 构建关联请求
-        AAssociateRQ aarq = new AAssociateRQ();
-        aarq.setCalledAET(config.getPacsAeTitle());
-        aarq.setCallingAET(config.getLocalAeTitle());
-
-        // 添加必要的Presentation Context
-        aarq.addPresentationContext(
-                new PresentationContext(
-                        1,
-                        UID.PatientRootQueryRetrieveInformationModelFind,
-                        UID.ExplicitVRLittleEndian
-                )
-        );
+    /**
+     * 全部PACS熔断打开时返回false，调用方应直接使用数据库结果
+     */
+    public boolean isPacsAvailable() {
+        return registry.getNodes().stream()
+                .anyMatch(node -> node.getCircuitBreaker().getState() == PacsCircuitBreaker.State.CLOSED);
+    }
+
+    /**
+     * 指定PACS的图像获取方式，该PACS未单独配置时使用全局配置
+     */
+    public DICOMConfig.RetrieveMode getRetrieveMode(String retrieveAETitle) {
+        DICOMConfig.RetrieveMode mode = resolveNode(retrieveAETitle).getEndpoint().getRetrieveMode();
+        return mode != null ? mode : config.getRetrieveMode();
+    }
+
+    /**
+     * 通过C-GET取回整个序列并逐个转换为PNG，每转换完成一张即回调 onImage(sopUID, pngPath)
+     *
+     * @return 成功转换的图像数
+     */
+    public int retrieveSeriesAsPng(String studyUID, String seriesUID, BiConsumer<String, String> onImage)
+            throws Exception {
+        return retrieveSeriesAsPng(null, studyUID, seriesUID, onImage);
+    }
+
+    /**
+     * 从序列所在的PACS（retrieveAETitle，未知时为默认PACS）C-GET取回
+     */
+    public int retrieveSeriesAsPng(String retrieveAETitle, String studyUID, String seriesUID,
+                                   BiConsumer<String, String> onImage) throws Exception {
+        PacsNode node = resolveNode(retrieveAETitle);
+        PacsCircuitBreaker circuitBreaker = node.getCircuitBreaker();
+        if (!circuitBreaker.allowRequest()) {
+            throw new IOException("PACS " + node.getAeTitle() + " 熔断中，跳过C-GET");
+        }
+        AtomicInteger converted = new AtomicInteger();
+        try {
+            node.getRetrieveService().retrieveSeries(studyUID, seriesUID, dataset -> {
+                String sopUID = dataset.getString(Tag.SOPInstanceUID);
+                String pngPath = convertToPng(dataset);
+                converted.incrementAndGet();
+                onImage.accept(sopUID, pngPath);
+            });
+        } catch (IOException e) {
+            // 连接、关联失败或取回超时计入熔断；转换等本地异常不计
+            circuitBreaker.recordFailure();
+            throw e;
+        }
+        circuitBreaker.recordSuccess();
+        return converted.get();
+    }
 
-        return ae.connect(remoteConn, aarq);
+    /**
+     * 将已接收的DICOM数据集转换为PNG，返回PNG路径；转换失败时抛出 UncheckedIOException
+     */
+    public String convertToPng(Attributes dataset) {
+        String sopUID = dataset.getString(Tag.SOPInstanceUID);
+        try {
+            return convertDatasetToPng(dataset).toString();
+        } catch (IOException e) {
+            System.err.println("文件处理失败 [SOP_UID=" + sopUID + "]: " + e.getMessage());
+            throw new UncheckedIOException(e);
+        }
     }
 
-    private void downloadFile(String urlStr, String savePath) throws IOException {
-        URL url = new URL(urlStr);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("GET");
-        try (var in = conn.getInputStream();
-             var out = Files.newOutputStream(Paths.get(savePath))) {
-            byte[] buffer = new byte[4096];
-            int bytesRead;
-            while ((bytesRead = in.read(buffer)) != -1) {
-                out.write(buffer, 0, bytesRead);
+    /**
+     * 根据数据库中的患者记录重新下载并转换图像：优先从记录的来源PACS下载，
+     * 失败时依次尝试其余PACS（第一个成功即返回）
+     */
+    public String downloadAndConvertToPng(PatientInfo patientInfo) {
+        // 检查必要字段是否为空
+        if (patientInfo.getStudyInstanceUID() == null ||
+                patientInfo.getSeriesInstanceUID() == null ||
+                patientInfo.getSOPInstanceUID() == null ||
+                patientInfo.getStudyDate() == null) {
+            System.err.println("患者记录 " + patientInfo.getPID() + " 缺少必要信息，无法处理");
+            return null;
+        }
+
+        List<PacsNode> candidates = new ArrayList<>(registry.getNodes());
+        PacsNode recorded = registry.find(patientInfo.getRetrieveAETitle());
+        if (recorded != null) {
+            candidates.remove(recorded);
+            candidates.addFirst(recorded);
+        }
+        for (PacsNode node : candidates) {
+            String downloadUrl = buildDownloadUrl(
+                    node,
+                    patientInfo.getStudyInstanceUID(),
+                    patientInfo.getSeriesInstanceUID(),
+                    patientInfo.getSOPInstanceUID(),
+                    patientInfo.getStudyDate().toString().replace("-", ""),
+                    patientInfo.getPatientID()
+            );
+            String pngPath = downloadAndConvertToPng(node, downloadUrl, patientInfo.getSOPInstanceUID());
+            if (pngPath != null) {
+                return pngPath;
             }
         }
+        return null;
     }
 
-    private void convertDicomToPng(String dicomPath, String pngPath) throws IOException {
-        try (DicomInputStream dis = new DicomInputStream(new File(dicomPath))) {
-            Attributes dataset = dis.readDataset();
-            int[] pixels = dataset.getInts(Tag.PixelData);
-            int rows = dataset.getInt(Tag.Rows, 0);
-            int columns = dataset.getInt(Tag.Columns, 0);
-            if (rows == 0 || columns == 0) throw new IOException("无效的DICOM图像尺寸");
+    /**
+     * 按AE名称查找PACS，未知时使用默认PACS
+     */
+    private PacsNode resolveNode(String retrieveAETitle) {
+        PacsNode node = registry.find(retrieveAETitle);
+        return node != null ? node : registry.getDefaultNode();
+    }
 
-            double windowCenter = dataset.getDouble(Tag.WindowCenter, 0);
-            double windowWidth = dataset.getDouble(Tag.WindowWidth, 0);
-            if (windowWidth == 0) {
-                windowWidth = dataset.getInt(Tag.LargestImagePixelValue, 255) -
-                        dataset.getInt(Tag.SmallestImagePixelValue, 0);
+    // ----------------------- 工具方法 -----------------------
+    /**
+     * 下载并解析DICOM：响应体直接送入 DicomInputStream 边下边解析，
+     * 仅当 Content-Length 超过 dicom.wado-spool-threshold-bytes 时先落盘再解析；
+     * 压缩传输语法的像素在此解码为原始像素。请求的传输语法被PACS拒绝（非临时性错误）时去掉该参数重试，之后的请求不再指定
+     */
+    private Attributes downloadDataset(PacsNode node, String urlStr, String sopUID) throws IOException {
+        ReceivedDataset received;
+        try {
+            received = fetchDataset(node, urlStr, sopUID);
+        } catch (WadoFetcher.NonRetryableException e) {
+            // 404表示实例不存在、响应体无法解析表示数据本身有问题，均与传输语法无关
+            if (!urlStr.contains(TRANSFER_SYNTAX_PARAM) || e.getStatus() == 404
+                    || e instanceof WadoFetcher.UnreadableBodyException) {
+                throw e;
             }
+            if (node.transferSyntaxRejected().compareAndSet(false, true)) {
+                System.err.println("PACS " + node.getAeTitle() + " 不支持请求的传输语法，改为默认传输语法下载: "
+                        + e.getMessage());
+            }
+            received = fetchDataset(node, urlStr.replaceAll(TRANSFER_SYNTAX_PARAM + "[^&]*", ""), sopUID);
+        }
+        DicomDecodeUtils.decompress(received.dataset(), received.transferSyntax());
+        return received.dataset();
+    }
 
-            BufferedImage image = applyWindowLevel(pixels, rows, columns, windowCenter, windowWidth);
-            ImageIO.write(image, "PNG", new File(pngPath));
+    private ReceivedDataset fetchDataset(PacsNode node, String urlStr, String sopUID) throws IOException {
+        PacsCircuitBreaker circuitBreaker = node.getCircuitBreaker();
+        try {
+            ReceivedDataset received = wadoFetcher.fetch(urlStr, (in, contentLength) -> {
+                if (contentLength > config.getWadoSpoolThresholdBytes()) {
+                    return spoolAndReadDataset(in, sopUID);
+                }
+                try (DicomInputStream dis = new DicomInputStream(new BufferedInputStream(in, STREAM_BUFFER_SIZE))) {
+                    return new ReceivedDataset(dis.readDataset(), dis.getTransferSyntax());
+                }
+            });
+            circuitBreaker.recordSuccess();
+            return received;
+        } catch (WadoFetcher.NonRetryableException e) {
+            // PACS有响应（如404）或响应体无法解析，不计入熔断失败；只有连接与传输错误计入
+            throw e;
+        } catch (IOException e) {
+            circuitBreaker.recordFailure();
+            throw e;
         }
     }
 
-    private BufferedImage applyWindowLevel(int[] pixels, int rows, int cols, double center, double width) {
-        BufferedImage image = new BufferedImage(cols, rows, BufferedImage.TYPE_INT_RGB);
-        double min = center - width / 2;
-        double max = center + width / 2;
-        for (int y = 0; y < rows; y++) {
-            for (int x = 0; x < cols; x++) {
-                int pixel = pixels[y * cols + x];
-                double normalized = (pixel - min) / (max - min) * 255;
-                int value = (int) Math.max(0, Math.min(255, normalized));
-                int rgb = (value << 16) | (value << 8) | value;
-                image.setRGB(x, y, rgb);
+    private ReceivedDataset spoolAndReadDataset(InputStream in, String sopUID) throws IOException {
+        Path dicomPath = Paths.get(DICOM_DIR, sopUID + ".dcm");
+        try {
+            Files.copy(in, dicomPath, StandardCopyOption.REPLACE_EXISTING);
+            try (DicomInputStream dis = new DicomInputStream(new BufferedInputStream(
+                    Files.newInputStream(dicomPath), STREAM_BUFFER_SIZE))) {
+                return new ReceivedDataset(dis.readDataset(), dis.getTransferSyntax());
             }
+        } finally {
+            // 删除临时DICOM文件
+            Files.deleteIfExists(dicomPath);
         }
-        return image;
+    }
+
+    private record ReceivedDataset(Attributes dataset, String transferSyntax) {
+    }
+
+    private Path convertDatasetToPng(Attributes dataset) throws IOException {
+        BufferedImage image = DicomImageUtils.toGrayImage(dataset, config.isParallelConversion());
+        return imageCache.put(dataset.getString(Tag.SOPInstanceUID),
+                file -> ImageIO.write(image, "PNG", file.toFile()));
     }
 
     public String buildDownloadUrl(String studyUID, String seriesUID, String sopUID, String studyDate, String patientID) {
-        return String.format(
+        return buildDownloadUrl(registry.getDefaultNode(), studyUID, seriesUID, sopUID, studyDate, patientID);
+    }
+
+    /**
+     * 构建来源PACS（retrieveAETitle，未知时为默认PACS）的WADO下载地址
+     */
+    public String buildDownloadUrl(String retrieveAETitle, String studyUID, String seriesUID, String sopUID,
+                                   String studyDate, String patientID) {
+        return buildDownloadUrl(resolveNode(retrieveAETitle), studyUID, seriesUID, sopUID, studyDate, patientID);
+    }
+
+    private String buildDownloadUrl(PacsNode node, String studyUID, String seriesUID, String sopUID,
+                                    String studyDate, String patientID) {
+        String url = String.format(
                 "http://%s:%d/WADO/ROX1?requesttype=WADO&studyUID=%s&seriesUID=%s" +
                         "&objectUID=%s&modality=PX&StudyDate=%s&PatientID=%s&contentType=application/dicom",
-                config.getPacsIp(),
-                config.getDownloadPort(),
+                node.getEndpoint().getIp(),
+                node.getEndpoint().getDownloadPort(),
                 studyUID,
                 seriesUID,
                 sopUID,
                 studyDate,
                 patientID
         );
-    }
-
-    @Scheduled(cron = "0 0 3 * * ?")
-    public void cleanupOldFiles() {
-        cleanDirectory(DICOM_DIR);
-        cleanDirectory(PNG_DIR);
-    }
-
-    private void cleanDirectory(String dirPath) {
-        File directory = new File(dirPath);
-        if (!directory.exists()) return;
-        File[] files = directory.listFiles();
-        if (files == null) return;
-
-        long cutoff = System.currentTimeMillis() - (CLEANUP_DAYS * 24 * 60 * 60 * 1000L);
-        for (File file : files) {
-            if (file.lastModified() < cutoff) {
-                try { Files.deleteIfExists(file.toPath()); }
-                catch (IOException e) { System.err.println("删除失败: " + file.getAbsolutePath()); }
-            }
+        // 请求无损压缩传输，减少下载字节数
+        String transferSyntax = config.getWadoTransferSyntax();
+        if (transferSyntax != null && !transferSyntax.isEmpty() && !node.transferSyntaxRejected().get()) {
+            url += TRANSFER_SYNTAX_PARAM + transferSyntax;
         }
+        return url;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,12 @@
+package com.example.server.service;
+
+/**
+ * 检测结果不可用（如检测数量不符），该图像无法继续分类与评分
+ */
+public class DetectionException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public DetectionException(String message) {
+        super(message);
+    }
+}
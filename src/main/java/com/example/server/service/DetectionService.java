@@ -3,6 +3,8 @@ package com.example.server.service;
 import ai.onnxruntime.*;
 import ai.onnxruntime.OrtEnvironment;
 import com.example.server.model.DetectionInfo;
+import com.example.server.model.Joint;
+import com.example.server.model.JointDetections;
 import com.example.server.repository.DetectionInfoRepository;
 import org.apache.commons.imaging.Imaging;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -32,30 +34,30 @@ public class DetectionService {
     };
     private static final int NUM_CLASSES = CLASS_NAMES.length;
     // 重命名规则配置
-    private static final Map<String, Map<Boolean, Map<Integer, String>>> RENAME_RULES = new HashMap<>();
+    private static final Map<String, Map<Boolean, Map<Integer, Joint>>> RENAME_RULES = new HashMap<>();
     static {
         // DistalPhalanx
-        Map<Boolean, Map<Integer, String>> distalRules = new HashMap<>();
-        distalRules.put(true, Map.of(0, "DIPFifth", 2, "DIPThird", 4, "DIPFirst"));
-        distalRules.put(false, Map.of(0, "DIPFirst",2, "DIPThird", 4, "DIPFifth"));
+        Map<Boolean, Map<Integer, Joint>> distalRules = new HashMap<>();
+        distalRules.put(true, Map.of(0, Joint.DIPFifth, 2, Joint.DIPThird, 4, Joint.DIPFirst));
+        distalRules.put(false, Map.of(0, Joint.DIPFirst, 2, Joint.DIPThird, 4, Joint.DIPFifth));
         RENAME_RULES.put("DistalPhalanx", distalRules);
 
         // MCP
-        Map<Boolean, Map<Integer, String>> mcpRules = new HashMap<>();
-        mcpRules.put(true, Map.of(0, "MCPFifth", 2, "MCPThird"));
-        mcpRules.put(false, Map.of(1, "MCPThird", 3, "MCPFifth"));
+        Map<Boolean, Map<Integer, Joint>> mcpRules = new HashMap<>();
+        mcpRules.put(true, Map.of(0, Joint.MCPFifth, 2, Joint.MCPThird));
+        mcpRules.put(false, Map.of(1, Joint.MCPThird, 3, Joint.MCPFifth));
         RENAME_RULES.put("MCP", mcpRules);
 
         // MiddlePhalanx
-        Map<Boolean, Map<Integer, String>> middleRules = new HashMap<>();
-        middleRules.put(true, Map.of(0, "MIPFifth", 2, "MIPThird"));
-        middleRules.put(false, Map.of(1, "MIPThird", 3, "MIPFifth"));
+        Map<Boolean, Map<Integer, Joint>> middleRules = new HashMap<>();
+        middleRules.put(true, Map.of(0, Joint.MIPFifth, 2, Joint.MIPThird));
+        middleRules.put(false, Map.of(1, Joint.MIPThird, 3, Joint.MIPFifth));
         RENAME_RULES.put("MiddlePhalanx", middleRules);
 
         // ProximalPhalanx
-        Map<Boolean, Map<Integer, String>> proximalRules = new HashMap<>();
-        proximalRules.put(true, Map.of(0, "PIPFifth", 2, "PIPThird", 4, "PIPFirst"));
-        proximalRules.put(false, Map.of(0, "PIPFirst", 2, "PIPThird", 4, "PIPFifth"));
+        Map<Boolean, Map<Integer, Joint>> proximalRules = new HashMap<>();
+        proximalRules.put(true, Map.of(0, Joint.PIPFifth, 2, Joint.PIPThird, 4, Joint.PIPFirst));
+        proximalRules.put(false, Map.of(0, Joint.PIPFirst, 2, Joint.PIPThird, 4, Joint.PIPFifth));
         RENAME_RULES.put("ProximalPhalanx", proximalRules);
     }
 
@@ -65,10 +67,12 @@ public class DetectionService {
 
     // 数据库表
     private final DetectionInfoRepository detectionRepo;
+    private final HandGateService handGateService;
 
     @Autowired
-    public DetectionService(DetectionInfoRepository detectionRepo) throws Exception {
+    public DetectionService(DetectionInfoRepository detectionRepo, HandGateService handGateService) throws Exception {
         this.detectionRepo = detectionRepo;
+        this.handGateService = handGateService;
         env = OrtEnvironment.getEnvironment();
         try (InputStream modelStream = getClass().getResourceAsStream("/model/detection.onnx")) {
             OrtSession.SessionOptions opts = new OrtSession.SessionOptions();
@@ -79,7 +83,16 @@ public class DetectionService {
         }
     }
 
-    public Map<String, Object> detect(BufferedImage originImage) throws Exception {
+    public JointDetections detect(BufferedImage originImage) throws Exception {
+        return detect(originImage, 1);
+    }
+
+    /**
+     * 在降采样图像上检测，检测框按 coordScale 放大回原图坐标后再打包和保存
+     *
+     * @param coordScale 原图与输入图像的尺寸比（降采样步长），全分辨率时为1
+     */
+    public JointDetections detect(BufferedImage originImage, float coordScale) throws Exception {
         // 读取原始图像
         currentOriginImage = originImage;
 
@@ -101,18 +114,32 @@ public class DetectionService {
             // 后处理
             List<DetectionResult> detections = processPredictions(output, processed);
 
+            // 明显不是手部图像（腕部、前臂等）时直接拒绝，不保存异常截图
+            String gateReason = handGateService.checkDetections(
+                    detections.size(),
+                    (int) detections.stream().map(d -> d.className).distinct().count(),
+                    detections.stream().mapToDouble(d -> d.confidence).average().orElse(0));
+            if (gateReason != null) {
+                throw new HandGateException(gateReason);
+            }
+
             // 验证结果数量
             if (detections.size() != 21) {
                 saveImageWithDetections(originImage, detections);
-                return Collections.singletonMap("error",
-                        "检测到 "+detections.size()+" 个结果，预期应为21个");
+                throw new DetectionException("检测到 " + detections.size() + " 个结果，预期应为21个");
+            }
+
+            if (coordScale != 1) {
+                for (DetectionResult d : detections) {
+                    for (int i = 0; i < d.bbox.length; i++) d.bbox[i] *= coordScale;
+                    for (int i = 0; i < d.center.length; i++) d.center[i] *= coordScale;
+                }
             }
 
             // 打包最终结果
-            Map<String, Object> resultMap = new HashMap<>(packageResults(detections));
+            JointDetections packaged = packageResults(detections);
             Long detectionId = saveDetectionData(detections);
-            resultMap.put("detectionId", detectionId);
-            return resultMap;
+            return new JointDetections(packaged.boxes(), packaged.presentMask(), detectionId);
         }
     }
 
@@ -305,7 +332,7 @@ public class DetectionService {
     }
 
     // 打包最终结果
-    private Map<String, Object> packageResults(List<DetectionResult> detections) {
+    private JointDetections packageResults(List<DetectionResult> detections) {
         boolean isLeftHand = isLeftHand(detections);
         // 遍历所有需要重命名的骨骼类型
         Arrays.asList(
@@ -317,15 +344,17 @@ public class DetectionService {
                 processBoneType(detections, boneType, isLeftHand)
         );
 
-        // 直接处理所有检测结果
-        Map<String, List<Map<String, Object>>> resultMap = detections.stream()
-                .collect(Collectors.groupingBy(
-                        d -> d.className,
-                        LinkedHashMap::new,
-                        Collectors.mapping(this::convertToMap, Collectors.toList())
-                ));
-
-        return Collections.singletonMap("results", resultMap);
+        // 按关节下标写入检测框，同一关节只保留第一个结果
+        float[] boxes = new float[Joint.COUNT * 4];
+        int presentMask = 0;
+        for (DetectionResult d : detections) {
+            if (d.joint == null) continue;
+            int bit = 1 << d.joint.ordinal();
+            if ((presentMask & bit) != 0) continue;
+            System.arraycopy(d.bbox, 0, boxes, d.joint.ordinal() * 4, 4);
+            presentMask |= bit;
+        }
+        return new JointDetections(boxes, presentMask, null);
     }
 
     private void processBoneType(
@@ -342,14 +371,15 @@ public class DetectionService {
         originItems.sort(Comparator.comparingDouble(d -> d.center[0]));
 
         // 3. 获取当前骨骼类型和手性对应的重命名规则
-        Map<Integer, String> renameMap = RENAME_RULES.get(boneType).get(isLeftHand);
+        Map<Integer, Joint> renameMap = RENAME_RULES.get(boneType).get(isLeftHand);
 
         // 4. 收集需要保留的已重命名对象
         List<DetectionResult> renamedItems = new ArrayList<>();
         for (int index = 0; index < originItems.size(); index++) {
             if (renameMap.containsKey(index)) {
                 DetectionResult origin = originItems.get(index);
-                origin.className = renameMap.get(index); // 修改类名
+                origin.joint = renameMap.get(index);
+                origin.className = origin.joint.name(); // 修改类名
                 renamedItems.add(origin);
             }
         }
@@ -361,32 +391,27 @@ public class DetectionService {
         detections.addAll(renamedItems);
     }
 
-    private Map<String, Object> convertToMap(DetectionResult result) {
-        Map<String, Object> map = new HashMap<>();
-        map.put("bbox", result.bbox);
-        return map;
-    }
-
     private Long saveDetectionData(List<DetectionResult> detections) {
         DetectionInfo info = new DetectionInfo();
 
         // 遍历检测结果填充数据
         detections.forEach(d -> {
+            if (d.joint == null) return;
             String coord = String.format("[%.2f,%.2f]", d.center[0], d.center[1]);
-            switch(d.className) {
-                case "MCPFirst":   info.setMCPFirst(coord); break;
-                case "MCPThird":   info.setMCPThird(coord); break;
-                case "MCPFifth":   info.setMCPFifth(coord); break;
-                case "PIPFirst":   info.setPIPFirst(coord); break;
-                case "PIPThird":   info.setPIPThird(coord); break;
-                case "PIPFifth":   info.setPIPFifth(coord); break;
-                case "MIPThird":   info.setMIPThird(coord); break;
-                case "MIPFifth":   info.setMIPFifth(coord); break;
-                case "DIPFirst":   info.setDIPFirst(coord); break;
-                case "DIPThird":   info.setDIPThird(coord); break;
-                case "DIPFifth":   info.setDIPFifth(coord); break;
-                case "Radius":    info.setRadius(coord); break;
-                case "Ulna":      info.setUlna(coord); break;
+            switch (d.joint) {
+                case MCPFirst:   info.setMCPFirst(coord); break;
+                case MCPThird:   info.setMCPThird(coord); break;
+                case MCPFifth:   info.setMCPFifth(coord); break;
+                case PIPFirst:   info.setPIPFirst(coord); break;
+                case PIPThird:   info.setPIPThird(coord); break;
+                case PIPFifth:   info.setPIPFifth(coord); break;
+                case MIPThird:   info.setMIPThird(coord); break;
+                case MIPFifth:   info.setMIPFifth(coord); break;
+                case DIPFirst:   info.setDIPFirst(coord); break;
+                case DIPThird:   info.setDIPThird(coord); break;
+                case DIPFifth:   info.setDIPFifth(coord); break;
+                case Radius:     info.setRadius(coord); break;
+                case Ulna:       info.setUlna(coord); break;
             }
         });
 
@@ -469,16 +494,28 @@ public class DetectionService {
     // 检测结果类
     private static class DetectionResult {
         String className;
+        Joint joint; // 重命名后对应的关节，非评分类别为null
         final float[] center;
         final float[] bbox;
         final float confidence;
 
         DetectionResult(String className, float[] center, float[] bbox, float confidence) {
             this.className = className;
+            this.joint = directJoint(className);
             this.center = center;
             this.bbox = bbox;
             this.confidence = confidence;
         }
+
+        // 无需按位置重命名的类别直接对应关节
+        private static Joint directJoint(String className) {
+            return switch (className) {
+                case "MCPFirst" -> Joint.MCPFirst;
+                case "Radius" -> Joint.Radius;
+                case "Ulna" -> Joint.Ulna;
+                default -> null;
+            };
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,233 @@
+package com.example.server.service;
+
+import com.example.server.config.DICOMConfig;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.net.ApplicationEntity;
+import org.dcm4che3.net.Association;
+import org.dcm4che3.net.Connection;
+import org.dcm4che3.net.Device;
+import org.dcm4che3.net.DimseRSP;
+import org.dcm4che3.net.QueryOption;
+import org.dcm4che3.net.Status;
+import org.dcm4che3.net.pdu.AAssociateRQ;
+import org.dcm4che3.net.pdu.ExtendedNegotiation;
+import org.dcm4che3.net.pdu.PresentationContext;
+
+import java.util.EnumSet;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PACS 查询关联池：保持若干已协商好的关联，借出前按空闲时长用 C-ECHO 校验，
+ * 避免每次 C-FIND 都重新建立关联（每次约 100–300 ms）。
+ * 每个PACS节点一个池，由 {@link PacsEndpointRegistry} 创建并负责保活与关闭
+ */
+public class DicomAssociationPool {
+    private static final int FIND_PC_ID = 1;
+    private static final int ECHO_PC_ID = 3;
+
+    private final DICOMConfig config;
+    private final String calledAeTitle;
+    private final int poolSize;
+    private final ApplicationEntity ae;
+    private final Connection remoteConn;
+
+    // 空闲关联，队头为最近归还的
+    private final LinkedBlockingDeque<PooledAssociation> idle = new LinkedBlockingDeque<>();
+    // 许可数即关联上限：借出占用一个许可，只有在无空闲关联时才新建
+    private final Semaphore permits;
+    private final AtomicInteger openCount = new AtomicInteger();
+
+    public DicomAssociationPool(DICOMConfig config, DICOMConfig.PacsEndpoint endpoint, Device dicomDevice) {
+        this.config = config;
+        this.calledAeTitle = endpoint.getAeTitle();
+        this.poolSize = endpoint.getAssociationPoolSize() != null
+                ? endpoint.getAssociationPoolSize() : config.getAssociationPoolSize();
+        this.ae = dicomDevice.getApplicationEntity(config.getLocalAeTitle());
+        this.permits = new Semaphore(poolSize, true);
+
+        this.remoteConn = new Connection();
+        remoteConn.setHostname(endpoint.getIp());
+        remoteConn.setPort(endpoint.getPort());
+        remoteConn.setConnectTimeout(endpoint.getConnectTimeoutMs() != null
+                ? endpoint.getConnectTimeoutMs() : config.getConnectTimeoutMs());
+    }
+
+    /**
+     * 借出一个可用关联，使用完毕后必须调用 {@link #release(Association, boolean)}
+     */
+    public Association borrow() throws Exception {
+        if (!permits.tryAcquire(config.getBorrowTimeoutMs(), TimeUnit.MILLISECONDS)) {
+            throw new TimeoutException("等待DICOM关联超时: " + calledAeTitle);
+        }
+        try {
+            PooledAssociation pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    return pooled.association;
+                }
+                close(pooled.association);
+            }
+            return open();
+        } catch (Exception e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 归还关联；查询失败或超时时传入 broken=true，关联将被中止而不是放回池中
+     */
+    public void release(Association association, boolean broken) {
+        try {
+            if (broken || !association.isReadyForDataTransfer()) {
+                close(association);
+            } else {
+                idle.offerFirst(new PooledAssociation(association, System.currentTimeMillis()));
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * 借出一个关联执行C-ECHO，用于熔断器半开探测
+     */
+    public boolean echo() {
+        Association association = null;
+        boolean broken = true;
+        try {
+            association = borrow();
+            DimseRSP rsp = association.cecho();
+            rsp.next();
+            broken = false;
+            return rsp.getCommand().getInt(Tag.Status, -1) == Status.Success;
+        } catch (Exception e) {
+            System.err.println(calledAeTitle + " C-ECHO失败: [" + e.getClass().getSimpleName() + "] " + e.getMessage());
+            return false;
+        } finally {
+            if (association != null) {
+                release(association, broken);
+            }
+        }
+    }
+
+    /**
+     * 定期保活：校验空闲关联并预热到配置数量，防止PACS端因空闲超时断开。
+     * 校验期间关联不在空闲队列中，持有一个许可，避免并发借出因队列为空而新建关联使总数超过上限
+     */
+    public void keepAlive() {
+        int size = idle.size();
+        for (int i = 0; i < size && permits.tryAcquire(); i++) {
+            try {
+                PooledAssociation pooled = idle.pollLast();
+                if (pooled == null) break;
+                boolean validated = System.currentTimeMillis() - pooled.idleSince >= config.getValidateAfterIdleMs();
+                if (isUsable(pooled)) {
+                    // 从队尾取出、放回队头，依次校验每个空闲关联；经过C-ECHO校验的重新计算空闲时长
+                    idle.offerFirst(validated
+                            ? new PooledAssociation(pooled.association, System.currentTimeMillis())
+                            : pooled);
+                } else {
+                    close(pooled.association);
+                }
+            } finally {
+                permits.release();
+            }
+        }
+
+        while (openCount.get() < poolSize && permits.tryAcquire()) {
+            try {
+                idle.offerLast(new PooledAssociation(open(), System.currentTimeMillis()));
+            } catch (Exception e) {
+                System.err.println("预热DICOM关联失败 [" + calledAeTitle + "]: " + e.getMessage());
+                break;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    public void shutdown() {
+        PooledAssociation pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            try {
+                pooled.association.release();
+            } catch (Exception e) {
+                pooled.association.abort();
+            }
+            openCount.decrementAndGet();
+        }
+    }
+
+    public int getOpenCount() {
+        return openCount.get();
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    private Association open() throws Exception {
+        AAssociateRQ aarq = new AAssociateRQ();
+        aarq.setCalledAET(calledAeTitle);
+        aarq.setCallingAET(config.getLocalAeTitle());
+        aarq.addPresentationContext(new PresentationContext(
+                FIND_PC_ID, UID.PatientRootQueryRetrieveInformationModelFind, UID.ExplicitVRLittleEndian));
+        aarq.addPresentationContext(new PresentationContext(
+                ECHO_PC_ID, UID.Verification, UID.ImplicitVRLittleEndian));
+        if (config.getSeriesQueryMode() == DICOMConfig.SeriesQueryMode.AUTO) {
+            // 申请关系型查询，PACS接受与否可通过 Association.getQueryOptionsFor 判断
+            aarq.addExtendedNegotiation(new ExtendedNegotiation(
+                    UID.PatientRootQueryRetrieveInformationModelFind,
+                    QueryOption.toExtendedNegotiationInformation(EnumSet.of(QueryOption.RELATIONAL))));
+        }
+
+        Association association = ae.connect(remoteConn, aarq);
+        openCount.incrementAndGet();
+        return association;
+    }
+
+    private boolean isUsable(PooledAssociation pooled) {
+        Association association = pooled.association;
+        if (!association.isReadyForDataTransfer()) {
+            return false;
+        }
+        if (System.currentTimeMillis() - pooled.idleSince < config.getValidateAfterIdleMs()) {
+            return true;
+        }
+        try {
+            DimseRSP rsp = association.cecho();
+            rsp.next();
+            return rsp.getCommand().getInt(Tag.Status, -1) == Status.Success;
+        } catch (Exception e) {
+            System.err.println("DICOM关联校验失败: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void close(Association association) {
+        try {
+            if (association.isReadyForDataTransfer()) {
+                association.release();
+            } else {
+                association.abort();
+            }
+        } catch (Exception e) {
+            association.abort();
+        } finally {
+            openCount.decrementAndGet();
+        }
+    }
+
+    private record PooledAssociation(Association association, long idleSince) {
+    }
+}
@@ -0,0 +1,409 @@
+package com.example.server.service;
+
+import com.example.server.Utils.DicomDecodeUtils;
+import com.example.server.Utils.DicomSeriesUtils;
+import com.example.server.model.IngestJob;
+import com.example.server.model.InferenceContext;
+import com.example.server.model.KnownInstance;
+import com.example.server.model.PatientInfo;
+import com.example.server.repository.InferenceQueueRepository;
+import com.example.server.repository.PatientInfoRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.io.DicomInputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 本地DICOM目录批量导入：遍历目录，多线程只解析到PixelData之前的头信息并筛选Hand系列，
+ * 按批写入 patient_info（每批一个事务），再并行解码像素、转换PNG并提交持久化推理队列。
+ * 队列积压超过 ingest.max-pending 时暂停解码，避免PNG在推理前被本地缓存淘汰。
+ * 监视模式下首次导入完成后按间隔重新扫描目录，只处理新出现且已写完的文件；
+ * 每次扫描作为独立任务提交，等待间隔期间不占用批量任务线程
+ */
+@Service
+public class DicomIngestService {
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    public static final String STATUS_CANCELLED = "CANCELLED";
+    public static final String STATUS_FAILED = "FAILED";
+
+    // 到达时间距今不足该时长的文件可能仍在复制中，留到下次扫描
+    private static final long FILE_SETTLE_MS = 2000;
+
+    private final PatientInfoRepository patientInfoRepository;
+    private final DICOMService dicomService;
+    private final InferenceQueueService inferenceQueueService;
+    private final Executor batchJobExecutor;
+    private final Executor ingestExecutor;
+
+    private final Map<Long, IngestJob> jobs = new ConcurrentHashMap<>();
+    private final Map<Long, AtomicBoolean> cancelFlags = new ConcurrentHashMap<>();
+    private final AtomicLong jobSequence = new AtomicLong();
+    private volatile boolean shuttingDown = false;
+
+    private final Timer headerTimer;
+    private final Timer decodeTimer;
+    private final Counter enqueuedCounter;
+
+    @Value("${ingest.batch-size:200}")
+    private int batchSize;
+
+    @Value("${ingest.max-pending:500}")
+    private long maxPending;
+
+    @Value("${ingest.watch-interval-ms:10000}")
+    private long watchIntervalMs;
+
+    // 允许导入的根目录，未配置时拒绝所有导入请求
+    @Value("${ingest.allowed-root:}")
+    private String allowedRoot;
+
+    @Autowired
+    public DicomIngestService(
+            PatientInfoRepository patientInfoRepository,
+            DICOMService dicomService,
+            InferenceQueueService inferenceQueueService,
+            MeterRegistry meterRegistry,
+            @Qualifier("batchJobExecutor") Executor batchJobExecutor,
+            @Qualifier("ingestExecutor") Executor ingestExecutor
+    ) {
+        this.patientInfoRepository = patientInfoRepository;
+        this.dicomService = dicomService;
+        this.inferenceQueueService = inferenceQueueService;
+        this.batchJobExecutor = batchJobExecutor;
+        this.ingestExecutor = ingestExecutor;
+        this.headerTimer = meterRegistry.timer("ingest.header.parse");
+        this.decodeTimer = meterRegistry.timer("ingest.decode");
+        this.enqueuedCounter = meterRegistry.counter("ingest.images.enqueued");
+    }
+
+    /**
+     * 创建并启动导入任务
+     *
+     * @param watch 首次导入完成后是否继续监视目录，直到取消
+     */
+    public IngestJob startJob(String directory, boolean watch) {
+        if (allowedRoot.isBlank()) {
+            throw new IllegalStateException("未配置 ingest.allowed-root，目录导入已禁用");
+        }
+        if (directory == null || directory.isBlank()) {
+            throw new IllegalArgumentException("导入目录不能为空");
+        }
+        // 解析符号链接后再比较，防止通过链接导入允许范围之外的目录
+        Path root;
+        try {
+            Path allowed = Paths.get(allowedRoot).toRealPath();
+            Path requested = Paths.get(directory).toAbsolutePath().normalize();
+            if (!requested.startsWith(allowed) || !Files.isDirectory(requested)) {
+                throw new IllegalArgumentException("目录不存在或不在允许导入的范围内: " + requested);
+            }
+            root = requested.toRealPath();
+            if (!root.startsWith(allowed)) {
+                throw new IllegalArgumentException("目录不在允许导入的范围内: " + requested);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("无法解析导入目录: " + e.getMessage(), e);
+        }
+
+        IngestJob job = new IngestJob();
+        job.setJobID(jobSequence.incrementAndGet());
+        job.setDirectory(root.toString());
+        job.setWatch(watch);
+        job.setStatus(STATUS_RUNNING);
+        job.setStartTime(LocalDateTime.now());
+        jobs.put(job.getJobID(), job);
+
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        cancelFlags.put(job.getJobID(), cancelled);
+        try {
+            submitScan(job, root, cancelled, Long.MIN_VALUE);
+        } catch (RejectedExecutionException e) {
+            cancelFlags.remove(job.getJobID());
+            job.finish(STATUS_FAILED, "任务线程池已满，提交被拒绝");
+        }
+        return job;
+    }
+
+    public boolean cancelJob(Long jobID) {
+        AtomicBoolean flag = cancelFlags.get(jobID);
+        if (flag == null) {
+            return false;
+        }
+        flag.set(true);
+        return true;
+    }
+
+    public IngestJob getJob(Long jobID) {
+        return jobs.get(jobID);
+    }
+
+    public List<IngestJob> listJobs() {
+        return jobs.values().stream()
+                .sorted(Comparator.comparing(IngestJob::getJobID).reversed())
+                .toList();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shuttingDown = true;
+    }
+
+    private void submitScan(IngestJob job, Path root, AtomicBoolean cancelled, long processedUntil) {
+        batchJobExecutor.execute(() -> runScan(job, root, cancelled, processedUntil));
+    }
+
+    /**
+     * 监视模式：间隔到期后再提交下一次扫描；批量任务线程池已满时推迟到下一个间隔
+     */
+    private void scheduleRescan(IngestJob job, Path root, AtomicBoolean cancelled, long processedUntil) {
+        CompletableFuture.runAsync(() -> {
+            if (isStopped(cancelled)) {
+                complete(job, cancelled);
+                return;
+            }
+            try {
+                submitScan(job, root, cancelled, processedUntil);
+            } catch (RejectedExecutionException e) {
+                scheduleRescan(job, root, cancelled, processedUntil);
+            }
+        }, CompletableFuture.delayedExecutor(watchIntervalMs, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * 扫描一次目录
+     *
+     * @param processedUntil 监视模式按文件到达时间记录进度：上次扫描已处理到达时间不晚于该值的文件，
+     *                       不再为每个文件保存路径（长期运行的监视任务内存不随文件数增长）
+     */
+    private void runScan(IngestJob job, Path root, AtomicBoolean cancelled, long processedUntil) {
+        try {
+            // 到达时间距今不足 FILE_SETTLE_MS 的文件可能仍在复制中，留到下次扫描
+            long cutoff = job.isWatch() ? System.currentTimeMillis() - FILE_SETTLE_MS : Long.MAX_VALUE;
+            List<Path> batch = new ArrayList<>(batchSize);
+            try (Stream<Path> files = Files.walk(root)) {
+                Iterator<Path> iterator = files.filter(Files::isRegularFile).iterator();
+                while (iterator.hasNext() && !isStopped(cancelled)) {
+                    Path file = iterator.next();
+                    long arrived = arrivalTime(file);
+                    if (arrived <= processedUntil || arrived > cutoff) {
+                        continue;
+                    }
+                    batch.add(file);
+                    if (batch.size() >= batchSize) {
+                        ingestBatch(job, batch, cancelled);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+            }
+            if (!batch.isEmpty() && !isStopped(cancelled)) {
+                ingestBatch(job, batch, cancelled);
+            }
+            if (job.isWatch() && !isStopped(cancelled)) {
+                scheduleRescan(job, root, cancelled, cutoff);
+                return;
+            }
+            complete(job, cancelled);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelFlags.remove(job.getJobID());
+            job.finish(STATUS_CANCELLED, "任务被中断");
+        } catch (Exception e) {
+            System.err.println("导入任务 " + job.getJobID() + " 失败: " + e.getMessage());
+            cancelFlags.remove(job.getJobID());
+            job.finish(STATUS_FAILED, e.getMessage());
+        }
+    }
+
+    private void complete(IngestJob job, AtomicBoolean cancelled) {
+        cancelFlags.remove(job.getJobID());
+        job.finish(cancelled.get() || shuttingDown ? STATUS_CANCELLED : STATUS_COMPLETED, null);
+        System.out.println("导入任务 " + job.getJobID() + " 结束: " + summary(job));
+    }
+
+    /**
+     * 导入一批文件：并行解析头信息 → 与数据库比对 → 一次事务写入新记录 → 并行解码并入队
+     */
+    private void ingestBatch(IngestJob job, List<Path> files, AtomicBoolean cancelled) throws InterruptedException {
+        job.getFilesScanned().addAndGet(files.size());
+
+        List<CompletableFuture<ParsedInstance>> parsing = files.stream()
+                .map(file -> CompletableFuture.supplyAsync(() -> readHeader(job, file), ingestExecutor))
+                .toList();
+        List<ParsedInstance> handInstances = new ArrayList<>();
+        Set<String> batchSOPs = new HashSet<>();
+        for (CompletableFuture<ParsedInstance> future : parsing) {
+            ParsedInstance instance = future.join();
+            // 同一批内重复的实例（目录中存在副本）只处理一次
+            if (instance != null && batchSOPs.add(instance.patientInfo().getSOPInstanceUID())) {
+                handInstances.add(instance);
+            }
+        }
+        job.getHandInstances().addAndGet(handInstances.size());
+        if (handInstances.isEmpty()) {
+            return;
+        }
+
+        // 已入库的实例沿用原PID，已推理或已在队列中的跳过
+        Map<String, KnownInstance> known = patientInfoRepository.findKnownInstancesBySOP(new ArrayList<>(batchSOPs))
+                .stream()
+                .collect(Collectors.toMap(KnownInstance::sopInstanceUID, Function.identity(), (a, b) -> a));
+        List<ParsedInstance> toDecode = new ArrayList<>();
+        List<PatientInfo> newRecords = new ArrayList<>();
+        for (ParsedInstance instance : handInstances) {
+            KnownInstance existing = known.get(instance.patientInfo().getSOPInstanceUID());
+            if (existing == null) {
+                newRecords.add(instance.patientInfo());
+                toDecode.add(instance);
+            } else if (existing.needsInference()) {
+                instance.patientInfo().setPID(existing.pid());
+                toDecode.add(instance);
+            } else {
+                job.getSkipped().incrementAndGet();
+            }
+        }
+        job.getInserted().addAndGet(patientInfoRepository.saveAll(newRecords));
+
+        waitForQueueCapacity(cancelled);
+        List<CompletableFuture<Void>> decoding = toDecode.stream()
+                .filter(instance -> instance.patientInfo().getPID() != null)
+                .map(instance -> CompletableFuture.runAsync(() -> decodeAndEnqueue(job, instance), ingestExecutor))
+                .toList();
+        job.getFailed().addAndGet(toDecode.size() - decoding.size());
+        CompletableFuture.allOf(decoding.toArray(new CompletableFuture<?>[0])).join();
+
+        System.out.println("导入任务 " + job.getJobID() + " 进度: " + summary(job));
+    }
+
+    /**
+     * 只读取PixelData之前的头信息；非DICOM文件、非Hand系列或缺少必要字段时返回null
+     */
+    private ParsedInstance readHeader(IngestJob job, Path file) {
+        Timer.Sample sample = Timer.start();
+        Attributes header;
+        try (DicomInputStream dis = new DicomInputStream(file.toFile())) {
+            header = dis.readDatasetUntilPixelData();
+        } catch (IOException e) {
+            // 目录中的非DICOM文件（如说明文档、缩略图）不计为失败
+            return null;
+        } finally {
+            sample.stop(headerTimer);
+        }
+        job.getHeadersParsed().incrementAndGet();
+
+        if (!DicomSeriesUtils.isHandSeries(header)) {
+            return null;
+        }
+        PatientInfo patientInfo = toPatientInfo(header);
+        if (patientInfo.getPatientID() == null || patientInfo.getStudyDate() == null
+                || patientInfo.getSOPInstanceUID() == null) {
+            System.err.println("DICOM文件缺少PatientID、StudyDate或SOPInstanceUID，跳过: " + file);
+            job.getFailed().incrementAndGet();
+            return null;
+        }
+        return new ParsedInstance(file, patientInfo);
+    }
+
+    private void decodeAndEnqueue(IngestJob job, ParsedInstance instance) {
+        PatientInfo patientInfo = instance.patientInfo();
+        Timer.Sample sample = Timer.start();
+        try (DicomInputStream dis = new DicomInputStream(instance.file().toFile())) {
+            Attributes dataset = dis.readDataset();
+            DicomDecodeUtils.decompress(dataset, dis.getTransferSyntax());
+            String pngPath = dicomService.convertToPng(dataset);
+            inferenceQueueService.enqueue(pngPath, InferenceContext.from(patientInfo));
+            job.getEnqueued().incrementAndGet();
+            enqueuedCounter.increment();
+        } catch (Exception e) {
+            System.err.println("导入图像失败 [" + instance.file() + "]: " + e.getMessage());
+            job.getFailed().incrementAndGet();
+        } finally {
+            sample.stop(decodeTimer);
+        }
+    }
+
+    /**
+     * 推理队列积压过多时等待消化，期间可被取消
+     */
+    private void waitForQueueCapacity(AtomicBoolean cancelled) throws InterruptedException {
+        while (!isStopped(cancelled) && pendingJobs() >= maxPending) {
+            Thread.sleep(1000);
+        }
+    }
+
+    private long pendingJobs() {
+        return inferenceQueueService.getQueueStats().getOrDefault(InferenceQueueRepository.STATUS_PENDING, 0L);
+    }
+
+    private boolean isStopped(AtomicBoolean cancelled) {
+        return cancelled.get() || shuttingDown;
+    }
+
+    /**
+     * 文件到达时间：修改时间与创建时间中较晚者。保留原修改时间的复制（如 robocopy、cp -p）
+     * 在Windows上创建时间仍为复制时刻，不会因修改时间较早而被当作已处理
+     */
+    private static long arrivalTime(Path file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return Math.max(attributes.lastModifiedTime().toMillis(), attributes.creationTime().toMillis());
+        } catch (IOException e) {
+            // 读取失败（文件正被移动等）时留到下次扫描
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static String summary(IngestJob job) {
+        return String.format("文件 %d, DICOM %d, Hand %d, 新增 %d, 跳过 %d, 入队 %d, 失败 %d, " +
+                        "%.1f 文件/秒, %.1f 图像/秒",
+                job.getFilesScanned().get(), job.getHeadersParsed().get(), job.getHandInstances().get(),
+                job.getInserted().get(), job.getSkipped().get(), job.getEnqueued().get(), job.getFailed().get(),
+                job.getFilesPerSecond(), job.getImagesPerSecond());
+    }
+
+    private PatientInfo toPatientInfo(Attributes header) {
+        PatientInfo patientInfo = new PatientInfo();
+        patientInfo.setPatientID(header.getString(Tag.PatientID));
+        patientInfo.setBrithDate(DicomSeriesUtils.parseDicomDate(header.getString(Tag.PatientBirthDate)));
+        patientInfo.setSex(header.getString(Tag.PatientSex, "U"));
+        patientInfo.setStudyInstanceUID(header.getString(Tag.StudyInstanceUID));
+        patientInfo.setSeriesInstanceUID(header.getString(Tag.SeriesInstanceUID));
+        patientInfo.setSOPInstanceUID(header.getString(Tag.SOPInstanceUID));
+        patientInfo.setStudyDate(DicomSeriesUtils.parseDicomDate(header.getString(Tag.StudyDate)));
+        patientInfo.setInferenceID(null);
+        return patientInfo;
+    }
+
+    private record ParsedInstance(Path file, PatientInfo patientInfo) {
+    }
+}
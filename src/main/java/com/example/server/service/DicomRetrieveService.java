@@ -0,0 +1,109 @@
+package com.example.server.service;
+
+import com.example.server.config.DICOMConfig;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.net.ApplicationEntity;
+import org.dcm4che3.net.Association;
+import org.dcm4che3.net.Connection;
+import org.dcm4che3.net.Device;
+import org.dcm4che3.net.DimseRSP;
+import org.dcm4che3.net.Status;
+import org.dcm4che3.net.pdu.AAssociateRQ;
+import org.dcm4che3.net.pdu.PresentationContext;
+import org.dcm4che3.net.pdu.RoleSelection;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * DIMSE 检索：通过 C-GET 在一个关联内取回整个序列，
+ * 实例到达一个就交给接收器处理一个，无需逐个发起WADO请求。每个PACS节点一个实例
+ */
+public class DicomRetrieveService {
+    private static final int GET_PC_ID = 1;
+
+    private final DICOMConfig config;
+    private final String calledAeTitle;
+    private final ApplicationEntity ae;
+    private final Connection remoteConn;
+
+    public DicomRetrieveService(DICOMConfig config, DICOMConfig.PacsEndpoint endpoint, Device dicomDevice) {
+        this.config = config;
+        this.calledAeTitle = endpoint.getAeTitle();
+        this.ae = dicomDevice.getApplicationEntity(config.getLocalAeTitle());
+
+        this.remoteConn = new Connection();
+        remoteConn.setHostname(endpoint.getIp());
+        remoteConn.setPort(endpoint.getPort());
+        remoteConn.setConnectTimeout(endpoint.getConnectTimeoutMs() != null
+                ? endpoint.getConnectTimeoutMs() : config.getConnectTimeoutMs());
+        // PACS停止回传子操作时不无限等待：超时后关联被中止，取回以IOException结束并计入熔断
+        remoteConn.setResponseTimeout(config.getRetrieveTimeoutMs());
+        remoteConn.setRetrieveTimeout(config.getRetrieveTimeoutMs());
+        remoteConn.setRetrieveTimeoutTotal(true);
+    }
+
+    /**
+     * C-GET 取回一个序列的全部实例，每收到一个实例回调一次 sink（在DICOM线程中执行）
+     *
+     * @return 成功完成的子操作数
+     */
+    public int retrieveSeries(String studyUID, String seriesUID, Consumer<Attributes> sink) throws Exception {
+        Attributes keys = new Attributes();
+        keys.setString(Tag.QueryRetrieveLevel, VR.CS, "SERIES");
+        keys.setString(Tag.StudyInstanceUID, VR.UI, studyUID);
+        keys.setString(Tag.SeriesInstanceUID, VR.UI, seriesUID);
+
+        Association association = ae.connect(remoteConn, createGetRequest());
+        association.setProperty(RoutingCStoreSCP.SINK_PROPERTY, sink);
+        try {
+            DimseRSP rsp = association.cget(
+                    UID.StudyRootQueryRetrieveInformationModelGet, 0, keys, null);
+            while (rsp.next()) {
+                // 等待最终响应，实例通过 C-STORE 子操作回传
+            }
+
+            Attributes cmd = rsp.getCommand();
+            int status = cmd.getInt(Tag.Status, -1);
+            if (Status.isPending(status)) {
+                throw new IOException("C-GET超时，序列 " + seriesUID + " 未收到最终响应");
+            }
+            int completed = cmd.getInt(Tag.NumberOfCompletedSuboperations, 0);
+            int failed = cmd.getInt(Tag.NumberOfFailedSuboperations, 0);
+            if (status != Status.Success && status != Status.OneOrMoreFailures) {
+                throw new IOException("C-GET失败，状态 " + Integer.toHexString(status));
+            }
+            if (failed > 0) {
+                System.err.printf("C-GET序列 %s: 完成 %d, 失败 %d%n", seriesUID, completed, failed);
+            }
+            return completed;
+        } finally {
+            try {
+                association.release();
+            } catch (IOException e) {
+                association.abort();
+            }
+        }
+    }
+
+    private AAssociateRQ createGetRequest() {
+        AAssociateRQ aarq = new AAssociateRQ();
+        aarq.setCalledAET(calledAeTitle);
+        aarq.setCallingAET(config.getLocalAeTitle());
+        aarq.addPresentationContext(new PresentationContext(
+                GET_PC_ID, UID.StudyRootQueryRetrieveInformationModelGet, UID.ExplicitVRLittleEndian));
+
+        int pcid = GET_PC_ID + 2;
+        // 存储SOP类以SCP角色协商，PACS在同一关联上回传实例
+        for (String cuid : RoutingCStoreSCP.STORAGE_SOP_CLASSES) {
+            aarq.addPresentationContext(new PresentationContext(
+                    pcid, cuid, RoutingCStoreSCP.STORAGE_TRANSFER_SYNTAXES));
+            aarq.addRoleSelection(new RoleSelection(cuid, false, true));
+            pcid += 2;
+        }
+        return aarq;
+    }
+}
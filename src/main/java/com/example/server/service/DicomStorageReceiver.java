@@ -0,0 +1,110 @@
+package com.example.server.service;
+
+import com.example.server.Utils.DicomSeriesUtils;
+import com.example.server.config.DICOMConfig;
+import com.example.server.model.InferenceContext;
+import com.example.server.model.KnownInstance;
+import com.example.server.model.PatientInfo;
+import com.example.server.repository.PatientInfoRepository;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * 存储SCP接收处理：模态或PACS推送的实例到达后，筛选Hand系列，
+ * 保存患者信息并转换PNG，立即提交推理队列，无需等待人工搜索
+ */
+@Service
+public class DicomStorageReceiver {
+    private final DICOMConfig config;
+    private final RoutingCStoreSCP routingCStoreSCP;
+    private final DICOMService dicomService;
+    private final PatientInfoRepository patientInfoRepository;
+    private final InferenceQueueService inferenceQueueService;
+    private final PacsQueryCache queryCache;
+
+    @Autowired
+    public DicomStorageReceiver(
+            DICOMConfig config,
+            RoutingCStoreSCP routingCStoreSCP,
+            DICOMService dicomService,
+            PatientInfoRepository patientInfoRepository,
+            InferenceQueueService inferenceQueueService,
+            PacsQueryCache queryCache
+    ) {
+        this.config = config;
+        this.routingCStoreSCP = routingCStoreSCP;
+        this.dicomService = dicomService;
+        this.patientInfoRepository = patientInfoRepository;
+        this.inferenceQueueService = inferenceQueueService;
+        this.queryCache = queryCache;
+    }
+
+    // 构造完成后再注册回调，避免对象未初始化完成时被DICOM线程调用
+    @PostConstruct
+    public void register() {
+        if (config.isStorageScpEnabled()) {
+            routingCStoreSCP.setDefaultSink(this::onInstanceReceived);
+            System.out.println("存储SCP已启用: " + config.getLocalAeTitle() + ":" + config.getStorageScpPort());
+        }
+    }
+
+    /**
+     * 处理一个推送的实例（在DICOM线程中执行，处理完成后才返回C-STORE响应）
+     */
+    void onInstanceReceived(Attributes dataset) {
+        String sopUID = dataset.getString(Tag.SOPInstanceUID);
+        // 非Hand系列直接确认接收，不做处理
+        if (!DicomSeriesUtils.isHandSeries(dataset)) {
+            return;
+        }
+
+        // 已推理、已在队列中或已被质量筛选排除的实例不再转换与提交；已入库但需要推理的沿用原记录
+        List<KnownInstance> known = patientInfoRepository.findKnownInstancesBySOP(List.of(sopUID));
+        KnownInstance existing = known.isEmpty() ? null : known.getFirst();
+        if (existing != null && !existing.needsInference()) {
+            System.out.println("实例已处理或已在队列中，忽略重复推送: " + sopUID);
+            return;
+        }
+
+        String pngPath = dicomService.convertToPng(dataset);
+        PatientInfo patientInfo = existing != null
+                ? patientInfoRepository.findBySOPInstanceUID(sopUID)
+                : savePatientInfo(dataset);
+        if (patientInfo == null) {
+            return;
+        }
+        inferenceQueueService.enqueue(pngPath, InferenceContext.from(patientInfo));
+        System.out.println("接收推送图像并提交推理: " + patientInfo.getPatientID() + " / " + sopUID);
+    }
+
+    private PatientInfo savePatientInfo(Attributes dataset) {
+        PatientInfo patientInfo = new PatientInfo();
+        patientInfo.setPatientID(dataset.getString(Tag.PatientID));
+        patientInfo.setBrithDate(DicomSeriesUtils.parseDicomDate(dataset.getString(Tag.PatientBirthDate)));
+        patientInfo.setSex(dataset.getString(Tag.PatientSex, "U"));
+        patientInfo.setStudyInstanceUID(dataset.getString(Tag.StudyInstanceUID));
+        patientInfo.setSeriesInstanceUID(dataset.getString(Tag.SeriesInstanceUID));
+        patientInfo.setSOPInstanceUID(dataset.getString(Tag.SOPInstanceUID));
+        patientInfo.setStudyDate(DicomSeriesUtils.parseDicomDate(dataset.getString(Tag.StudyDate)));
+        patientInfo.setInferenceID(null);
+
+        if (patientInfo.getPatientID() == null || patientInfo.getStudyDate() == null) {
+            System.err.println("推送实例缺少PatientID或StudyDate，跳过: " + patientInfo.getSOPInstanceUID());
+            return null;
+        }
+        try {
+            patientInfo.setPID(patientInfoRepository.save(patientInfo));
+            // 新检查已到达，缓存的检查列表不再完整
+            queryCache.invalidatePatient(patientInfo.getPatientID());
+            return patientInfo;
+        } catch (Exception e) {
+            System.err.println("保存患者信息失败: " + e.getMessage());
+            return null;
+        }
+    }
+}
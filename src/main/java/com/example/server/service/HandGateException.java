@@ -0,0 +1,12 @@
+package com.example.server.service;
+
+/**
+ * 门控判定为非手部X光片，重试同一图像也不会通过
+ */
+public class HandGateException extends DetectionException {
+    private static final long serialVersionUID = 1L;
+
+    public HandGateException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.server.service;
+
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OnnxValue;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.FloatBuffer;
+import java.util.Collections;
+
+/**
+ * 手部X光片门控：在完整检测与分类之前拦截明显不是手部正位片的图像（腕部、前臂、定位片、空白图像），
+ * 避免SeriesDescription标注错误的图像消耗一次640x640检测并以"预期应为21个"失败。
+ * <p>
+ * 检测前：在128x128缩略图上运行门控模型（/model/gate.onnx，未打包时改用灰度与长宽比启发式规则）；
+ * 检测后：检测框数量或类别覆盖明显不足、结果已不可用时判定为非手部图像，不保存检测异常截图。
+ * 拒绝是永久的（不重试、之后的检索也跳过），因此检测后检查只拦截必然失败的结果
+ */
+@Service
+public class HandGateService {
+    public static final int THUMBNAIL_SIZE = 128;
+    private static final int CLASS_COUNT = 7;
+
+    private final MeterRegistry meterRegistry;
+    private final OrtEnvironment env;
+    private final OrtSession session;
+
+    @Value("${gate.enabled:true}")
+    private boolean enabled;
+
+    // 门控模型输出的手部概率低于该值时拒绝
+    @Value("${gate.threshold:0.5}")
+    private double threshold;
+
+    // 启发式规则：长边/短边超过该值视为前臂或全长片
+    @Value("${gate.max-aspect-ratio:2.5}")
+    private double maxAspectRatio;
+
+    // 检测后检查：检测框少于该数量（完整手部为21个）时拒绝
+    @Value("${gate.min-detections:10}")
+    private int minDetections;
+
+    // 检测后检查：检测框平均置信度低于该值时拒绝，默认0即关闭。
+    // 检测本身保留置信度 0.5 以上的框，21个关节齐全但置信度偏低的真实手部图像不应被永久拒绝
+    @Value("${gate.min-mean-confidence:0}")
+    private double minMeanConfidence;
+
+    @Autowired
+    public HandGateService(MeterRegistry meterRegistry) throws OrtException {
+        this.meterRegistry = meterRegistry;
+        this.env = OrtEnvironment.getEnvironment();
+        OrtSession loaded = null;
+        try (InputStream modelStream = getClass().getResourceAsStream("/model/gate.onnx")) {
+            if (modelStream != null) {
+                OrtSession.SessionOptions opts = new OrtSession.SessionOptions();
+                opts.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
+                opts.setIntraOpNumThreads(1);
+                loaded = env.createSession(modelStream.readAllBytes(), opts);
+            }
+        } catch (IOException e) {
+            System.err.println("读取门控模型失败，改用启发式规则: " + e.getMessage());
+        }
+        this.session = loaded;
+        System.out.println(session != null ? "已加载手部门控模型" : "未找到门控模型，使用启发式规则");
+    }
+
+    /**
+     * 检测前门控，通过时返回null，否则返回拒绝原因
+     */
+    public String checkImage(BufferedImage image) {
+        if (!enabled) {
+            return null;
+        }
+        Thumbnail thumbnail = thumbnail(image);
+        String reason = isBlank(thumbnail) ? "空白图像" : null;
+        if (reason == null) {
+            reason = session != null ? checkWithModel(thumbnail.image()) : checkWithHeuristics(image);
+        }
+        if (reason != null) {
+            meterRegistry.counter("gate.rejected", "stage", "thumbnail").increment();
+        }
+        return reason;
+    }
+
+    /**
+     * 检测后检查（检测模型的首轮输出），通过时返回null，否则返回拒绝原因
+     *
+     * @param detections     NMS后的检测框数量
+     * @param classesFound   出现的类别数（共7类）
+     * @param meanConfidence 检测框平均置信度
+     */
+    public String checkDetections(int detections, int classesFound, double meanConfidence) {
+        if (!enabled) {
+            return null;
+        }
+        String reason = null;
+        if (detections < minDetections) {
+            reason = "仅检测到 " + detections + " 个关节";
+        } else if (classesFound < CLASS_COUNT - 2) {
+            reason = "关节类别不完整（" + classesFound + "/" + CLASS_COUNT + "）";
+        } else if (minMeanConfidence > 0 && meanConfidence < minMeanConfidence) {
+            reason = String.format("检测平均置信度过低（%.2f）", meanConfidence);
+        }
+        if (reason != null) {
+            meterRegistry.counter("gate.rejected", "stage", "detection").increment();
+        }
+        return reason;
+    }
+
+    /**
+     * 门控模型：输入 [1, 3, 128, 128] RGB（0~1），输出手部概率（单值），或二分类 [非手部, 手部]
+     */
+    private String checkWithModel(BufferedImage thumbnail) {
+        float[] input = new float[3 * THUMBNAIL_SIZE * THUMBNAIL_SIZE];
+        int plane = THUMBNAIL_SIZE * THUMBNAIL_SIZE;
+        for (int y = 0; y < THUMBNAIL_SIZE; y++) {
+            for (int x = 0; x < THUMBNAIL_SIZE; x++) {
+                float value = thumbnail.getRaster().getSample(x, y, 0) / 255.0f;
+                int offset = y * THUMBNAIL_SIZE + x;
+                input[offset] = value;
+                input[plane + offset] = value;
+                input[2 * plane + offset] = value;
+            }
+        }
+
+        String inputName = session.getInputNames().iterator().next();
+        try (OnnxTensor tensor = OnnxTensor.createTensor(env, FloatBuffer.wrap(input),
+                new long[]{1, 3, THUMBNAIL_SIZE, THUMBNAIL_SIZE});
+             OrtSession.Result result = session.run(Collections.singletonMap(inputName, tensor))) {
+            OnnxValue output = result.get(0);
+            float[] scores = ((float[][]) output.getValue())[0];
+            double probability = scores.length == 1 ? sigmoidIfLogit(scores[0]) : softmax(scores)[1];
+            return probability < threshold ? String.format("门控模型判定非手部（p=%.2f）", probability) : null;
+        } catch (OrtException e) {
+            // 门控失败不阻断推理
+            System.err.println("门控模型推理失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private String checkWithHeuristics(BufferedImage image) {
+        double aspect = (double) Math.max(image.getWidth(), image.getHeight())
+                / Math.max(1, Math.min(image.getWidth(), image.getHeight()));
+        if (aspect > maxAspectRatio) {
+            return String.format("长宽比 %.1f 不符合手部正位片", aspect);
+        }
+        return null;
+    }
+
+    /**
+     * 缩略图内容区域（不含填充）灰度标准差过小，即无解剖结构
+     */
+    private static boolean isBlank(Thumbnail thumbnail) {
+        long sum = 0;
+        long sumSquares = 0;
+        int pixels = thumbnail.width() * thumbnail.height();
+        for (int y = thumbnail.y(); y < thumbnail.y() + thumbnail.height(); y++) {
+            for (int x = thumbnail.x(); x < thumbnail.x() + thumbnail.width(); x++) {
+                int value = thumbnail.image().getRaster().getSample(x, y, 0);
+                sum += value;
+                sumSquares += (long) value * value;
+            }
+        }
+        double mean = (double) sum / pixels;
+        return (double) sumSquares / pixels - mean * mean < 25;
+    }
+
+    /**
+     * 保持宽高比缩放到128x128，空白处以黑色填充（与检测预处理一致）。
+     * 使用RGB缩略图并读取R通道：绘制到 TYPE_BYTE_GRAY 会经过线性灰度色彩转换导致偏暗
+     */
+    private static Thumbnail thumbnail(BufferedImage image) {
+        float scale = Math.min((float) THUMBNAIL_SIZE / image.getWidth(), (float) THUMBNAIL_SIZE / image.getHeight());
+        int width = Math.max(1, Math.round(image.getWidth() * scale));
+        int height = Math.max(1, Math.round(image.getHeight() * scale));
+        BufferedImage thumbnail = new BufferedImage(THUMBNAIL_SIZE, THUMBNAIL_SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = thumbnail.createGraphics();
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        int x = (THUMBNAIL_SIZE - width) / 2;
+        int y = (THUMBNAIL_SIZE - height) / 2;
+        g.drawImage(image, x, y, width, height, null);
+        g.dispose();
+        return new Thumbnail(thumbnail, x, y, width, height);
+    }
+
+    /**
+     * 缩略图及其中图像内容所在的区域
+     */
+    private record Thumbnail(BufferedImage image, int x, int y, int width, int height) {
+    }
+
+    private static double sigmoidIfLogit(float value) {
+        return value >= 0 && value <= 1 ? value : 1 / (1 + Math.exp(-value));
+    }
+
+    private static double[] softmax(float[] logits) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (float logit : logits) {
+            max = Math.max(max, logit);
+        }
+        double[] probabilities = new double[logits.length];
+        double sum = 0;
+        for (int i = 0; i < logits.length; i++) {
+            probabilities[i] = Math.exp(logits[i] - max);
+            sum += probabilities[i];
+        }
+        for (int i = 0; i < logits.length; i++) {
+            probabilities[i] /= sum;
+        }
+        return probabilities;
+    }
+
+    @PreDestroy
+    public void close() throws OrtException {
+        if (session != null) {
+            session.close();
+        }
+    }
+}
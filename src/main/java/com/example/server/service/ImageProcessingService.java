@@ -1,36 +1,63 @@
 package com.example.server.service;
 
+import com.example.server.Utils.DicomImageUtils;
+import com.example.server.Utils.ImageReadUtils;
+import com.example.server.model.InferenceContext;
 import com.example.server.model.InferenceInfo;
-import com.example.server.model.PatientInfo;
+import com.example.server.model.JointDetections;
+import com.example.server.model.JointGrades;
 import com.example.server.repository.InferenceInfoRepository;
 import com.example.server.repository.PatientInfoRepository;
-import org.apache.commons.imaging.Imaging;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 @Service
 public class ImageProcessingService {
 
+    private final HandGateService handGateService;
     private final DetectionService detectionService;
     private final ClassifyService classifyService;
     private final BoneAgeService boneAgeService;
     private final PatientInfoRepository patientInfoRepository;
     private final InferenceInfoRepository inferenceInfoRepository;
 
+    // 降采样解码时检测输入的最小长边
+    private static final int DETECTION_MIN_LONG_SIDE = 1280;
+
+    @Value("${inference.model-version:v1}")
+    private String modelVersion;
+
+    @Value("${inference.subsampled-decode:true}")
+    private boolean subsampledDecode;
+
+    /**
+     * 单张图像的推理结果
+     */
+    public enum Outcome {
+        DONE,       // 推理结果已写入
+        FAILED,     // 推理失败，可重试
+        REJECTED    // 门控判定为非手部图像，已标记 QualityFlag，不应重试
+    }
+
     @Autowired
     public ImageProcessingService(
+            HandGateService handGateService,
             DetectionService detectionService,
             ClassifyService classifyService,
             BoneAgeService boneAgeService,
             PatientInfoRepository patientInfoRepository,
             InferenceInfoRepository inferenceInfoRepository
     ) {
+        this.handGateService = handGateService;
         this.detectionService = detectionService;
         this.classifyService = classifyService;
         this.boneAgeService = boneAgeService;
@@ -39,52 +66,129 @@ public class ImageProcessingService {
     }
 
     @Async("imageProcessingExecutor")
-    public CompletableFuture<Void> processImageAsync(String pngPath, boolean isMale) {
-        try {
-            BufferedImage originImage = Imaging.getBufferedImage(new File(pngPath));
+    public CompletableFuture<Boolean> processImageAsync(String pngPath, InferenceContext context) {
+        return CompletableFuture.completedFuture(processImage(pngPath, context));
+    }
+
+    /**
+     * 读取PNG；8位灰度图按原始灰度值展开为RGB，保持模型输入与原先RGB PNG一致
+     * （Commons Imaging 会把灰度PNG转换到线性灰度空间，损失暗部精度，这里改用ImageIO）
+     */
+    private BufferedImage readImage(File file, int subsampling, Rectangle region) throws IOException {
+        return DicomImageUtils.toRgb(ImageReadUtils.read(file, subsampling, region));
+    }
+
+    /**
+     * 检测用降采样步长：降采样后长边不小于检测输入尺寸的两倍，
+     * 保证缩放到640时仍有足够的源像素参与平滑
+     */
+    private int detectionSubsampling(Dimension size) {
+        if (!subsampledDecode) {
+            return 1;
+        }
+        return Math.max(1, Math.max(size.width, size.height) / DETECTION_MIN_LONG_SIDE);
+    }
+
+    /**
+     * 分类用区域：所有关节框的外接矩形（向外取整并限制在图像内）
+     */
+    private Rectangle jointRegion(JointDetections detections, Dimension size) {
+        float[] union = detections.unionBounds();
+        if (union == null) {
+            return new Rectangle(0, 0, size.width, size.height);
+        }
+        int x1 = Math.max(0, (int) Math.floor(union[0]));
+        int y1 = Math.max(0, (int) Math.floor(union[1]));
+        int x2 = Math.min(size.width, (int) Math.ceil(union[2]));
+        int y2 = Math.min(size.height, (int) Math.ceil(union[3]));
+        return new Rectangle(x1, y1, Math.max(1, x2 - x1), Math.max(1, y2 - y1));
+    }
+
+    /**
+     * 同步执行完整推理流程，返回是否成功写入推理结果
+     */
+    public boolean processImage(String pngPath, InferenceContext context) {
+        return process(pngPath, context) == Outcome.DONE;
+    }
 
-            // 1. 调用检测服务
-            Map<String, Object> detectionResult = detectionService.detect(originImage);
-            if (detectionResult.containsKey("error")) {
-                System.err.println("检测失败: " + detectionResult.get("error"));
-                return CompletableFuture.completedFuture(null);
+    /**
+     * 同步执行完整推理流程：门控 → 检测 → 分类 → 骨龄计算
+     */
+    public Outcome process(String pngPath, InferenceContext context) {
+        boolean isMale = context.isMale();
+        try {
+            File file = new File(pngPath);
+            Dimension size = ImageReadUtils.readSize(file);
+            int subsampling = detectionSubsampling(size);
+
+            // 0. 门控：在降采样图像的缩略图上拦截明显不是手部的图像，跳过完整检测
+            BufferedImage detectionImage = readImage(file, subsampling, null);
+            String gateReason = handGateService.checkImage(detectionImage);
+            if (gateReason != null) {
+                return reject(pngPath, context, gateReason);
             }
 
-            // 2. 调用分类服务
-            Map<String, Integer> classifyResult = classifyService.classify(detectionResult, originImage);
+            // 1. 调用检测服务（大图按步长降采样解码，检测框放大回原图坐标）
+            JointDetections detectionResult = detectionService.detect(detectionImage, subsampling);
+
+            // 2. 调用分类服务（降采样时只按全分辨率解码关节所在区域）
+            JointGrades classifyResult;
+            if (subsampling > 1) {
+                detectionImage = null; // 降采样图像已不再需要，尽早释放
+                Rectangle region = jointRegion(detectionResult, size);
+                BufferedImage regionImage = readImage(file, 1, region);
+                classifyResult = classifyService.classify(detectionResult, regionImage, region.x, region.y);
+            } else {
+                classifyResult = classifyService.classify(detectionResult, detectionImage);
+            }
 
             // 3. 调用骨龄计算工具
             Map<String, Object> rusResult = boneAgeService.processRusChn(isMale, classifyResult);
             Map<String, Object> tw3Result = boneAgeService.processTw3CRus(isMale, classifyResult);
 
             // 4. 保存推理信息
-            saveInferenceInfo(detectionResult, rusResult, tw3Result, pngPath);
-
-            System.out.println("成功处理图像: " + pngPath);
-            return CompletableFuture.completedFuture(null);
+            boolean saved = saveInferenceInfo(detectionResult, rusResult, tw3Result, context);
+            if (saved) {
+                System.out.println("成功处理图像: " + pngPath);
+            }
+            return saved ? Outcome.DONE : Outcome.FAILED;
+        } catch (HandGateException e) {
+            return reject(pngPath, context, e.getMessage());
+        } catch (DetectionException e) {
+            System.err.println("检测失败: " + e.getMessage());
+            return Outcome.FAILED;
         } catch (Exception e) {
             System.err.println("处理图像时发生异常: " + e.getMessage());
             e.printStackTrace();
-            return CompletableFuture.completedFuture(null);
+            return Outcome.FAILED;
         }
     }
 
-    private void saveInferenceInfo(
-            Map<String, Object> detectionResult,
+    /**
+     * 标记门控拒绝的实例，之后的检索不再下载与推理
+     */
+    private Outcome reject(String pngPath, InferenceContext context, String reason) {
+        System.err.println("门控拒绝 [" + reason + "]: " + pngPath);
+        if (context.pid() != null) {
+            patientInfoRepository.updateQualityFlag(context.pid(), ImageQualityService.FLAG_GATE_REJECTED);
+        }
+        return Outcome.REJECTED;
+    }
+
+    private boolean saveInferenceInfo(
+            JointDetections detectionResult,
             Map<String, Object> rusResult,
             Map<String, Object> tw3Result,
-            String pngPath
+            InferenceContext context
     ) {
         InferenceInfo inferenceInfo = new InferenceInfo();
 
-        // 安全处理 DetectionID
-        Object detectionIdObj = detectionResult.get("detectionId");
-        if (detectionIdObj instanceof Number) {
-            inferenceInfo.setDetectionID(((Number) detectionIdObj).longValue());
-        } else {
-            System.err.println("检测ID类型错误: " + detectionIdObj);
-            return;
+        // 检测数据保存失败时 detectionId 为空
+        if (detectionResult.detectionId() == null) {
+            System.err.println("检测ID为空，检测数据未保存");
+            return false;
         }
+        inferenceInfo.setDetectionID(detectionResult.detectionId());
 
         // 安全处理 RCResultID
         Object rcResultIdObj = rusResult.get("rcResultId");
@@ -92,7 +196,7 @@ public class ImageProcessingService {
             inferenceInfo.setRCResultID(((Number) rcResultIdObj).longValue());
         } else {
             System.err.println("RUS结果ID类型错误: " + rcResultIdObj);
-            return;
+            return false;
         }
 
         // 安全处理 TCRResultID
@@ -101,25 +205,21 @@ public class ImageProcessingService {
             inferenceInfo.setTCRResultID(((Number) tcrResultIdObj).longValue());
         } else {
             System.err.println("TW3结果ID类型错误: " + tcrResultIdObj);
-            return;
+            return false;
         }
 
         inferenceInfo.setTCCResultID(null);
+        inferenceInfo.setModelVersion(modelVersion);
 
         // 保存推理信息并获取InferenceID
         Long inferenceID = inferenceInfoRepository.save(inferenceInfo);
 
         // 更新患者信息的InferenceID
-        String sopUID = extractSopUIDFromPath(pngPath);
-        PatientInfo patientInfo = patientInfoRepository.findBySOPInstanceUID(sopUID);
-        if (patientInfo != null && patientInfo.getPID() != null) {
-            patientInfoRepository.updateInferenceID(patientInfo.getPID(), inferenceID);
-        } else {
-            System.err.println("未找到SOPInstanceUID为 " + sopUID + " 的患者记录");
+        if (context.pid() == null) {
+            System.err.println("推理上下文缺少PID，SOPInstanceUID: " + context.sopInstanceUID());
+            return false;
         }
+        patientInfoRepository.updateInferenceID(context.pid(), inferenceID);
+        return true;
     }
-
-    private String extractSopUIDFromPath(String pngPath) {
-        return new File(pngPath).getName().replace(".png", "");
-    }
-}
\ No newline at end of file
+}
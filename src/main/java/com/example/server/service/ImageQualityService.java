@@ -0,0 +1,262 @@
+package com.example.server.service;
+
+import com.example.server.Utils.ImageReadUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 推理前质量筛选：同一序列有多张待推理图像时，按窗宽窗位后的灰度统计（曝光、对比度、过曝比例）、
+ * 感知哈希（dHash）与 ImageType 对图像评分，只把 max-per-series 张送入推理，
+ * 避免废片与重复图像各自消耗一次完整的检测与分类。
+ * 图像逐张到达即评分，序列内全部到达后按评分从高到低判定（不同序列互不等待）；
+ * 未选中（NOT_SELECTED）的图像按评分保留，选中的图像最终推理失败时由推理队列按评分补选
+ */
+@Service
+public class ImageQualityService {
+    public static final String FLAG_LOW_QUALITY = "LOW_QUALITY";
+    public static final String FLAG_DUPLICATE = "DUPLICATE";
+    public static final String FLAG_NOT_SELECTED = "NOT_SELECTED";
+    // 推理时由 HandGateService 判定为非手部图像
+    public static final String FLAG_GATE_REJECTED = "GATE_REJECTED";
+
+    // 统计在约 256 像素的降采样图像上进行
+    private static final int SAMPLE_SIZE = 256;
+    private static final int BRIGHT_LEVEL = 250;
+    private static final double MIN_MEAN = 8;
+    private static final double MAX_MEAN = 240;
+    private static final double MIN_CONTRAST = 12;
+    private static final double MAX_BRIGHT_RATIO = 0.4;
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${quality.enabled:true}")
+    private boolean enabled;
+
+    @Value("${quality.max-per-series:1}")
+    private int maxPerSeries;
+
+    // dHash 汉明距离不超过该值视为重复图像（64位哈希）
+    @Value("${quality.duplicate-distance:6}")
+    private int duplicateDistance;
+
+    @Autowired
+    public ImageQualityService(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 待筛选的图像
+     *
+     * @param imageType C-FIND返回的 ImageType（如 ORIGINAL\PRIMARY），未知时为null
+     */
+    public record Candidate(String sopUID, String pngPath, String imageType) {
+    }
+
+    /**
+     * 筛选结果，flag 为null表示选中送入推理，否则为未选中的原因
+     */
+    public record Selection(Candidate candidate, double score, String flag) {
+        public boolean selected() {
+            return flag == null;
+        }
+    }
+
+    /**
+     * @param hash 感知哈希，图像读取失败时为null（不参与重复判断）
+     */
+    private record Assessment(Candidate candidate, double score, boolean acceptable, Long hash) {
+    }
+
+    /**
+     * 为一个序列开始筛选
+     */
+    public SeriesFilter newSeriesFilter() {
+        return new SeriesFilter();
+    }
+
+    /**
+     * 单个序列的筛选状态，可由多个下载线程同时提交图像
+     */
+    public final class SeriesFilter {
+        private final List<Assessment> assessments = new ArrayList<>();
+
+        private SeriesFilter() {
+        }
+
+        /**
+         * 评分并暂存，序列结束时统一判定
+         */
+        public void offer(Candidate candidate) {
+            Assessment assessment;
+            if (enabled) {
+                Timer.Sample sample = Timer.start(meterRegistry);
+                assessment = assess(candidate);
+                sample.stop(meterRegistry.timer("quality.assess"));
+            } else {
+                assessment = new Assessment(candidate, 0, true, null);
+            }
+            synchronized (this) {
+                assessments.add(assessment);
+            }
+        }
+
+        /**
+         * 序列结束：按评分从高到低判定，合格、与已选中图像不重复且未达到 max-per-series 时选中，
+         * 否则标记为 LOW_QUALITY / DUPLICATE / NOT_SELECTED；没有任何图像被选中时补选得分最高的一张
+         * （保证每个序列至少推理一次）。筛选关闭时全部选中
+         *
+         * @return 每张已提交图像的筛选结果，按评分从高到低
+         */
+        public synchronized List<Selection> finish() {
+            List<Selection> selections = new ArrayList<>(assessments.size());
+            if (!enabled) {
+                for (Assessment assessment : assessments) {
+                    selections.add(new Selection(assessment.candidate(), 0, null));
+                }
+                return selections;
+            }
+
+            List<Assessment> ranked = new ArrayList<>(assessments);
+            ranked.sort(Comparator.comparingDouble(Assessment::score).reversed());
+            List<Long> keptHashes = new ArrayList<>();
+            int kept = 0;
+            for (Assessment assessment : ranked) {
+                String flag;
+                if (!assessment.acceptable()) {
+                    flag = FLAG_LOW_QUALITY;
+                } else if (isDuplicate(assessment.hash(), keptHashes)) {
+                    flag = FLAG_DUPLICATE;
+                } else if (kept >= maxPerSeries) {
+                    flag = FLAG_NOT_SELECTED;
+                } else {
+                    flag = null;
+                    kept++;
+                    if (assessment.hash() != null) {
+                        keptHashes.add(assessment.hash());
+                    }
+                }
+                selections.add(new Selection(assessment.candidate(), assessment.score(), flag));
+                meterRegistry.counter("quality.images", "result", flag == null ? "SELECTED" : flag).increment();
+            }
+
+            if (kept == 0 && !selections.isEmpty()) {
+                Selection best = selections.getFirst();
+                selections.set(0, new Selection(best.candidate(), best.score(), null));
+                meterRegistry.counter("quality.images", "result", "FALLBACK").increment();
+            }
+            return selections;
+        }
+    }
+
+    private boolean isDuplicate(Long hash, List<Long> keptHashes) {
+        if (hash == null) {
+            return false;
+        }
+        for (long kept : keptHashes) {
+            if (Long.bitCount(hash ^ kept) <= duplicateDistance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 评分：对比度（灰度标准差）按过曝比例折减；派生/二次采集图像排在原始图像之后。
+     * 读取失败的图像分数最低但仍可被选中（由后续推理给出明确错误）
+     */
+    private Assessment assess(Candidate candidate) {
+        String imageType = candidate.imageType() != null ? candidate.imageType().toUpperCase() : "";
+        if (imageType.contains("LOCALIZER")) {
+            return new Assessment(candidate, 0, false, null);
+        }
+
+        BufferedImage image;
+        try {
+            File file = new File(candidate.pngPath());
+            Dimension size = ImageReadUtils.readSize(file);
+            int subsampling = Math.max(1, Math.max(size.width, size.height) / SAMPLE_SIZE);
+            image = ImageReadUtils.read(file, subsampling, null);
+        } catch (IOException e) {
+            System.err.println("质量评估读取图像失败 [SOP_UID=" + candidate.sopUID() + "]: " + e.getMessage());
+            return new Assessment(candidate, -1, true, null);
+        }
+
+        Raster raster = image.getRaster();
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        long sum = 0;
+        long sumSquares = 0;
+        long bright = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int value = raster.getSample(x, y, 0);
+                sum += value;
+                sumSquares += (long) value * value;
+                if (value >= BRIGHT_LEVEL) {
+                    bright++;
+                }
+            }
+        }
+        long pixels = (long) width * height;
+        double mean = (double) sum / pixels;
+        double contrast = Math.sqrt(Math.max(0, (double) sumSquares / pixels - mean * mean));
+        double brightRatio = (double) bright / pixels;
+
+        boolean acceptable = mean >= MIN_MEAN && mean <= MAX_MEAN
+                && contrast >= MIN_CONTRAST && brightRatio <= MAX_BRIGHT_RATIO;
+        double score = contrast * (1 - brightRatio);
+        if (imageType.contains("DERIVED") || imageType.contains("SECONDARY")) {
+            score *= 0.5;
+        }
+        return new Assessment(candidate, score, acceptable, differenceHash(raster));
+    }
+
+    /**
+     * 差值哈希：将图像按区域平均缩小到 9x8，每行相邻像素比较得到 64 位
+     */
+    private static long differenceHash(Raster raster) {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        double[][] cells = new double[8][9];
+        for (int row = 0; row < 8; row++) {
+            int y0 = row * height / 8;
+            int y1 = Math.max(y0 + 1, (row + 1) * height / 8);
+            for (int col = 0; col < 9; col++) {
+                int x0 = col * width / 9;
+                int x1 = Math.max(x0 + 1, (col + 1) * width / 9);
+                long sum = 0;
+                int count = 0;
+                for (int y = y0; y < Math.min(y1, height); y++) {
+                    for (int x = x0; x < Math.min(x1, width); x++) {
+                        sum += raster.getSample(x, y, 0);
+                        count++;
+                    }
+                }
+                cells[row][col] = count > 0 ? (double) sum / count : 0;
+            }
+        }
+
+        long hash = 0;
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                hash <<= 1;
+                if (cells[row][col] < cells[row][col + 1]) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.server.service;
+
+import com.example.server.model.InferenceContext;
+import com.example.server.model.InferenceQueueJob;
+import com.example.server.model.PatientInfo;
+import com.example.server.repository.InferenceQueueRepository;
+import com.example.server.repository.PatientInfoRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 持久化推理队列：任务写入 SQLite 的 inference_queue 表，由工作线程按租约领取执行。
+ * 进程重启或崩溃后，未完成任务会被重新排队，不再依赖内存中的线程池队列。
+ */
+@Service
+public class InferenceQueueService implements SmartLifecycle {
+
+    private final InferenceQueueRepository queueRepository;
+    private final PatientInfoRepository patientInfoRepository;
+    private final DICOMService dicomService;
+    private final ImageProcessingService imageProcessingService;
+    private final Executor queueExecutor;
+
+    // 本进程的租约持有者标识
+    private final String workerId = "worker-" + UUID.randomUUID();
+    private final Set<Long> inFlightJobs = ConcurrentHashMap.newKeySet();
+    private final Object signal = new Object();
+    private volatile boolean running = false;
+    private CountDownLatch workersExited;
+
+    @Value("${inference.queue.workers:4}")
+    private int workerCount;
+
+    @Value("${inference.queue.lease-seconds:120}")
+    private long leaseSeconds;
+
+    @Value("${inference.queue.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${inference.queue.poll-interval-ms:2000}")
+    private long pollIntervalMs;
+
+    @Value("${inference.queue.drain-timeout-seconds:30}")
+    private long drainTimeoutSeconds;
+
+    @Autowired
+    public InferenceQueueService(
+            InferenceQueueRepository queueRepository,
+            PatientInfoRepository patientInfoRepository,
+            DICOMService dicomService,
+            ImageProcessingService imageProcessingService,
+            @Qualifier("inferenceQueueExecutor") Executor queueExecutor
+    ) {
+        this.queueRepository = queueRepository;
+        this.patientInfoRepository = patientInfoRepository;
+        this.dicomService = dicomService;
+        this.imageProcessingService = imageProcessingService;
+        this.queueExecutor = queueExecutor;
+    }
+
+    /**
+     * 提交推理任务（先落库再唤醒工作线程）
+     */
+    public Long enqueue(String pngPath, InferenceContext context) {
+        return enqueue(pngPath, context, InferenceQueueRepository.PRIORITY_NORMAL);
+    }
+
+    /**
+     * 按优先级提交推理任务（后台预取使用低优先级，不阻塞交互式搜索的推理）
+     */
+    public Long enqueue(String pngPath, InferenceContext context, int priority) {
+        Long jobID = queueRepository.enqueue(
+                pngPath, context.pid(), context.sopInstanceUID(), context.isMale(), priority);
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+        return jobID;
+    }
+
+    public Map<String, Long> getQueueStats() {
+        return queueRepository.countByStatus();
+    }
+
+    @Override
+    public void start() {
+        int recovered = queueRepository.requeueAllRunning();
+        if (recovered > 0) {
+            System.out.println("推理队列恢复了 " + recovered + " 个未完成任务");
+        }
+
+        running = true;
+        workersExited = new CountDownLatch(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            queueExecutor.execute(this::workerLoop);
+        }
+    }
+
+    /**
+     * 优雅停机：停止领取新任务，等待在途任务完成。
+     * 超时仍在执行的任务保持 RUNNING：工作线程仍会写回结果，此时归还队列会被再次领取而重复推理，
+     * 留给租约过期或下次启动的 requeueAllRunning 处理
+     */
+    @Override
+    public void stop() {
+        running = false;
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+        try {
+            if (!workersExited.await(drainTimeoutSeconds, TimeUnit.SECONDS)) {
+                System.err.println("推理队列停机超时，" + inFlightJobs.size() + " 个在途任务保持运行中状态");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 心跳：为在途任务续租，防止长耗时推理被误判为失联
+     */
+    @Scheduled(fixedDelayString = "${inference.queue.heartbeat-ms:30000}")
+    public void heartbeat() {
+        if (!inFlightJobs.isEmpty()) {
+            queueRepository.extendLeases(workerId, new ArrayList<>(inFlightJobs), leaseSeconds * 1000);
+        }
+    }
+
+    // 每天凌晨1点30分清理已完成任务
+    @Scheduled(cron = "0 30 1 * * ?")
+    public void cleanFinishedJobs() {
+        queueRepository.deleteOldFinished();
+    }
+
+    private void workerLoop() {
+        try {
+            while (running) {
+                InferenceQueueJob job;
+                try {
+                    job = queueRepository.claimNext(workerId, leaseSeconds * 1000);
+                } catch (Exception e) {
+                    System.err.println("领取推理任务失败: " + e.getMessage());
+                    job = null;
+                }
+
+                if (job == null) {
+                    synchronized (signal) {
+                        if (running) {
+                            signal.wait(pollIntervalMs);
+                        }
+                    }
+                    continue;
+                }
+
+                inFlightJobs.add(job.getJobID());
+                try {
+                    execute(job);
+                } finally {
+                    inFlightJobs.remove(job.getJobID());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            workersExited.countDown();
+        }
+    }
+
+    private void execute(InferenceQueueJob job) {
+        PatientInfo record = null;
+        try {
+            // 按主键加载上下文；旧版本入队的任务没有PID，按SOPInstanceUID兼容查找
+            record = job.getPID() != null
+                    ? patientInfoRepository.findById(job.getPID())
+                    : patientInfoRepository.findBySOPInstanceUID(job.getSOPInstanceUID());
+            if (record == null) {
+                fail(job, null, "未找到对应的患者记录", maxAttempts);
+                return;
+            }
+
+            String pngPath = job.getPngPath();
+            // 图像已被清理时根据数据库记录重新下载
+            if (pngPath == null || !Files.exists(Paths.get(pngPath))) {
+                pngPath = dicomService.downloadAndConvertToPng(record);
+            }
+            if (pngPath == null) {
+                fail(job, record, "图像文件不存在且重新下载失败", maxAttempts);
+                return;
+            }
+
+            switch (imageProcessingService.process(pngPath, InferenceContext.from(record))) {
+                case DONE -> queueRepository.markDone(job.getJobID(), workerId);
+                // 门控拒绝的图像重试也不会通过，直接置为失败
+                case REJECTED -> fail(job, record, "门控判定为非手部图像", 0);
+                case FAILED -> fail(job, record, "推理失败", maxAttempts);
+            }
+        } catch (Exception e) {
+            System.err.println("推理任务 " + job.getJobID() + " 执行异常: " + e.getMessage());
+            fail(job, record, e.getMessage(), maxAttempts);
+        }
+    }
+
+    /**
+     * 标记失败；任务最终失败（不再重试）时补选同一序列中质量筛选未选中的下一张图像
+     */
+    private void fail(InferenceQueueJob job, PatientInfo record, String error, int attempts) {
+        if (!queueRepository.markFailed(job.getJobID(), workerId, error, attempts) || record == null) {
+            return;
+        }
+        try {
+            PatientInfo next = patientInfoRepository.releaseBestFlagged(
+                    record.getSeriesInstanceUID(), ImageQualityService.FLAG_NOT_SELECTED);
+            if (next == null) {
+                return;
+            }
+            // 通常仍在本地缓存中；下载失败时该实例保持无标记，下次检索时重新提交
+            String pngPath = dicomService.downloadAndConvertToPng(next);
+            if (pngPath == null) {
+                System.err.println("补选图像获取失败 [SOP_UID=" + next.getSOPInstanceUID() + "]");
+                return;
+            }
+            enqueue(pngPath, InferenceContext.from(next), job.getPriority());
+            System.out.println("推理任务 " + job.getJobID() + " 最终失败，补选同序列图像 [SOP_UID="
+                    + next.getSOPInstanceUID() + "]");
+        } catch (Exception e) {
+            System.err.println("补选同序列图像失败: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.server.service;
+
+import com.example.server.config.DICOMConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * 本地PNG图像缓存：按SOPInstanceUID存放转换后的图像，总大小不超过
+ * dicom.image-cache-max-bytes，超出时按最近最少使用淘汰。
+ * 索引只在内存中维护，启动时按文件修改时间重建（命中时会刷新修改时间）；
+ * 写入先落临时文件再原子替换，读取方不会看到写了一半的图像
+ */
+@Component
+public class LocalImageCache {
+    private static final String CACHE_DIR = "temp/images/";
+    private static final String IMAGE_SUFFIX = ".png";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final DICOMConfig config;
+    private final Path directory;
+    // 访问顺序：队头为最久未使用
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+
+    private final MeterRegistry meterRegistry;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+
+    @Autowired
+    public LocalImageCache(DICOMConfig config, MeterRegistry meterRegistry) {
+        this(config, meterRegistry, Paths.get(CACHE_DIR));
+    }
+
+    LocalImageCache(DICOMConfig config, MeterRegistry meterRegistry, Path directory) {
+        this.config = config;
+        this.directory = directory;
+        this.meterRegistry = meterRegistry;
+        this.hitCounter = meterRegistry.counter("image.cache", "result", "hit");
+        this.missCounter = meterRegistry.counter("image.cache", "result", "miss");
+        this.evictionCounter = meterRegistry.counter("image.cache.evictions");
+
+        try {
+            Files.createDirectories(directory);
+            rebuildIndex();
+        } catch (IOException e) {
+            throw new UncheckedIOException("初始化图像缓存失败", e);
+        }
+    }
+
+    @PostConstruct
+    public void registerGauge() {
+        meterRegistry.gauge("image.cache.bytes", this, LocalImageCache::getTotalBytes);
+    }
+
+    /**
+     * 写入图像的回调，向给定的临时文件写入完整内容
+     */
+    @FunctionalInterface
+    public interface ImageWriter {
+        void write(Path file) throws IOException;
+    }
+
+    /**
+     * 命中时返回图像路径并标记为最近使用，未缓存或文件已被外部删除时返回null
+     */
+    public Path get(String sopUID) {
+        Path file = pathOf(sopUID);
+        synchronized (index) {
+            if (index.get(sopUID) != null) {
+                if (Files.exists(file)) {
+                    hitCounter.increment();
+                    touch(file);
+                    return file;
+                }
+                totalBytes -= index.remove(sopUID);
+            }
+        }
+        missCounter.increment();
+        return null;
+    }
+
+    /**
+     * 写入（或覆盖）图像并返回最终路径，写入完成后按容量淘汰最久未使用的图像
+     */
+    public Path put(String sopUID, ImageWriter writer) throws IOException {
+        Path file = pathOf(sopUID);
+        Path temp = Files.createTempFile(directory, sopUID, TEMP_SUFFIX);
+        try {
+            writer.write(temp);
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        long size = Files.size(file);
+        synchronized (index) {
+            Long previous = index.put(sopUID, size);
+            totalBytes += size - (previous != null ? previous : 0);
+            evict(sopUID);
+        }
+        return file;
+    }
+
+    public long getTotalBytes() {
+        synchronized (index) {
+            return totalBytes;
+        }
+    }
+
+    private Path pathOf(String sopUID) {
+        return directory.resolve(sopUID + IMAGE_SUFFIX);
+    }
+
+    /**
+     * 超出容量时从最久未使用开始删除，刚写入的图像不淘汰
+     */
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, Long>> iterator = index.entrySet().iterator();
+        while (totalBytes > config.getImageCacheMaxBytes() && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            if (eldest.getKey().equals(keep)) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(pathOf(eldest.getKey()));
+            } catch (IOException e) {
+                System.err.println("删除缓存图像失败: " + eldest.getKey() + " - " + e.getMessage());
+                continue;
+            }
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+            evictionCounter.increment();
+        }
+    }
+
+    /**
+     * 扫描缓存目录重建索引：按修改时间从旧到新加入，清理上次异常退出遗留的临时文件
+     */
+    private void rebuildIndex() throws IOException {
+        List<CachedFile> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) stream::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(IMAGE_SUFFIX) && Files.isRegularFile(file)) {
+                    files.add(new CachedFile(
+                            name.substring(0, name.length() - IMAGE_SUFFIX.length()),
+                            Files.size(file),
+                            Files.getLastModifiedTime(file).toMillis()));
+                }
+            }
+        }
+        files.sort(Comparator.comparingLong(CachedFile::lastModified));
+
+        synchronized (index) {
+            for (CachedFile file : files) {
+                index.put(file.sopUID(), file.size());
+                totalBytes += file.size();
+            }
+            evict(null);
+        }
+        System.out.printf("图像缓存索引已重建: %d 个文件, %.1f MB%n", index.size(), totalBytes / 1048576.0);
+    }
+
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) {
+            // 仅影响重启后的淘汰顺序
+        }
+    }
+
+    private record CachedFile(String sopUID, long size, long lastModified) {
+    }
+}
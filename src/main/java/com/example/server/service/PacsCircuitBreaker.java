@@ -0,0 +1,137 @@
+package com.example.server.service;
+
+import com.example.server.config.DICOMConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * PACS熔断器：按最近N次操作（C-FIND / C-GET / WADO）的失败率打开，
+ * 打开期间所有PACS操作立即失败，搜索直接走数据库结果；
+ * 打开超过 dicom.breaker-open-ms 后进入半开状态，由定时任务发送C-ECHO探测，成功则关闭。
+ * 每个PACS节点独立熔断，一个PACS故障不影响其余节点
+ */
+public final class PacsCircuitBreaker {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final DICOMConfig config;
+    private final String name;
+    private final DicomAssociationPool associationPool;
+    private final Counter rejectedCounter;
+
+    // 环形窗口，true表示失败
+    private final boolean[] window;
+    private int windowIndex;
+    private int windowCount;
+    private int windowFailures;
+
+    private volatile State state = State.CLOSED;
+    private volatile long openedAt;
+
+    public PacsCircuitBreaker(DICOMConfig config, String name, DicomAssociationPool associationPool,
+                              MeterRegistry meterRegistry) {
+        this.config = config;
+        this.name = name;
+        this.associationPool = associationPool;
+        this.window = new boolean[Math.max(1, config.getBreakerWindowSize())];
+        this.rejectedCounter = meterRegistry.counter("pacs.breaker.rejected", "pacs", name);
+        meterRegistry.gauge("pacs.breaker.state", Tags.of("pacs", name),
+                this, breaker -> breaker.getState().ordinal());
+    }
+
+    /**
+     * 熔断关闭时允许请求；打开或半开时拒绝并计数
+     */
+    public boolean allowRequest() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        rejectedCounter.increment();
+        return false;
+    }
+
+    public synchronized void recordSuccess() {
+        if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void recordFailure() {
+        if (state != State.CLOSED) {
+            return;
+        }
+        record(true);
+        if (windowCount >= config.getBreakerMinimumCalls()
+                && getFailureRate() >= config.getBreakerFailureRateThreshold()) {
+            open(String.format("最近 %d 次PACS操作失败 %d 次", windowCount, windowFailures));
+        }
+    }
+
+    /**
+     * 半开探测：打开时间已满时发送C-ECHO，成功则关闭熔断，失败则重新计时
+     */
+    public void probe() {
+        synchronized (this) {
+            if (state != State.OPEN || System.currentTimeMillis() - openedAt < config.getBreakerOpenMs()) {
+                return;
+            }
+            state = State.HALF_OPEN;
+        }
+
+        boolean reachable = associationPool.echo();
+        synchronized (this) {
+            if (reachable) {
+                resetWindow();
+                state = State.CLOSED;
+                System.out.println("PACS " + name + " C-ECHO探测成功，熔断关闭");
+            } else {
+                open("C-ECHO探测失败");
+            }
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getOpenedAt() {
+        return openedAt;
+    }
+
+    public synchronized double getFailureRate() {
+        return windowCount == 0 ? 0 : (double) windowFailures / windowCount;
+    }
+
+    private void record(boolean failure) {
+        if (windowCount == window.length) {
+            if (window[windowIndex]) {
+                windowFailures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    private void open(String reason) {
+        if (state != State.OPEN) {
+            System.err.println("PACS " + name + " 熔断打开: " + reason);
+        }
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+    }
+
+    private void resetWindow() {
+        windowIndex = 0;
+        windowCount = 0;
+        windowFailures = 0;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.server.service;
+
+import com.example.server.config.DICOMConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.dcm4che3.net.Device;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * PACS节点注册表：按 dicom.pacs-list 为每个PACS创建独立的关联池、熔断器与C-GET检索，
+ * 并统一执行关联保活、熔断半开探测与关闭
+ */
+@Component
+public class PacsEndpointRegistry {
+    private final List<PacsNode> nodes;
+
+    @Autowired
+    public PacsEndpointRegistry(DICOMConfig config, Device dicomDevice, MeterRegistry meterRegistry) {
+        List<PacsNode> created = new ArrayList<>();
+        Set<String> aeTitles = new HashSet<>();
+        for (DICOMConfig.PacsEndpoint endpoint : config.resolveEndpoints()) {
+            if (!aeTitles.add(endpoint.getAeTitle())) {
+                throw new IllegalStateException("PACS AE名称重复: " + endpoint.getAeTitle());
+            }
+            DicomAssociationPool pool = new DicomAssociationPool(config, endpoint, dicomDevice);
+            created.add(new PacsNode(
+                    endpoint,
+                    pool,
+                    new PacsCircuitBreaker(config, endpoint.getAeTitle(), pool, meterRegistry),
+                    new DicomRetrieveService(config, endpoint, dicomDevice),
+                    endpoint.getQueryTimeoutSeconds() != null
+                            ? endpoint.getQueryTimeoutSeconds() : config.getQueryTimeoutSeconds()));
+        }
+        this.nodes = List.copyOf(created);
+        System.out.println("已配置PACS节点: " + aeTitles);
+    }
+
+    /**
+     * 全部节点，按配置顺序（即优先级）
+     */
+    public List<PacsNode> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * 第一个配置的节点，未记录来源PACS的数据默认从该节点获取
+     */
+    public PacsNode getDefaultNode() {
+        return nodes.getFirst();
+    }
+
+    /**
+     * 按AE名称查找节点，未知或为空时返回null
+     */
+    public PacsNode find(String aeTitle) {
+        if (aeTitle == null || aeTitle.isEmpty()) {
+            return null;
+        }
+        for (PacsNode node : nodes) {
+            if (node.getAeTitle().equals(aeTitle)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按WADO地址（主机与下载端口）查找节点，未匹配时返回默认节点
+     */
+    public PacsNode findByDownloadAddress(String host, int port) {
+        for (PacsNode node : nodes) {
+            if (node.getEndpoint().getIp().equals(host) && node.getEndpoint().getDownloadPort() == port) {
+                return node;
+            }
+        }
+        return getDefaultNode();
+    }
+
+    @Scheduled(fixedDelayString = "${dicom.association-keepalive-ms:60000}", initialDelay = 5000)
+    public void keepAlive() {
+        for (PacsNode node : nodes) {
+            node.getAssociationPool().keepAlive();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${dicom.breaker-probe-interval-ms:5000}", initialDelay = 5000)
+    public void probe() {
+        for (PacsNode node : nodes) {
+            node.getCircuitBreaker().probe();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (PacsNode node : nodes) {
+            node.getAssociationPool().shutdown();
+        }
+    }
+}
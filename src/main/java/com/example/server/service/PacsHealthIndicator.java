@@ -0,0 +1,44 @@
+package com.example.server.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * actuator 健康检查（/actuator/health 的 pacs 组件）：报告各PACS节点的熔断状态，
+ * 至少一个节点熔断关闭时为UP（其余节点故障只影响其上的数据）
+ */
+@Component("pacs")
+public class PacsHealthIndicator implements HealthIndicator {
+    private final PacsEndpointRegistry registry;
+
+    @Autowired
+    public PacsHealthIndicator(PacsEndpointRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Health health() {
+        boolean anyClosed = false;
+        Health.Builder builder = Health.unknown();
+        for (PacsNode node : registry.getNodes()) {
+            PacsCircuitBreaker circuitBreaker = node.getCircuitBreaker();
+            PacsCircuitBreaker.State state = circuitBreaker.getState();
+            anyClosed |= state == PacsCircuitBreaker.State.CLOSED;
+
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("breakerState", state);
+            details.put("failureRate", circuitBreaker.getFailureRate());
+            if (state != PacsCircuitBreaker.State.CLOSED) {
+                details.put("openedAt", Instant.ofEpochMilli(circuitBreaker.getOpenedAt()).toString());
+            }
+            builder.withDetail(node.getAeTitle(), details);
+        }
+        return (anyClosed ? builder.up() : builder.down()).build();
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.server.service;
+
+import com.example.server.config.DICOMConfig;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 单个PACS节点：关联池、熔断器、C-GET检索及该节点协商过程中记录的能力状态
+ */
+public class PacsNode {
+    private final DICOMConfig.PacsEndpoint endpoint;
+    private final DicomAssociationPool associationPool;
+    private final PacsCircuitBreaker circuitBreaker;
+    private final DicomRetrieveService retrieveService;
+    private final long queryTimeoutSeconds;
+
+    // PACS拒绝过关系型查询后不再尝试（重启后重新探测）
+    private final AtomicBoolean relationalRejected = new AtomicBoolean(false);
+    // PACS拒绝过WADO传输语法参数后不再携带（重启后重新尝试）
+    private final AtomicBoolean transferSyntaxRejected = new AtomicBoolean(false);
+
+    PacsNode(
+            DICOMConfig.PacsEndpoint endpoint,
+            DicomAssociationPool associationPool,
+            PacsCircuitBreaker circuitBreaker,
+            DicomRetrieveService retrieveService,
+            long queryTimeoutSeconds
+    ) {
+        this.endpoint = endpoint;
+        this.associationPool = associationPool;
+        this.circuitBreaker = circuitBreaker;
+        this.retrieveService = retrieveService;
+        this.queryTimeoutSeconds = queryTimeoutSeconds;
+    }
+
+    public String getAeTitle() {
+        return endpoint.getAeTitle();
+    }
+
+    public DICOMConfig.PacsEndpoint getEndpoint() {
+        return endpoint;
+    }
+
+    public DicomAssociationPool getAssociationPool() {
+        return associationPool;
+    }
+
+    public PacsCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public DicomRetrieveService getRetrieveService() {
+        return retrieveService;
+    }
+
+    public long getQueryTimeoutSeconds() {
+        return queryTimeoutSeconds;
+    }
+
+    AtomicBoolean relationalRejected() {
+        return relationalRejected;
+    }
+
+    AtomicBoolean transferSyntaxRejected() {
+        return transferSyntaxRejected;
+    }
+}
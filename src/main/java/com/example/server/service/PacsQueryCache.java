@@ -0,0 +1,108 @@
+package com.example.server.service;
+
+import com.example.server.config.DICOMConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.dcm4che3.data.Attributes;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * PACS C-FIND 结果缓存：按查询层级与患者ID缓存，条目带TTL，
+ * 超过容量时按最近最少使用淘汰；新检查入库时按患者失效
+ */
+@Component
+public class PacsQueryCache {
+    private final DICOMConfig config;
+    private final Map<String, Entry> entries;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+
+    @Autowired
+    public PacsQueryCache(DICOMConfig config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.hitCounter = meterRegistry.counter("pacs.query.cache", "result", "hit");
+        this.missCounter = meterRegistry.counter("pacs.query.cache", "result", "miss");
+        this.evictionCounter = meterRegistry.counter("pacs.query.cache.evictions");
+
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > config.getQueryCacheMaxEntries()) {
+                    evictionCounter.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 命中未过期缓存时直接返回，否则执行查询；空结果（可能是查询失败）不缓存
+     *
+     * @param level     查询层级（PATIENT / STUDY）
+     * @param ttlMillis 缓存有效期，小于等于0时不缓存
+     */
+    public List<Attributes> get(String level, String patientID, long ttlMillis, Supplier<List<Attributes>> query) {
+        if (ttlMillis <= 0) {
+            return query.get();
+        }
+
+        String key = level + "|" + patientID;
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expireAt > now) {
+                hitCounter.increment();
+                return entry.results;
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+        }
+
+        missCounter.increment();
+        List<Attributes> results = query.get();
+        if (results.isEmpty()) {
+            return results;
+        }
+
+        List<Attributes> cached = Collections.unmodifiableList(results);
+        synchronized (entries) {
+            entries.put(key, new Entry(patientID, cached, now + ttlMillis));
+        }
+        return cached;
+    }
+
+    /**
+     * 失效某患者的全部缓存（收到该患者的新检查时调用）
+     */
+    public void invalidatePatient(String patientID) {
+        synchronized (entries) {
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().patientID.equals(patientID)) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    private record Entry(String patientID, List<Attributes> results, long expireAt) {
+    }
+}
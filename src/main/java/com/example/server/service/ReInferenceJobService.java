@@ -0,0 +1,250 @@
+package com.example.server.service;
+
+import com.example.server.Utils.RateLimiter;
+import com.example.server.model.InferenceContext;
+import com.example.server.model.PatientInfo;
+import com.example.server.model.ReInferenceJob;
+import com.example.server.repository.InferenceQueueRepository;
+import com.example.server.repository.PatientInfoRepository;
+import com.example.server.repository.ReInferenceJobRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 批量重推理任务：按PID游标流式读取 patient_info，重新下载图像并以低优先级提交持久化推理队列
+ * （不与交互式检索争抢推理线程），每批提交后在 SQLite 中写入检查点，服务重启后从检查点继续。
+ */
+@Service
+public class ReInferenceJobService {
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    public static final String STATUS_CANCELLED = "CANCELLED";
+    public static final String STATUS_FAILED = "FAILED";
+    // 传入该值表示忽略模型版本过滤，全部重跑
+    public static final String ALL_VERSIONS = "ALL";
+
+    private final ReInferenceJobRepository jobRepository;
+    private final PatientInfoRepository patientInfoRepository;
+    private final DICOMService dicomService;
+    private final InferenceQueueService inferenceQueueService;
+    private final Executor batchJobExecutor;
+
+    // 运行中任务的取消标记
+    private final Map<Long, AtomicBoolean> cancelFlags = new ConcurrentHashMap<>();
+    private volatile boolean shuttingDown = false;
+
+    @Value("${inference.model-version:v1}")
+    private String currentModelVersion;
+
+    @Value("${reinference.images-per-second:2}")
+    private double defaultImagesPerSecond;
+
+    @Value("${reinference.batch-size:20}")
+    private int defaultBatchSize;
+
+    @Autowired
+    public ReInferenceJobService(
+            ReInferenceJobRepository jobRepository,
+            PatientInfoRepository patientInfoRepository,
+            DICOMService dicomService,
+            InferenceQueueService inferenceQueueService,
+            @Qualifier("batchJobExecutor") Executor batchJobExecutor
+    ) {
+        this.jobRepository = jobRepository;
+        this.patientInfoRepository = patientInfoRepository;
+        this.dicomService = dicomService;
+        this.inferenceQueueService = inferenceQueueService;
+        this.batchJobExecutor = batchJobExecutor;
+    }
+
+    /**
+     * 创建并启动重推理任务
+     * @param modelVersion 为空时默认跳过当前模型版本已推理的记录，传 ALL 则全部重跑
+     */
+    public ReInferenceJob startJob(
+            LocalDate studyDateFrom,
+            LocalDate studyDateTo,
+            String modelVersion,
+            Double imagesPerSecond,
+            Integer batchSize
+    ) {
+        if (studyDateFrom != null && studyDateTo != null && studyDateFrom.isAfter(studyDateTo)) {
+            throw new IllegalArgumentException("起始日期不能晚于截止日期");
+        }
+        if (imagesPerSecond != null && imagesPerSecond <= 0) {
+            throw new IllegalArgumentException("吞吐上限必须大于0");
+        }
+        if (batchSize != null && batchSize <= 0) {
+            throw new IllegalArgumentException("批次大小必须大于0");
+        }
+
+        String targetVersion;
+        if (modelVersion == null || modelVersion.isBlank()) {
+            targetVersion = currentModelVersion;
+        } else if (ALL_VERSIONS.equalsIgnoreCase(modelVersion)) {
+            targetVersion = null;
+        } else {
+            targetVersion = modelVersion;
+        }
+
+        ReInferenceJob job = new ReInferenceJob();
+        job.setStatus(STATUS_RUNNING);
+        job.setStudyDateFrom(studyDateFrom);
+        job.setStudyDateTo(studyDateTo);
+        job.setModelVersion(targetVersion);
+        job.setImagesPerSecond(imagesPerSecond != null ? imagesPerSecond : defaultImagesPerSecond);
+        job.setBatchSize(batchSize != null ? batchSize : defaultBatchSize);
+        job.setTotal(patientInfoRepository.countForReInference(studyDateFrom, studyDateTo, targetVersion));
+
+        Long jobID = jobRepository.save(job);
+        ReInferenceJob saved = jobRepository.findById(jobID);
+        if (!submit(saved)) {
+            return jobRepository.findById(jobID);
+        }
+        return saved;
+    }
+
+    public boolean cancelJob(Long jobID) {
+        AtomicBoolean flag = cancelFlags.get(jobID);
+        if (flag == null) {
+            return false;
+        }
+        flag.set(true);
+        return true;
+    }
+
+    public ReInferenceJob getJob(Long jobID) {
+        return jobRepository.findById(jobID);
+    }
+
+    public List<ReInferenceJob> listJobs(int limit) {
+        return jobRepository.findRecent(limit);
+    }
+
+    /**
+     * 启动完成后恢复上次未完成的任务
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeRunningJobs() {
+        for (ReInferenceJob job : jobRepository.findByStatus(STATUS_RUNNING)) {
+            System.out.println("恢复重推理任务 " + job.getJobID() + "，检查点PID: " + job.getLastPID());
+            submit(job);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // 任务保持 RUNNING 状态，下次启动时从检查点恢复
+        shuttingDown = true;
+    }
+
+    /**
+     * @return 任务是否已提交到线程池（已在运行也视为提交成功）
+     */
+    private boolean submit(ReInferenceJob job) {
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        if (cancelFlags.putIfAbsent(job.getJobID(), cancelled) != null) {
+            return true; // 已在运行
+        }
+        try {
+            batchJobExecutor.execute(() -> {
+                try {
+                    runJob(job, cancelled);
+                } finally {
+                    cancelFlags.remove(job.getJobID());
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            // 线程池拒绝时移除取消标记并置为失败，否则任务会一直停留在 RUNNING 且无法再次提交或取消
+            cancelFlags.remove(job.getJobID());
+            jobRepository.updateStatus(job.getJobID(), STATUS_FAILED, "任务线程池已满，提交被拒绝");
+            System.err.println("重推理任务 " + job.getJobID() + " 提交被拒绝: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void runJob(ReInferenceJob job, AtomicBoolean cancelled) {
+        RateLimiter rateLimiter = new RateLimiter(job.getImagesPerSecond());
+        long lastPID = job.getLastPID();
+        long processed = job.getProcessed();
+        long succeeded = job.getSucceeded();
+        long failed = job.getFailed();
+        long startTime = System.currentTimeMillis();
+
+        try {
+            while (!cancelled.get() && !shuttingDown) {
+                List<PatientInfo> batch = patientInfoRepository.findForReInference(
+                        lastPID,
+                        job.getStudyDateFrom(),
+                        job.getStudyDateTo(),
+                        job.getModelVersion(),
+                        job.getBatchSize()
+                );
+                if (batch.isEmpty()) {
+                    jobRepository.updateStatus(job.getJobID(), STATUS_COMPLETED, null);
+                    System.out.printf("重推理任务 %d 完成: 成功 %d, 失败 %d, 耗时 %d 秒%n",
+                            job.getJobID(), succeeded, failed, (System.currentTimeMillis() - startTime) / 1000);
+                    return;
+                }
+
+                // 逐张限流下载并提交推理队列；队列已落库，整批提交后即可写检查点
+                for (PatientInfo record : batch) {
+                    if (cancelled.get() || shuttingDown) {
+                        break;
+                    }
+                    rateLimiter.acquire();
+                    if (enqueue(record)) {
+                        succeeded++;
+                    } else {
+                        failed++;
+                    }
+                    processed++;
+                    lastPID = record.getPID();
+                }
+                jobRepository.updateCheckpoint(job.getJobID(), lastPID, processed, succeeded, failed);
+            }
+
+            if (cancelled.get()) {
+                jobRepository.updateStatus(job.getJobID(), STATUS_CANCELLED, null);
+                System.out.println("重推理任务 " + job.getJobID() + " 已取消");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("重推理任务 " + job.getJobID() + " 被中断，将在重启后恢复");
+        } catch (Exception e) {
+            System.err.println("重推理任务 " + job.getJobID() + " 失败: " + e.getMessage());
+            jobRepository.updateStatus(job.getJobID(), STATUS_FAILED, e.getMessage());
+        }
+    }
+
+    /**
+     * 重新下载一条记录的图像并以低优先级提交推理队列
+     */
+    private boolean enqueue(PatientInfo record) {
+        String pngPath = dicomService.downloadAndConvertToPng(record);
+        if (pngPath == null) {
+            return false;
+        }
+        try {
+            inferenceQueueService.enqueue(pngPath, InferenceContext.from(record), InferenceQueueRepository.PRIORITY_LOW);
+            return true;
+        } catch (Exception e) {
+            System.err.println("重推理提交失败 [PID=" + record.getPID() + "]: " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.server.service;
+
+import com.example.server.Utils.DicomDecodeUtils;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.net.Association;
+import org.dcm4che3.net.PDVInputStream;
+import org.dcm4che3.net.Status;
+import org.dcm4che3.net.pdu.PresentationContext;
+import org.dcm4che3.net.service.BasicCStoreSCP;
+import org.dcm4che3.net.service.DicomServiceException;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * C-STORE 接收处理：按关联分发到该关联上登记的接收器。
+ * C-GET 检索时PACS在同一关联上回传实例，由发起检索的一方通过
+ * {@link #SINK_PROPERTY} 登记接收器；其余关联交给默认接收器（存储SCP）
+ */
+public class RoutingCStoreSCP extends BasicCStoreSCP {
+    public static final String SINK_PROPERTY = "instanceSink";
+
+    // 手部X光可能的存储SOP类（C-GET检索与存储SCP共用）
+    public static final String[] STORAGE_SOP_CLASSES = {
+            UID.ComputedRadiographyImageStorage,
+            UID.DigitalXRayImageStorageForPresentation,
+            UID.DigitalXRayImageStorageForProcessing,
+            UID.SecondaryCaptureImageStorage
+    };
+    // 无损压缩优先，减少传输字节数；接收后解码为原始像素
+    public static final String[] STORAGE_TRANSFER_SYNTAXES = DicomDecodeUtils.supportedTransferSyntaxes();
+
+    // 未登记接收器的关联（模态或PACS主动推送）使用的默认接收器
+    private volatile Consumer<Attributes> defaultSink;
+
+    public void setDefaultSink(Consumer<Attributes> defaultSink) {
+        this.defaultSink = defaultSink;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void store(Association as, PresentationContext pc, Attributes rq,
+                         PDVInputStream data, Attributes rsp) throws IOException {
+        Consumer<Attributes> sink = (Consumer<Attributes>) as.getProperty(SINK_PROPERTY);
+        if (sink == null) {
+            sink = defaultSink;
+        }
+        if (sink == null) {
+            throw new DicomServiceException(Status.ProcessingFailure, "未登记实例接收器");
+        }
+
+        Attributes dataset = data.readDataset(pc.getTransferSyntax());
+        DicomDecodeUtils.decompress(dataset, pc.getTransferSyntax());
+        try {
+            sink.accept(dataset);
+        } catch (Exception e) {
+            throw new DicomServiceException(Status.ProcessingFailure, e);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.server.service;
+
+import com.example.server.model.InferenceContext;
+import com.example.server.model.KnownInstance;
+import com.example.server.model.PatientInfo;
+import com.example.server.repository.PatientInfoRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按序列提交推理：交互式检索与PACS预取共用。同一序列的图像下载完成即评分，序列下载结束后
+ * 按评分筛选，选中的保存患者信息并进入推理队列，未选中的记录筛选结果与评分，之后的检索不再下载。
+ * 各序列独立结束，先下载完的序列先进入推理
+ */
+@Service
+public class SeriesSubmissionService {
+    private final PatientInfoRepository patientInfoRepository;
+    private final InferenceQueueService inferenceQueueService;
+    private final ImageQualityService imageQualityService;
+
+    @Autowired
+    public SeriesSubmissionService(
+            PatientInfoRepository patientInfoRepository,
+            InferenceQueueService inferenceQueueService,
+            ImageQualityService imageQualityService
+    ) {
+        this.patientInfoRepository = patientInfoRepository;
+        this.inferenceQueueService = inferenceQueueService;
+        this.imageQualityService = imageQualityService;
+    }
+
+    /**
+     * 序列的患者与检查信息（新实例入库时使用）
+     */
+    public record Series(
+            String patientID,
+            LocalDate birthDate,
+            String sex,
+            String studyInstanceUID,
+            String seriesInstanceUID,
+            LocalDate studyDate,
+            String retrieveAETitle
+    ) {
+    }
+
+    /**
+     * 开始提交一个序列，图像全部提交后调用 {@link Submission#finish()}
+     *
+     * @param priority 推理队列优先级
+     */
+    public Submission open(Series series, int priority) {
+        return new Submission(series, priority, imageQualityService.newSeriesFilter());
+    }
+
+    /**
+     * 单个序列的提交过程，可由多个下载线程同时提交图像
+     */
+    public final class Submission {
+        private final Series series;
+        private final int priority;
+        private final ImageQualityService.SeriesFilter filter;
+        // 已提交图像在数据库中的记录，新实例不在其中
+        private final Map<String, KnownInstance> knownInstances = new ConcurrentHashMap<>();
+
+        private Submission(Series series, int priority, ImageQualityService.SeriesFilter filter) {
+            this.series = series;
+            this.priority = priority;
+            this.filter = filter;
+        }
+
+        /**
+         * 提交一张已下载的图像（仅评分，序列结束时统一筛选）
+         *
+         * @param imageType     C-FIND返回的 ImageType，未知时为null
+         * @param knownInstance 数据库中已有的记录，新实例为null
+         */
+        public void offer(String sopUID, String pngPath, String imageType, KnownInstance knownInstance) {
+            if (knownInstance != null) {
+                knownInstances.put(sopUID, knownInstance);
+            }
+            filter.offer(new ImageQualityService.Candidate(sopUID, pngPath, imageType));
+        }
+
+        /**
+         * 序列结束：按评分筛选，选中的进入推理队列，未选中的记录筛选结果与评分
+         *
+         * @return 本序列进入推理队列的推理上下文
+         */
+        public List<InferenceContext> finish() {
+            List<InferenceContext> submitted = new ArrayList<>();
+            for (ImageQualityService.Selection selection : filter.finish()) {
+                String sopUID = selection.candidate().sopUID();
+                KnownInstance knownInstance = knownInstances.get(sopUID);
+                if (!selection.selected()) {
+                    System.out.println("质量筛选未选中 [" + selection.flag() + "]: " + sopUID);
+                    if (knownInstance != null) {
+                        patientInfoRepository.updateQualityFlag(
+                                knownInstance.pid(), selection.flag(), selection.score());
+                    } else {
+                        save(sopUID, selection.flag(), selection.score());
+                    }
+                    continue;
+                }
+
+                InferenceContext context = knownInstance != null
+                        ? contextOf(knownInstance.pid(), sopUID)
+                        : save(sopUID, null, selection.score());
+                if (context != null && enqueue(selection.candidate().pngPath(), context)) {
+                    submitted.add(context);
+                }
+            }
+            return submitted;
+        }
+
+        private boolean enqueue(String pngPath, InferenceContext context) {
+            try {
+                inferenceQueueService.enqueue(pngPath, context, priority);
+                return true;
+            } catch (Exception e) {
+                System.err.println("提交推理任务失败: " + e.getMessage());
+                return false;
+            }
+        }
+
+        private InferenceContext contextOf(Long pid, String sopUID) {
+            return new InferenceContext(pid, series.patientID(), series.studyInstanceUID(),
+                    series.seriesInstanceUID(), sopUID, series.studyDate(), series.sex(), series.birthDate());
+        }
+
+        /**
+         * 保存患者信息到数据库，返回携带PID的推理上下文（失败时返回null）
+         *
+         * @param qualityFlag 质量筛选未选中的原因，为null表示参与推理
+         */
+        private InferenceContext save(String sopUID, String qualityFlag, double qualityScore) {
+            if (series.studyDate() == null) {
+                System.err.println("跳过无效Study日期的记录");
+                return null;
+            }
+            PatientInfo patientInfo = new PatientInfo();
+            patientInfo.setPatientID(series.patientID());
+            patientInfo.setBrithDate(series.birthDate());
+            patientInfo.setSex(series.sex());
+            patientInfo.setStudyInstanceUID(series.studyInstanceUID());
+            patientInfo.setSeriesInstanceUID(series.seriesInstanceUID());
+            patientInfo.setSOPInstanceUID(sopUID);
+            patientInfo.setStudyDate(series.studyDate());
+            patientInfo.setInferenceID(null);
+            patientInfo.setRetrieveAETitle(series.retrieveAETitle());
+            patientInfo.setQualityFlag(qualityFlag);
+            patientInfo.setQualityScore(qualityScore);
+
+            try {
+                patientInfo.setPID(patientInfoRepository.save(patientInfo));
+                return InferenceContext.from(patientInfo);
+            } catch (Exception e) {
+                // 同一实例可能刚由交互式检索或预取写入
+                System.err.println("保存患者信息失败: " + e.getMessage());
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.server.service;
+
+import com.example.server.config.DICOMConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * WADO 下载器：全局共享一个 HttpClient（连接复用），
+ * 每个请求带超时，按PACS主机限制并发，临时性错误带抖动重试
+ */
+@Component
+public class WadoFetcher {
+    private final DICOMConfig config;
+    private final HttpClient httpClient;
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    private final Timer downloadTimer;
+    private final Counter downloadBytes;
+    private final Counter retryCounter;
+    private final Counter failureCounter;
+
+    /**
+     * 响应体读取器：收到响应后在持有连接期间执行，返回解析结果
+     */
+    @FunctionalInterface
+    public interface BodyReader<T> {
+        T read(InputStream body, long contentLength) throws IOException;
+    }
+
+    @Autowired
+    public WadoFetcher(DICOMConfig config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(config.getWadoConnectTimeoutMs()))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+
+        this.downloadTimer = meterRegistry.timer("wado.download");
+        this.downloadBytes = meterRegistry.counter("wado.download.bytes");
+        this.retryCounter = meterRegistry.counter("wado.download.retries");
+        this.failureCounter = meterRegistry.counter("wado.download.failures");
+    }
+
+    /**
+     * 下载URL并交给 reader 解析，失败时按配置重试
+     */
+    public <T> T fetch(String url, BodyReader<T> reader) throws IOException {
+        URI uri = URI.create(url);
+        Semaphore permits = hostPermits.computeIfAbsent(uri.getHost() + ":" + uri.getPort(),
+                host -> new Semaphore(config.getWadoMaxConcurrentPerHost(), true));
+
+        int maxAttempts = Math.max(1, config.getWadoMaxRetries() + 1);
+        IOException lastException = null;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            try {
+                if (!permits.tryAcquire(config.getWadoRequestTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                    throw new IOException("等待WADO下载许可超时: " + uri.getHost());
+                }
+                try {
+                    return fetchOnce(uri, reader);
+                } finally {
+                    permits.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("WADO下载被中断", e);
+            } catch (NonRetryableException e) {
+                failureCounter.increment();
+                throw e;
+            } catch (IOException e) {
+                lastException = e;
+                if (attempt < maxAttempts) {
+                    retryCounter.increment();
+                    System.err.printf("WADO下载失败 (尝试 %d/%d): [%s] %s%n",
+                            attempt, maxAttempts, e.getClass().getSimpleName(), e.getMessage());
+                    sleepWithJitter(attempt);
+                }
+            }
+        }
+        failureCounter.increment();
+        throw lastException;
+    }
+
+    private <T> T fetchOnce(URI uri, BodyReader<T> reader) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofMillis(config.getWadoRequestTimeoutMs()))
+                .GET()
+                .build();
+
+        long start = System.nanoTime();
+        HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        try (CountingInputStream body = new CountingInputStream(response.body())) {
+            int status = response.statusCode();
+            if (status != 200) {
+                String message = "WADO响应状态 " + status + ": " + uri;
+                // 5xx与429视为临时错误，其余（如404）重试无意义
+                if (status >= 500 || status == 429) {
+                    throw new IOException(message);
+                }
+                throw new NonRetryableException(status, message);
+            }
+
+            long contentLength = response.headers().firstValueAsLong("Content-Length").orElse(-1L);
+            T result = readWithDeadline(uri, body, contentLength, reader);
+            downloadTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            downloadBytes.increment(body.count);
+            return result;
+        }
+    }
+
+    /**
+     * 请求超时只限制等待响应头；响应体读取到期仍未完成时关闭流，使阻塞的读取以异常返回并释放主机许可，
+     * 按临时性错误重试。读取响应体本身出错（连接中断等）可重试，其余异常为 reader 解析失败，不重试
+     */
+    private <T> T readWithDeadline(URI uri, CountingInputStream body, long contentLength, BodyReader<T> reader)
+            throws IOException {
+        AtomicBoolean expired = new AtomicBoolean();
+        CompletableFuture<Void> watchdog = CompletableFuture.runAsync(() -> {
+            expired.set(true);
+            try {
+                body.close();
+            } catch (IOException ignored) {
+                // 仅用于中断读取
+            }
+        }, CompletableFuture.delayedExecutor(config.getWadoBodyTimeoutMs(), TimeUnit.MILLISECONDS));
+        try {
+            return reader.read(body, contentLength);
+        } catch (IOException e) {
+            if (expired.get()) {
+                throw new HttpTimeoutException("WADO响应体读取超时: " + uri);
+            }
+            if (body.failed) {
+                throw e;
+            }
+            throw new UnreadableBodyException("WADO响应无法解析: " + uri + ": " + e.getMessage(), e);
+        } finally {
+            watchdog.cancel(false);
+        }
+    }
+
+    private void sleepWithJitter(int attempt) throws IOException {
+        long base = config.getWadoRetryBackoffMs() << (attempt - 1);
+        long delay = base + ThreadLocalRandom.current().nextLong(base + 1);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("WADO下载被中断", e);
+        }
+    }
+
+    static class NonRetryableException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        NonRetryableException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        NonRetryableException(int status, String message, Throwable cause) {
+            super(message, cause);
+            this.status = status;
+        }
+
+        int getStatus() {
+            return status;
+        }
+    }
+
+    /**
+     * 响应已完整收到（状态200）但 reader 无法解析，如非DICOM内容或数据损坏
+     */
+    static class UnreadableBodyException extends NonRetryableException {
+        private static final long serialVersionUID = 1L;
+
+        UnreadableBodyException(String message, Throwable cause) {
+            super(200, message, cause);
+        }
+    }
+
+    /**
+     * 统计读取字节数，并记录读取响应体时是否发生传输错误
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+        private volatile boolean failed;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                int b = super.read();
+                if (b >= 0) count++;
+                return b;
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                int n = super.read(b, off, len);
+                if (n > 0) count += n;
+                return n;
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            try {
+                long skipped = super.skip(n);
+                count += skipped;
+                return skipped;
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+    }
+}
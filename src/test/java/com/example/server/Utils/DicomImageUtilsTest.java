@@ -0,0 +1,157 @@
+package com.example.server.Utils;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.VR;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 窗宽窗位查找表与 Rescale 换算的输出值
+ */
+class DicomImageUtilsTest {
+
+    @Test
+    void linearWindowMapsStoredRangeToFullGrayRange() throws IOException {
+        Attributes dataset = dataset(12, false, 0, 4095, 2048);
+        window(dataset, 2048, 4096);
+        assertArrayEquals(new int[]{0, 255, 128}, gray(DicomImageUtils.toGrayImage(dataset, false)));
+    }
+
+    @Test
+    void valuesOutsideWindowAreClipped() throws IOException {
+        Attributes dataset = dataset(12, false, 900, 1000, 1100, 1200);
+        window(dataset, 1100, 100);
+        int[] gray = gray(DicomImageUtils.toGrayImage(dataset, false));
+        assertEquals(0, gray[0]);
+        assertEquals(0, gray[1]);
+        assertEquals(255, gray[3]);
+        assertTrue(gray[2] > 100 && gray[2] < 155, "窗位中心应接近中灰: " + gray[2]);
+    }
+
+    @Test
+    void rescaleIsAppliedBeforeWindow() throws IOException {
+        // 存储值 475/500/525 经 slope=2, intercept=-1000 换算为 -50/0/50
+        Attributes dataset = dataset(12, false, 475, 500, 525);
+        dataset.setString(Tag.RescaleSlope, VR.DS, "2");
+        dataset.setString(Tag.RescaleIntercept, VR.DS, "-1000");
+        window(dataset, 0, 100);
+        assertArrayEquals(new int[]{0, 129, 255}, gray(DicomImageUtils.toGrayImage(dataset, false)));
+    }
+
+    @Test
+    void signedPixelsAreSignExtended() throws IOException {
+        // 16位有符号：0xFF9C 为 -100
+        Attributes dataset = dataset(16, true, 0xFF9C, 0, 100);
+        window(dataset, 0, 200);
+        int[] gray = gray(DicomImageUtils.toGrayImage(dataset, false));
+        assertEquals(0, gray[0]);
+        assertEquals(255, gray[2]);
+        assertTrue(gray[1] > 100 && gray[1] < 155, "0 应接近中灰: " + gray[1]);
+    }
+
+    @Test
+    void monochrome1IsInverted() throws IOException {
+        Attributes dataset = dataset(12, false, 0, 4095, 2048);
+        window(dataset, 2048, 4096);
+        dataset.setString(Tag.PhotometricInterpretation, VR.CS, "MONOCHROME1");
+        assertArrayEquals(new int[]{255, 0, 127}, gray(DicomImageUtils.toGrayImage(dataset, false)));
+    }
+
+    @Test
+    void missingWindowUsesActualPixelRange() throws IOException {
+        Attributes dataset = dataset(12, false, 300, 100, 200);
+        int[] gray = gray(DicomImageUtils.toGrayImage(dataset, false));
+        assertEquals(255, gray[0]);
+        assertEquals(0, gray[1]);
+        assertTrue(gray[2] > 100 && gray[2] < 155, "中间值应接近中灰: " + gray[2]);
+    }
+
+    @Test
+    void bitsAboveBitsStoredAreMasked() throws IOException {
+        // 高4位为叠加层等无关位，按BitsStored=12截取后与不带高位的值一致
+        Attributes dataset = dataset(12, false, 0xF000, 0xFFFF, 0xF800);
+        window(dataset, 2048, 4096);
+        assertArrayEquals(new int[]{0, 255, 128}, gray(DicomImageUtils.toGrayImage(dataset, false)));
+    }
+
+    @Test
+    void parallelConversionMatchesSequential() throws IOException {
+        int size = 1100;
+        int[] samples = new int[size * size];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (i * 31) % 4096;
+        }
+        Attributes dataset = dataset(12, false, size, size, samples);
+        window(dataset, 1800, 2500);
+        assertArrayEquals(
+                gray(DicomImageUtils.toGrayImage(dataset, false)),
+                gray(DicomImageUtils.toGrayImage(dataset, true)));
+    }
+
+    @Test
+    void toRgbKeepsGrayLevels() {
+        BufferedImage image = new BufferedImage(3, 1, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        data[0] = 0;
+        data[1] = (byte) 77;
+        data[2] = (byte) 255;
+        BufferedImage rgb = DicomImageUtils.toRgb(image);
+        assertEquals(BufferedImage.TYPE_INT_RGB, rgb.getType());
+        assertEquals(0x000000, rgb.getRGB(0, 0) & 0xffffff);
+        assertEquals(0x4d4d4d, rgb.getRGB(1, 0) & 0xffffff);
+        assertEquals(0xffffff, rgb.getRGB(2, 0) & 0xffffff);
+    }
+
+    @Test
+    void rejectsUnsupportedBitDepth() {
+        Attributes dataset = dataset(12, false, 0, 1);
+        dataset.setInt(Tag.BitsAllocated, VR.US, 32);
+        assertThrows(IOException.class, () -> DicomImageUtils.toGrayImage(dataset, false));
+    }
+
+    private static Attributes dataset(int bitsStored, boolean signed, int... samples) {
+        return dataset(bitsStored, signed, samples.length, 1, samples);
+    }
+
+    /**
+     * 16位小端单帧灰度图像
+     */
+    private static Attributes dataset(int bitsStored, boolean signed, int columns, int rows, int[] samples) {
+        byte[] pixelData = new byte[samples.length * 2];
+        for (int i = 0; i < samples.length; i++) {
+            pixelData[2 * i] = (byte) samples[i];
+            pixelData[2 * i + 1] = (byte) (samples[i] >> 8);
+        }
+        Attributes dataset = new Attributes();
+        dataset.setInt(Tag.Rows, VR.US, rows);
+        dataset.setInt(Tag.Columns, VR.US, columns);
+        dataset.setInt(Tag.SamplesPerPixel, VR.US, 1);
+        dataset.setString(Tag.PhotometricInterpretation, VR.CS, "MONOCHROME2");
+        dataset.setInt(Tag.BitsAllocated, VR.US, 16);
+        dataset.setInt(Tag.BitsStored, VR.US, bitsStored);
+        dataset.setInt(Tag.HighBit, VR.US, bitsStored - 1);
+        dataset.setInt(Tag.PixelRepresentation, VR.US, signed ? 1 : 0);
+        dataset.setValue(Tag.PixelData, VR.OW, pixelData);
+        return dataset;
+    }
+
+    private static void window(Attributes dataset, double center, double width) {
+        dataset.setString(Tag.WindowCenter, VR.DS, String.valueOf(center));
+        dataset.setString(Tag.WindowWidth, VR.DS, String.valueOf(width));
+    }
+
+    private static int[] gray(BufferedImage image) {
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        int[] gray = new int[data.length];
+        for (int i = 0; i < data.length; i++) {
+            gray[i] = data[i] & 0xff;
+        }
+        return gray;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.server.Utils;
+
+import com.example.server.model.KnownInstance;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.VR;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Hand系列判定、DICOM日期解析与“序列已全部入库”判定
+ */
+class DicomSeriesUtilsTest {
+
+    @Test
+    void handSeriesIgnoresCase() {
+        assertTrue(DicomSeriesUtils.isHandSeries(series("S1", "HAND", -1)));
+        assertFalse(DicomSeriesUtils.isHandSeries(series("S1", "Chest", -1)));
+        assertFalse(DicomSeriesUtils.isHandSeries(new Attributes()));
+    }
+
+    @Test
+    void dicomDateIgnoresTimeSuffixAndRejectsInvalid() {
+        assertEquals(LocalDate.of(2023, 8, 15), DicomSeriesUtils.parseDicomDate("20230815"));
+        assertEquals(LocalDate.of(2023, 8, 15), DicomSeriesUtils.parseDicomDate("20230815120000"));
+        assertNull(DicomSeriesUtils.parseDicomDate(null));
+        assertNull(DicomSeriesUtils.parseDicomDate("2023"));
+        assertNull(DicomSeriesUtils.parseDicomDate("20231345"));
+    }
+
+    @Test
+    void seriesIsCompleteOnlyWhenEveryInstanceIsSettled() {
+        List<KnownInstance> known = List.of(
+                new KnownInstance(1L, "S1", "A", true, false, false),
+                new KnownInstance(2L, "S1", "B", false, true, false),
+                new KnownInstance(3L, "S2", "C", false, false, false));
+        assertTrue(DicomSeriesUtils.isSeriesComplete(series("S1", "Hand", 2), known));
+        // 已入库但需要重新提交
+        assertFalse(DicomSeriesUtils.isSeriesComplete(series("S2", "Hand", 1), known));
+        // PACS上的实例多于已入库的
+        assertFalse(DicomSeriesUtils.isSeriesComplete(series("S1", "Hand", 3), known));
+        // PACS未返回实例数
+        assertFalse(DicomSeriesUtils.isSeriesComplete(series("S1", "Hand", -1), known));
+    }
+
+    private Attributes series(String seriesUID, String description, int relatedInstances) {
+        Attributes attributes = new Attributes();
+        attributes.setString(Tag.SeriesInstanceUID, VR.UI, seriesUID);
+        attributes.setString(Tag.SeriesDescription, VR.LO, description);
+        if (relatedInstances >= 0) {
+            attributes.setInt(Tag.NumberOfSeriesRelatedInstances, VR.IS, relatedInstances);
+        }
+        return attributes;
+    }
+}
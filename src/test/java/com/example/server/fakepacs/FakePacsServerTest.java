@@ -0,0 +1,307 @@
+package com.example.server.fakepacs;
+
+import com.example.server.config.DICOMConfig;
+import com.example.server.config.DICOMDeviceConfig;
+import com.example.server.service.DICOMService;
+import com.example.server.service.LocalImageCache;
+import com.example.server.service.PacsCircuitBreaker;
+import com.example.server.service.PacsEndpointRegistry;
+import com.example.server.service.PacsQueryCache;
+import com.example.server.service.RoutingCStoreSCP;
+import com.example.server.service.WadoFetcher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.util.UIDUtils;
+import org.dcm4che3.net.Device;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 不启动Spring上下文，直接用模拟PACS驱动 DICOMService 的查询与下载链路
+ */
+class FakePacsServerTest {
+    @TempDir
+    Path dataDir;
+
+    private DICOMConfig config;
+    private FakePacsServer pacs;
+    private List<FakePacsServer.Instance> instances;
+    private ScheduledExecutorService executor;
+    private ExecutorService fanoutExecutor;
+    private Device device;
+    private PacsEndpointRegistry registry;
+    private PacsCircuitBreaker circuitBreaker;
+    private DICOMService dicomService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        config = new DICOMConfig();
+        config.setLocalAeTitle("BONEAGE");
+        config.setPacsAeTitle("FAKEPACS");
+        config.setPacsIp("127.0.0.1");
+        config.setPacsPort(freePort());
+        config.setDownloadPort(freePort());
+        config.setQueryTimeoutSeconds(10);
+
+        pacs = new FakePacsServer(config.getPacsAeTitle(), config.getPacsPort(), config.getDownloadPort());
+        instances = new SyntheticDicomGenerator(dataDir).generate(2, 2);
+        pacs.addInstances(instances);
+        pacs.start();
+
+        executor = Executors.newScheduledThreadPool(8);
+        fanoutExecutor = Executors.newCachedThreadPool();
+        DICOMDeviceConfig deviceConfig = new DICOMDeviceConfig();
+        RoutingCStoreSCP storeSCP = deviceConfig.routingCStoreSCP();
+        device = deviceConfig.dicomDevice(config, executor, deviceConfig.dicomServiceRegistry(storeSCP));
+        createService();
+    }
+
+    /**
+     * 按当前配置重建PACS节点与 DICOMService
+     */
+    private void createService() {
+        if (registry != null) {
+            registry.shutdown();
+        }
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        registry = new PacsEndpointRegistry(config, device, meterRegistry);
+        circuitBreaker = registry.getDefaultNode().getCircuitBreaker();
+        dicomService = new DICOMService(config, registry, meterRegistry,
+                new WadoFetcher(config, meterRegistry),
+                new PacsQueryCache(config, meterRegistry),
+                new LocalImageCache(config, meterRegistry),
+                fanoutExecutor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.shutdown();
+        device.unbindConnections();
+        executor.shutdownNow();
+        fanoutExecutor.shutdownNow();
+        pacs.close();
+    }
+
+    @Test
+    void searchAndDownloadHandImage() throws IOException {
+        assertEquals(List.of("FAKE0001", "FAKE0002"), pacs.getPatientIDs());
+
+        List<Attributes> patients = dicomService.patientSearch("FAKE0001");
+        assertEquals(1, patients.size());
+        assertEquals("M", patients.get(0).getString(Tag.PatientSex));
+
+        List<Attributes> studies = dicomService.studySearch("FAKE0001");
+        assertEquals(2, studies.size());
+
+        List<Attributes> series = dicomService.seriesSearch(studies.get(0).getString(Tag.StudyInstanceUID));
+        assertEquals(2, series.size());
+
+        List<Attributes> handSeries = dicomService.handSeriesSearch("FAKE0001", "Hand");
+        assertNotNull(handSeries, "模拟PACS应接受关系型查询");
+        assertEquals(2, handSeries.size());
+
+        Attributes hand = handSeries.get(0);
+        List<Attributes> images = dicomService.imageSearch(hand.getString(Tag.SeriesInstanceUID));
+        assertEquals(1, images.size());
+
+        String sopUID = images.get(0).getString(Tag.SOPInstanceUID);
+        String url = dicomService.buildDownloadUrl(hand.getString(Tag.StudyInstanceUID),
+                hand.getString(Tag.SeriesInstanceUID), sopUID, hand.getString(Tag.StudyDate), "FAKE0001");
+        String pngPath = dicomService.downloadAndConvertToPng(url, sopUID);
+        try {
+            assertNotNull(pngPath);
+            assertTrue(Files.size(Path.of(pngPath)) > 0);
+            assertEquals(1, pacs.getWadoRequests());
+        } finally {
+            if (pngPath != null) {
+                Files.deleteIfExists(Path.of(pngPath));
+            }
+        }
+    }
+
+    @Test
+    void rleCompressedDownloadMatchesUncompressed() throws IOException {
+        Attributes hand = dicomService.handSeriesSearch("FAKE0002", "Hand").get(0);
+        String sopUID = dicomService.imageSearch(hand.getString(Tag.SeriesInstanceUID)).get(0)
+                .getString(Tag.SOPInstanceUID);
+
+        config.setWadoTransferSyntax("");
+        byte[] uncompressed = downloadPng(hand, sopUID);
+        config.setWadoTransferSyntax(UID.RLELossless);
+        byte[] rle = downloadPng(hand, sopUID);
+        assertArrayEquals(uncompressed, rle);
+    }
+
+    @Test
+    void handSeriesSearchIgnoresDescriptionCase() {
+        // 同一检查中再加入一个大写描述的Hand序列，PACS端精确匹配"Hand"会漏掉它
+        FakePacsServer.Instance hand = instances.stream()
+                .filter(instance -> "FAKE0002".equals(instance.header().getString(Tag.PatientID)))
+                .filter(instance -> "Hand".equals(instance.header().getString(Tag.SeriesDescription)))
+                .findFirst().orElseThrow();
+        Attributes upper = new Attributes(hand.header());
+        upper.setString(Tag.SeriesInstanceUID, VR.UI, UIDUtils.createUID());
+        upper.setString(Tag.SOPInstanceUID, VR.UI, UIDUtils.createUID());
+        upper.setString(Tag.SeriesDescription, VR.LO, "HAND");
+        pacs.addInstances(List.of(new FakePacsServer.Instance(upper, hand.file())));
+
+        List<Attributes> handSeries = dicomService.handSeriesSearch("FAKE0002", "Hand");
+        assertEquals(3, handSeries.size());
+        assertTrue(handSeries.stream().anyMatch(series -> "HAND".equals(series.getString(Tag.SeriesDescription))));
+        assertTrue(handSeries.stream().noneMatch(series -> "Chest".equals(series.getString(Tag.SeriesDescription))));
+    }
+
+    @Test
+    void recentSearchFindsOnlyStudiesInWindow() {
+        // 每位患者最近一次检查为今天、时间为生成时刻，较早的检查在半年前
+        LocalDateTime since = LocalDateTime.now().minusMinutes(30);
+        List<Attributes> series = dicomService.recentSeriesSearch(since, "Hand");
+        assertNotNull(series);
+        assertEquals(List.of("FAKE0001", "FAKE0002"),
+                series.stream().map(s -> s.getString(Tag.PatientID)).sorted().toList());
+        for (Attributes hand : series) {
+            assertEquals("Hand", hand.getString(Tag.SeriesDescription));
+            assertNotNull(hand.getString(Tag.PatientBirthDate));
+            assertEquals("FAKEPACS", hand.getString(Tag.RetrieveAETitle));
+        }
+        assertEquals(2, dicomService.recentStudySearch(since).size());
+
+        LocalDateTime future = LocalDateTime.now().plusMinutes(5);
+        assertTrue(dicomService.recentSeriesSearch(future, "Hand").isEmpty());
+        assertTrue(dicomService.recentStudySearch(future).isEmpty());
+    }
+
+    private byte[] downloadPng(Attributes series, String sopUID) throws IOException {
+        String url = dicomService.buildDownloadUrl(series.getString(Tag.StudyInstanceUID),
+                series.getString(Tag.SeriesInstanceUID), sopUID, series.getString(Tag.StudyDate), "FAKE0002");
+        Path pngPath = Path.of(dicomService.downloadAndConvertToPng(url, sopUID));
+        try {
+            return Files.readAllBytes(pngPath);
+        } finally {
+            Files.deleteIfExists(pngPath);
+        }
+    }
+
+    @Test
+    void injectedFailuresYieldEmptyResults() {
+        pacs.setFailureRate(1.0);
+        assertTrue(dicomService.patientSearch("FAKE0002").isEmpty());
+
+        // 失败结果不缓存，恢复后立即可查
+        pacs.setFailureRate(0);
+        assertEquals(1, dicomService.patientSearch("FAKE0002").size());
+    }
+
+    @Test
+    void circuitBreakerOpensAndRecoversViaEcho() {
+        config.setBreakerOpenMs(0);
+        pacs.setFailureRate(1.0);
+        for (int i = 0; i < config.getBreakerMinimumCalls(); i++) {
+            assertTrue(dicomService.seriesSearch("1.2.3").isEmpty());
+        }
+        assertEquals(PacsCircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        // 熔断打开后不再访问PACS
+        long findRequests = pacs.getFindRequests();
+        assertFalse(dicomService.isPacsAvailable());
+        assertTrue(dicomService.patientSearch("FAKE0001").isEmpty());
+        assertEquals(findRequests, pacs.getFindRequests());
+
+        pacs.setFailureRate(0);
+        registry.probe();
+        assertEquals(PacsCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(1, dicomService.patientSearch("FAKE0001").size());
+    }
+
+    @Test
+    void federatedSearchMergesArchivesAndRoutesDownloads() throws Exception {
+        // 第二个PACS镜像第一个PACS的全部实例，并另有FAKE0001的一个检查
+        int secondPort = freePort();
+        int secondDownloadPort = freePort();
+        try (FakePacsServer second = new FakePacsServer("FAKEPACS2", secondPort, secondDownloadPort)) {
+            List<FakePacsServer.Instance> extra = new SyntheticDicomGenerator(dataDir.resolve("second")).generate(1, 1);
+            second.addInstances(instances);
+            second.addInstances(extra);
+            second.start();
+
+            config.setPacsList(List.of(
+                    endpoint(config.getPacsAeTitle(), config.getPacsPort(), config.getDownloadPort()),
+                    endpoint("FAKEPACS2", secondPort, secondDownloadPort)));
+            createService();
+            assertEquals(2, registry.getNodes().size());
+
+            List<Attributes> studies = dicomService.studySearch("FAKE0001");
+            assertEquals(3, studies.size(), "镜像检查应去重");
+            assertEquals(2, studies.stream()
+                    .filter(study -> "FAKEPACS".equals(study.getString(Tag.RetrieveAETitle))).count());
+
+            List<Attributes> handSeries = dicomService.handSeriesSearch("FAKE0001", "Hand");
+            assertNotNull(handSeries);
+            assertEquals(3, handSeries.size());
+
+            String extraStudyUID = extra.get(0).header().getString(Tag.StudyInstanceUID);
+            Attributes hand = handSeries.stream()
+                    .filter(series -> extraStudyUID.equals(series.getString(Tag.StudyInstanceUID)))
+                    .findFirst().orElseThrow();
+            assertEquals("FAKEPACS2", hand.getString(Tag.RetrieveAETitle));
+
+            // 只在第二个PACS上的序列：下级查询与下载都路由到第二个PACS
+            long firstFinds = pacs.getFindRequests();
+            List<Attributes> images = dicomService.imageSearch("FAKEPACS2", hand.getString(Tag.SeriesInstanceUID));
+            assertEquals(1, images.size());
+            assertEquals(firstFinds, pacs.getFindRequests());
+
+            String sopUID = images.get(0).getString(Tag.SOPInstanceUID);
+            String url = dicomService.buildDownloadUrl("FAKEPACS2", hand.getString(Tag.StudyInstanceUID),
+                    hand.getString(Tag.SeriesInstanceUID), sopUID, hand.getString(Tag.StudyDate), "FAKE0001");
+            Path pngPath = Path.of(dicomService.downloadAndConvertToPng(url, sopUID));
+            try {
+                assertEquals(1, second.getWadoRequests());
+                assertEquals(0, pacs.getWadoRequests());
+            } finally {
+                Files.deleteIfExists(pngPath);
+            }
+
+            // 一个PACS熔断时其余PACS仍可查询
+            pacs.setFailureRate(1.0);
+            for (int i = 0; i < config.getBreakerMinimumCalls(); i++) {
+                dicomService.seriesSearch("FAKEPACS", "1.2.3");
+            }
+            assertEquals(PacsCircuitBreaker.State.OPEN, circuitBreaker.getState());
+            assertTrue(dicomService.isPacsAvailable());
+            assertEquals(3, dicomService.handSeriesSearch("FAKE0001", "Hand").size());
+        }
+    }
+
+    private static DICOMConfig.PacsEndpoint endpoint(String aeTitle, int port, int downloadPort) {
+        DICOMConfig.PacsEndpoint endpoint = new DICOMConfig.PacsEndpoint();
+        endpoint.setAeTitle(aeTitle);
+        endpoint.setIp("127.0.0.1");
+        endpoint.setPort(port);
+        endpoint.setDownloadPort(downloadPort);
+        return endpoint;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.server.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 门控阈值（未打包门控模型，检测前走启发式规则）
+ */
+class HandGateServiceTest {
+    private SimpleMeterRegistry meterRegistry;
+    private HandGateService gate;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        meterRegistry = new SimpleMeterRegistry();
+        gate = new HandGateService(meterRegistry);
+        // 与 application.properties 中的默认值一致
+        ReflectionTestUtils.setField(gate, "enabled", true);
+        ReflectionTestUtils.setField(gate, "threshold", 0.5);
+        ReflectionTestUtils.setField(gate, "maxAspectRatio", 2.5);
+        ReflectionTestUtils.setField(gate, "minDetections", 10);
+        ReflectionTestUtils.setField(gate, "minMeanConfidence", 0.0);
+    }
+
+    @Test
+    void completeHandPassesEvenWithLowConfidence() {
+        // 21个关节、7类齐全，置信度略高于检测阈值0.5
+        assertNull(gate.checkDetections(21, 7, 0.51));
+        assertEquals(0, rejected("detection"));
+    }
+
+    @Test
+    void tooFewDetectionsAreRejected() {
+        assertNotNull(gate.checkDetections(9, 7, 0.9));
+        assertNull(gate.checkDetections(10, 7, 0.9));
+        assertEquals(1, rejected("detection"));
+    }
+
+    @Test
+    void missingClassesAreRejected() {
+        assertNotNull(gate.checkDetections(21, 4, 0.9));
+        assertNull(gate.checkDetections(21, 5, 0.9));
+    }
+
+    @Test
+    void meanConfidenceCheckOnlyWhenConfigured() {
+        assertNull(gate.checkDetections(21, 7, 0.3));
+        ReflectionTestUtils.setField(gate, "minMeanConfidence", 0.55);
+        assertNotNull(gate.checkDetections(21, 7, 0.52));
+        assertNull(gate.checkDetections(21, 7, 0.6));
+    }
+
+    @Test
+    void disabledGatePassesEverything() {
+        ReflectionTestUtils.setField(gate, "enabled", false);
+        assertNull(gate.checkDetections(0, 0, 0));
+        assertNull(gate.checkImage(new BufferedImage(64, 64, BufferedImage.TYPE_BYTE_GRAY)));
+    }
+
+    @Test
+    void blankImageIsRejected() {
+        BufferedImage blank = new BufferedImage(400, 500, BufferedImage.TYPE_BYTE_GRAY);
+        fill(blank, (x, y) -> 180);
+        assertEquals("空白图像", gate.checkImage(blank));
+        assertEquals(1, rejected("thumbnail"));
+    }
+
+    @Test
+    void texturedImagePasses() {
+        assertNull(gate.checkImage(textured(400, 500)));
+        assertEquals(0, rejected("thumbnail"));
+    }
+
+    @Test
+    void letterboxPaddingDoesNotCountAsContent() {
+        // 内容区域为空白的长条图像，填充的黑边不应让它被当作有结构的图像
+        BufferedImage strip = new BufferedImage(1000, 420, BufferedImage.TYPE_BYTE_GRAY);
+        fill(strip, (x, y) -> 200);
+        assertEquals("空白图像", gate.checkImage(strip));
+    }
+
+    @Test
+    void aspectRatioThreshold() {
+        assertNull(gate.checkImage(textured(240, 576)));
+        String reason = gate.checkImage(textured(200, 600));
+        assertNotNull(reason);
+        assertTrue(reason.contains("长宽比"), reason);
+    }
+
+    private double rejected(String stage) {
+        return meterRegistry.counter("gate.rejected", "stage", stage).count();
+    }
+
+    private static BufferedImage textured(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        fill(image, (x, y) -> ((x / 20 + y / 20) % 2 == 0) ? 60 : 200);
+        return image;
+    }
+
+    private static void fill(BufferedImage image, PixelValue value) {
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.getRaster().setSample(x, y, 0, value.at(x, y));
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface PixelValue {
+        int at(int x, int y);
+    }
+}
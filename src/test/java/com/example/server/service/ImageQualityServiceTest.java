@@ -0,0 +1,178 @@
+package com.example.server.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 推理前质量筛选：序列结束后按评分排序、重复检测、每序列名额与“至少推理一张”的补选
+ */
+class ImageQualityServiceTest {
+    @TempDir
+    Path directory;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ImageQualityService service;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        service = new ImageQualityService(meterRegistry);
+        // 与 application.properties 中的默认值一致
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "maxPerSeries", 1);
+        ReflectionTestUtils.setField(service, "duplicateDistance", 6);
+    }
+
+    @Test
+    void betterImageOfferedLaterIsSelected() throws IOException {
+        ImageQualityService.SeriesFilter filter = service.newSeriesFilter();
+        // 较差的图像先下载完成
+        filter.offer(candidate("A", gradient(70, 170, true), null));
+        filter.offer(candidate("B", gradient(20, 220, false), null));
+        Map<String, ImageQualityService.Selection> result = finish(filter);
+        assertTrue(result.get("B").selected());
+        assertEquals(ImageQualityService.FLAG_NOT_SELECTED, result.get("A").flag());
+        assertTrue(result.get("B").score() > result.get("A").score());
+    }
+
+    @Test
+    void derivedImagesRankBelowOriginals() throws IOException {
+        ImageQualityService.SeriesFilter filter = service.newSeriesFilter();
+        Path file = gradient(20, 220, false);
+        filter.offer(candidate("A", file, "DERIVED\\SECONDARY"));
+        filter.offer(candidate("B", file, "ORIGINAL\\PRIMARY"));
+        Map<String, ImageQualityService.Selection> result = finish(filter);
+        assertTrue(result.get("B").selected());
+        assertFalse(result.get("A").selected());
+        assertEquals(result.get("B").score() / 2, result.get("A").score(), 1e-9);
+    }
+
+    @Test
+    void overexposedImageIsLowQuality() throws IOException {
+        ReflectionTestUtils.setField(service, "maxPerSeries", 3);
+        ImageQualityService.SeriesFilter filter = service.newSeriesFilter();
+        // 约六成像素饱和
+        filter.offer(candidate("A", gradient(20, 600, false), null));
+        filter.offer(candidate("B", gradient(20, 220, true), null));
+        assertEquals(ImageQualityService.FLAG_LOW_QUALITY, finish(filter).get("A").flag());
+    }
+
+    @Test
+    void nearIdenticalImageIsDuplicate() throws IOException {
+        ReflectionTestUtils.setField(service, "maxPerSeries", 3);
+        ImageQualityService.SeriesFilter filter = service.newSeriesFilter();
+        filter.offer(candidate("A", gradient(20, 220, false), null));
+        // 整体亮度偏移不改变相邻区域的明暗关系，dHash 相同
+        filter.offer(candidate("B", gradient(30, 230, false), null));
+        // 方向相反的图像哈希完全不同
+        filter.offer(candidate("C", gradient(20, 220, true), null));
+        Map<String, ImageQualityService.Selection> result = finish(filter);
+        assertTrue(result.get("A").selected());
+        assertEquals(ImageQualityService.FLAG_DUPLICATE, result.get("B").flag());
+        assertTrue(result.get("C").selected());
+    }
+
+    @Test
+    void imagesBeyondMaxPerSeriesAreNotSelected() throws IOException {
+        ImageQualityService.SeriesFilter filter = service.newSeriesFilter();
+        filter.offer(candidate("A", gradient(20, 220, false), null));
+        filter.offer(candidate("B", gradient(60, 180, true), null));
+        ImageQualityService.Selection second = finish(filter).get("B");
+        assertEquals(ImageQualityService.FLAG_NOT_SELECTED, second.flag());
+        // 评分保留，用于选中图像推理失败后的补选排序
+        assertTrue(second.score() > 0);
+        assertEquals(1, meterRegistry.counter("quality.images", "result", "SELECTED").count());
+        assertEquals(1, meterRegistry.counter("quality.images", "result", "NOT_SELECTED").count());
+        assertEquals(0, meterRegistry.counter("quality.images", "result", "FALLBACK").count(), "已有选中图像时不补选");
+    }
+
+    @Test
+    void lowContrastAndLocalizerAreLowQuality() throws IOException {
+        ReflectionTestUtils.setField(service, "maxPerSeries", 3);
+        ImageQualityService.SeriesFilter filter = service.newSeriesFilter();
+        filter.offer(candidate("A", gradient(110, 130, false), null));
+        filter.offer(candidate("B", gradient(20, 220, false), "ORIGINAL\\PRIMARY\\LOCALIZER"));
+        filter.offer(candidate("C", gradient(20, 220, true), null));
+        Map<String, ImageQualityService.Selection> result = finish(filter);
+        assertEquals(ImageQualityService.FLAG_LOW_QUALITY, result.get("A").flag());
+        assertEquals(ImageQualityService.FLAG_LOW_QUALITY, result.get("B").flag());
+        assertEquals(0, result.get("B").score());
+    }
+
+    @Test
+    void bestImageIsKeptWhenNoneIsAcceptable() throws IOException {
+        ImageQualityService.SeriesFilter filter = service.newSeriesFilter();
+        filter.offer(candidate("A", gradient(115, 125, false), null));
+        filter.offer(candidate("B", gradient(110, 130, false), null));
+        filter.offer(candidate("C", gradient(118, 122, false), null));
+
+        Map<String, ImageQualityService.Selection> result = finish(filter);
+        assertTrue(result.get("B").selected());
+        assertFalse(result.get("A").selected());
+        assertFalse(result.get("C").selected());
+        assertEquals(1, meterRegistry.counter("quality.images", "result", "FALLBACK").count());
+    }
+
+    @Test
+    void unreadableImageIsStillSelectable() {
+        ImageQualityService.SeriesFilter filter = service.newSeriesFilter();
+        filter.offer(new ImageQualityService.Candidate("A", directory.resolve("missing.png").toString(), null));
+        ImageQualityService.Selection selection = finish(filter).get("A");
+        assertTrue(selection.selected());
+        assertEquals(-1, selection.score());
+    }
+
+    @Test
+    void disabledSelectsEverything() throws IOException {
+        ReflectionTestUtils.setField(service, "enabled", false);
+        ImageQualityService.SeriesFilter filter = service.newSeriesFilter();
+        Path file = gradient(20, 220, false);
+        filter.offer(candidate("A", file, null));
+        filter.offer(candidate("B", file, null));
+        assertTrue(filter.finish().stream().allMatch(ImageQualityService.Selection::selected));
+    }
+
+    @Test
+    void emptySeriesHasNoSelection() {
+        assertTrue(service.newSeriesFilter().finish().isEmpty());
+    }
+
+    private Map<String, ImageQualityService.Selection> finish(ImageQualityService.SeriesFilter filter) {
+        return filter.finish().stream()
+                .collect(Collectors.toMap(selection -> selection.candidate().sopUID(), Function.identity()));
+    }
+
+    private ImageQualityService.Candidate candidate(String sopUID, Path file, String imageType) {
+        return new ImageQualityService.Candidate(sopUID, file.toString(), imageType);
+    }
+
+    /**
+     * 水平灰度渐变（reversed 时从右向左变亮）
+     */
+    private Path gradient(int from, int to, boolean reversed) throws IOException {
+        int size = 300;
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_BYTE_GRAY);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int position = reversed ? size - 1 - x : x;
+                image.getRaster().setSample(x, y, 0, Math.min(255, from + (to - from) * position / (size - 1)));
+            }
+        }
+        Path file = directory.resolve(from + "-" + to + (reversed ? "-r" : "") + ".png");
+        ImageIO.write(image, "png", file.toFile());
+        return file;
+    }
+}
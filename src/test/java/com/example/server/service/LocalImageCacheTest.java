@@ -0,0 +1,120 @@
+package com.example.server.service;
+
+import com.example.server.config.DICOMConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 本地图像缓存的容量统计、LRU淘汰顺序与启动时索引重建
+ */
+class LocalImageCacheTest {
+    @TempDir
+    Path directory;
+
+    private DICOMConfig config;
+    private SimpleMeterRegistry meterRegistry;
+    private LocalImageCache cache;
+
+    @BeforeEach
+    void setUp() {
+        config = new DICOMConfig();
+        config.setImageCacheMaxBytes(300);
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new LocalImageCache(config, meterRegistry, directory);
+    }
+
+    @Test
+    void putAndGetTrackSize() throws IOException {
+        Path file = put("A", 100);
+        assertEquals(directory.resolve("A.png"), file);
+        assertEquals(file, cache.get("A"));
+        assertEquals(100, cache.getTotalBytes());
+        assertNull(cache.get("B"));
+
+        // 覆盖写入按新旧大小差值计入
+        put("A", 40);
+        assertEquals(40, cache.getTotalBytes());
+        assertEquals(1, meterRegistry.counter("image.cache", "result", "hit").count());
+        assertEquals(1, meterRegistry.counter("image.cache", "result", "miss").count());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedFirst() throws IOException {
+        put("A", 100);
+        put("B", 100);
+        put("C", 100);
+        // 访问A后B成为最久未使用
+        assertNotNull(cache.get("A"));
+        put("D", 100);
+
+        assertNull(cache.get("B"));
+        assertFalse(Files.exists(directory.resolve("B.png")));
+        assertNotNull(cache.get("A"));
+        assertNotNull(cache.get("C"));
+        assertNotNull(cache.get("D"));
+        assertEquals(300, cache.getTotalBytes());
+        assertEquals(1, meterRegistry.counter("image.cache.evictions").count());
+    }
+
+    @Test
+    void newlyWrittenImageIsKeptEvenIfLargerThanCapacity() throws IOException {
+        put("A", 100);
+        put("B", 500);
+        assertNull(cache.get("A"));
+        assertNotNull(cache.get("B"));
+        assertEquals(500, cache.getTotalBytes());
+    }
+
+    @Test
+    void externallyDeletedFileIsDroppedFromIndex() throws IOException {
+        put("A", 100);
+        Files.delete(directory.resolve("A.png"));
+        assertNull(cache.get("A"));
+        assertEquals(0, cache.getTotalBytes());
+    }
+
+    @Test
+    void failedWriteLeavesNoFile() {
+        assertThrows(IOException.class, () -> cache.put("A", file -> {
+            Files.write(file, new byte[10]);
+            throw new IOException("写入失败");
+        }));
+        assertNull(cache.get("A"));
+        assertEquals(0, cache.getTotalBytes());
+        assertFalse(Files.exists(directory.resolve("A.png")));
+    }
+
+    @Test
+    void rebuildsIndexByModificationTimeOnStartup() throws IOException {
+        put("A", 100);
+        put("B", 100);
+        put("C", 100);
+        Files.setLastModifiedTime(directory.resolve("A.png"), FileTime.fromMillis(3000));
+        Files.setLastModifiedTime(directory.resolve("B.png"), FileTime.fromMillis(1000));
+        Files.setLastModifiedTime(directory.resolve("C.png"), FileTime.fromMillis(2000));
+        Files.write(directory.resolve("D123.tmp"), new byte[50]);
+
+        LocalImageCache restarted = new LocalImageCache(config, new SimpleMeterRegistry(), directory);
+        assertEquals(300, restarted.getTotalBytes());
+        assertFalse(Files.exists(directory.resolve("D123.tmp")), "遗留的临时文件应被清理");
+
+        // 修改时间最早的B最先淘汰
+        restarted.put("E", file -> Files.write(file, new byte[100]));
+        assertNull(restarted.get("B"));
+        assertNotNull(restarted.get("A"));
+        assertNotNull(restarted.get("C"));
+    }
+
+    private Path put(String sopUID, int size) throws IOException {
+        return cache.put(sopUID, file -> Files.write(file, new byte[size]));
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.server.service;
+
+import com.example.server.config.DICOMConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dcm4che3.net.Device;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 熔断器状态转换：关闭 → 打开 → 半开（C-ECHO探测）→ 关闭/重新打开
+ */
+class PacsCircuitBreakerTest {
+    private DICOMConfig config;
+    private EchoStub pool;
+    private SimpleMeterRegistry meterRegistry;
+    private PacsCircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        config = new DICOMConfig();
+        config.setBreakerWindowSize(10);
+        config.setBreakerMinimumCalls(4);
+        config.setBreakerFailureRateThreshold(0.5);
+        config.setBreakerOpenMs(0);
+        DICOMConfig.PacsEndpoint endpoint = new DICOMConfig.PacsEndpoint();
+        endpoint.setAeTitle("PACS");
+        endpoint.setIp("127.0.0.1");
+        endpoint.setPort(104);
+        pool = new EchoStub(config, endpoint);
+        meterRegistry = new SimpleMeterRegistry();
+        breaker = new PacsCircuitBreaker(config, "PACS", pool, meterRegistry);
+    }
+
+    @Test
+    void staysClosedBelowMinimumCalls() {
+        for (int i = 0; i < 3; i++) {
+            breaker.recordFailure();
+        }
+        assertEquals(PacsCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    void staysClosedBelowFailureRate() {
+        breaker.recordSuccess();
+        breaker.recordSuccess();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        breaker.recordFailure();
+        assertEquals(0.4, breaker.getFailureRate(), 1e-9);
+        assertEquals(PacsCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void opensAtFailureRateAndRejectsRequests() {
+        breaker.recordSuccess();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        breaker.recordFailure();
+        assertEquals(PacsCircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue(breaker.getOpenedAt() > 0);
+
+        assertFalse(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        assertEquals(2, meterRegistry.counter("pacs.breaker.rejected", "pacs", "PACS").count());
+    }
+
+    @Test
+    void oldResultsLeaveTheWindow() {
+        // 10次窗口：早期失败被后续成功挤出窗口后失败率下降
+        for (int i = 0; i < 3; i++) {
+            breaker.recordFailure();
+        }
+        for (int i = 0; i < 10; i++) {
+            breaker.recordSuccess();
+        }
+        assertEquals(0, breaker.getFailureRate(), 1e-9);
+        assertEquals(PacsCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void successfulProbeClosesAndResetsWindow() {
+        open();
+        pool.reachable = true;
+        breaker.probe();
+        assertEquals(1, pool.echoes);
+        assertEquals(PacsCircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getFailureRate(), 1e-9);
+        assertTrue(breaker.allowRequest());
+
+        // 窗口已清空，一次失败不会立即重新打开
+        breaker.recordFailure();
+        assertEquals(PacsCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void failedProbeReopens() {
+        open();
+        pool.reachable = false;
+        breaker.probe();
+        assertEquals(1, pool.echoes);
+        assertEquals(PacsCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    void probeWaitsForOpenDuration() {
+        config.setBreakerOpenMs(60_000);
+        open();
+        pool.reachable = true;
+        breaker.probe();
+        assertEquals(0, pool.echoes);
+        assertEquals(PacsCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void halfOpenRejectsRequestsDuringProbe() {
+        open();
+        pool.onEcho = () -> {
+            assertEquals(PacsCircuitBreaker.State.HALF_OPEN, breaker.getState());
+            assertFalse(breaker.allowRequest());
+            // 半开期间的结果不计入窗口
+            breaker.recordFailure();
+            breaker.recordSuccess();
+        };
+        pool.reachable = true;
+        breaker.probe();
+        assertEquals(PacsCircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getFailureRate(), 1e-9);
+    }
+
+    @Test
+    void probeIgnoredWhenClosed() {
+        breaker.probe();
+        assertEquals(0, pool.echoes);
+        assertEquals(PacsCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    private void open() {
+        for (int i = 0; i < config.getBreakerMinimumCalls(); i++) {
+            breaker.recordFailure();
+        }
+        assertEquals(PacsCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    /**
+     * 不建立网络连接，C-ECHO结果由测试指定
+     */
+    private static final class EchoStub extends DicomAssociationPool {
+        boolean reachable;
+        int echoes;
+        Runnable onEcho = () -> {
+        };
+
+        EchoStub(DICOMConfig config, DICOMConfig.PacsEndpoint endpoint) {
+            super(config, endpoint, new Device("test"));
+        }
+
+        @Override
+        public boolean echo() {
+            echoes++;
+            onEcho.run();
+            return reachable;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.server.service;
+
+import com.example.server.config.DICOMConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.VR;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * C-FIND 结果缓存的TTL、按患者失效与容量淘汰
+ */
+class PacsQueryCacheTest {
+    private static final long TTL = 60_000;
+
+    private DICOMConfig config;
+    private SimpleMeterRegistry meterRegistry;
+    private PacsQueryCache cache;
+    private AtomicInteger queries;
+
+    @BeforeEach
+    void setUp() {
+        config = new DICOMConfig();
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new PacsQueryCache(config, meterRegistry);
+        queries = new AtomicInteger();
+    }
+
+    @Test
+    void hitWithinTtlSkipsQuery() {
+        List<Attributes> first = cache.get("PATIENT", "P1", TTL, () -> query("P1"));
+        List<Attributes> second = cache.get("PATIENT", "P1", TTL, () -> query("P1"));
+        assertEquals(1, queries.get());
+        assertSame(first, second);
+        assertEquals(1, meterRegistry.counter("pacs.query.cache", "result", "hit").count());
+        assertEquals(1, meterRegistry.counter("pacs.query.cache", "result", "miss").count());
+    }
+
+    @Test
+    void expiredEntryIsQueriedAgain() throws InterruptedException {
+        cache.get("STUDY", "P1", 20, () -> query("P1"));
+        Thread.sleep(50);
+        cache.get("STUDY", "P1", 20, () -> query("P1"));
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    void levelsAreCachedSeparately() {
+        cache.get("PATIENT", "P1", TTL, () -> query("P1"));
+        cache.get("STUDY", "P1", TTL, () -> query("P1"));
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    void emptyResultsAreNotCached() {
+        cache.get("PATIENT", "P1", TTL, () -> {
+            queries.incrementAndGet();
+            return List.of();
+        });
+        cache.get("PATIENT", "P1", TTL, () -> query("P1"));
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    void nonPositiveTtlBypassesCache() {
+        cache.get("PATIENT", "P1", 0, () -> query("P1"));
+        cache.get("PATIENT", "P1", 0, () -> query("P1"));
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    void invalidatePatientDropsOnlyThatPatient() {
+        cache.get("PATIENT", "P1", TTL, () -> query("P1"));
+        cache.get("STUDY", "P1", TTL, () -> query("P1"));
+        cache.get("STUDY", "P2", TTL, () -> query("P2"));
+        assertEquals(3, queries.get());
+
+        cache.invalidatePatient("P1");
+        cache.get("PATIENT", "P1", TTL, () -> query("P1"));
+        cache.get("STUDY", "P1", TTL, () -> query("P1"));
+        cache.get("STUDY", "P2", TTL, () -> query("P2"));
+        assertEquals(5, queries.get());
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvictedAtCapacity() {
+        config.setQueryCacheMaxEntries(2);
+        cache = new PacsQueryCache(config, meterRegistry);
+        cache.get("STUDY", "P1", TTL, () -> query("P1"));
+        cache.get("STUDY", "P2", TTL, () -> query("P2"));
+        // 访问P1后P2成为最久未使用
+        cache.get("STUDY", "P1", TTL, () -> query("P1"));
+        cache.get("STUDY", "P3", TTL, () -> query("P3"));
+        assertEquals(3, queries.get());
+        assertEquals(1, meterRegistry.counter("pacs.query.cache.evictions").count());
+
+        cache.get("STUDY", "P1", TTL, () -> query("P1"));
+        assertEquals(3, queries.get());
+        cache.get("STUDY", "P2", TTL, () -> query("P2"));
+        assertEquals(4, queries.get());
+    }
+
+    private List<Attributes> query(String patientID) {
+        queries.incrementAndGet();
+        Attributes result = new Attributes();
+        result.setString(Tag.PatientID, VR.LO, patientID);
+        return List.of(result);
+    }
+}